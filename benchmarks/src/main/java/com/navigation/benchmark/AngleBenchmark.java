@@ -0,0 +1,43 @@
+package com.navigation.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.algorithm.Angle;
+
+/**
+ * Normalizacja kątów, także dla dużych wartości (pętla w Angle.normalizeAngle)
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AngleBenchmark {
+	
+	@Param({"3", "1000", "100000"})
+	private double angle;
+	
+	@Benchmark
+	public double normalizeAngle() {
+		return Angle.normalizeAngle(angle);
+	}
+	
+	@Benchmark
+	public double denormalizeAngle() {
+		return Angle.denormalizeAngle(angle);
+	}
+}
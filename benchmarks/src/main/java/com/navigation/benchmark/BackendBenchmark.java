@@ -0,0 +1,79 @@
+package com.navigation.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.GPSData;
+import com.navigation.algorithm.GeodesyBackend;
+import com.navigation.algorithm.LocalTangentPlane;
+import com.navigation.algorithm.PreparedPoint;
+import com.navigation.algorithm.SphericalGeodesy;
+
+/**
+ * Krok sterowania (odległość i kierunek do celu) dla GPSData i obu sposobów liczenia
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BackendBenchmark {
+	
+	private GPSData current = new GPSData(50.8653772, 20.7168326);
+	private GPSData target = new GPSData(50.8662, 20.7181); // ok. 130 m
+	
+	private PreparedPoint currentPoint = new PreparedPoint(current);
+	private PreparedPoint targetPoint = new PreparedPoint(target);
+	private PreparedPoint result = new PreparedPoint();
+	
+	private GeodesyBackend spherical = SphericalGeodesy.INSTANCE;
+	private GeodesyBackend plane = new LocalTangentPlane(LocalTangentPlane.DEFAULT_RANGE);
+	
+	{
+		plane.targetChanged(targetPoint);
+	}
+	
+	@Benchmark
+	public double tickGPSData() {
+		return current.getDistanceTo(target) + current.getBearingWith(target);
+	}
+	
+	@Benchmark
+	public double tickSpherical() {
+		currentPoint.set(current);
+		return spherical.distance(currentPoint, targetPoint) + spherical.bearing(currentPoint, targetPoint);
+	}
+	
+	@Benchmark
+	public double tickLocalTangentPlane() {
+		currentPoint.set(current);
+		return plane.distance(currentPoint, targetPoint) + plane.bearing(currentPoint, targetPoint);
+	}
+	
+	@Benchmark
+	public GPSData destinationGPSData() {
+		return current.destinationPointFromDistanceAndBearing(0.8, 25);
+	}
+	
+	@Benchmark
+	public PreparedPoint destinationSpherical() {
+		return spherical.destination(currentPoint, 0.8, 25, result);
+	}
+	
+	@Benchmark
+	public PreparedPoint destinationLocalTangentPlane() {
+		return plane.destination(currentPoint, 0.8, 25, result);
+	}
+}
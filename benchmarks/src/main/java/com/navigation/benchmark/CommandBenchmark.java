@@ -0,0 +1,121 @@
+package com.navigation.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.AsyncAppender;
+import com.navigation.GPSData;
+import com.navigation.Logger;
+import com.navigation.RobotController;
+import com.navigation.serial.BinaryCommandCodec;
+import com.navigation.serial.CommandCodec;
+import com.navigation.serial.GPSSerialPortManager;
+import com.navigation.serial.TextCommandCodec;
+
+/**
+ * Budowanie rozkazów: krok RobotController.sendCommands w stanie śledzenia celu
+ * oraz samo kodowanie rozkazów
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandBenchmark {
+	
+	/**
+	 * Kontroler bez portu szeregowego, rozkazy są tylko zapamiętywane
+	 */
+	static class Controller extends RobotController {
+		int left, right;
+		
+		Controller() {
+			super(new GPSSerialPortManager());
+		}
+		
+		/**
+		 * Ustawia cel tak jak pętla sterowania (applyTarget wylicza wartości celu) i kończy rozruch
+		 */
+		void prepare(GPSData previous, GPSData current, GPSData target) {
+			this.previous = previous;
+			this.current = current;
+			addTarget(target);
+			
+			sendCommands(); // IDLE -> WARM_UP
+			endWarmUp();
+			sendCommands(); // WARM_UP -> TRACKING
+			if(getState() != State.TRACKING || getDesiredAngle() == null || getDesiredAngle() == 0)
+				throw new IllegalStateException("Controller is not tracking the target");
+		}
+		
+		void tick() {
+			sendCommands();
+		}
+		
+		@Override
+		protected void sendCommand(int left, int right) {
+			this.left = left;
+			this.right = right;
+		}
+	}
+	
+	private Controller controller;
+	private CommandCodec text = new TextCommandCodec();
+	private CommandCodec binary = new BinaryCommandCodec();
+	private ByteBuffer buffer = ByteBuffer.allocate(CommandCodec.MAX_FRAME_SIZE);
+	
+	@Setup
+	public void setup() {
+		Logger.enableAsync(1024, 1000, AsyncAppender.OverflowPolicy.DROP);
+		
+		controller = new Controller();
+		controller.prepare(new GPSData(50.86530, 20.71680), new GPSData(50.86535, 20.71683), new GPSData(50.8662, 20.7181));
+	}
+	
+	@TearDown
+	public void tearDown() {
+		Logger.closeAll();
+		Logger.disableAsync();
+	}
+	
+	@Benchmark
+	public int sendCommands() {
+		controller.tick();
+		return controller.left + controller.right;
+	}
+	
+	@Benchmark
+	public int encodeText() {
+		buffer.clear();
+		text.encode(-187, 255, buffer);
+		return buffer.position();
+	}
+	
+	@Benchmark
+	public int encodeBinary() {
+		buffer.clear();
+		binary.encode(-187, 255, buffer);
+		return buffer.position();
+	}
+	
+	@Benchmark
+	public byte[] buildTextCommandString() {
+		int left = -187, right = 255;
+		return (left + "|" + right + "\n").getBytes();
+	}
+}
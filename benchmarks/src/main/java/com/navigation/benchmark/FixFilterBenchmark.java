@@ -0,0 +1,83 @@
+package com.navigation.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.GPSData;
+import com.navigation.algorithm.FixFilter;
+
+/**
+ * Filtr pozycji dla każdego zdania: próg odległości na GPSData (dotychczasowa metoda) kontra
+ * FixFilter z medianą i odrzucaniem na podstawie MAD
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FixFilterBenchmark {
+	
+	private static final int TRACK_SIZE = 4096; // potęga dwójki
+	
+	@Param({"5", "15", "31"})
+	private int window;
+	
+	@Param({"RAW", "MEDIAN"})
+	private FixFilter.Output output;
+	
+	private final double[] latitudes = new double[TRACK_SIZE];
+	private final double[] longitudes = new double[TRACK_SIZE];
+	private int index;
+	
+	private FixFilter filter;
+	private GPSData current;
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		
+		// trasa z szumem ok. 1 m i 2% pozycji odstających o ok. 20 m
+		double latitude = 50.8653772, longitude = 20.7168326;
+		for(int i = 0; i < TRACK_SIZE; i++) {
+			latitude += 1e-6;
+			double noise = random.nextDouble() < 0.02 ? 2e-4 : 1e-5;
+			latitudes[i] = latitude + random.nextGaussian() * noise;
+			longitudes[i] = longitude + random.nextGaussian() * noise;
+		}
+		
+		filter = new FixFilter(window).setOutput(output);
+		current = new GPSData(latitudes[0], longitudes[0]);
+	}
+	
+	@Benchmark
+	public GPSData distanceThresholdGPSData() {
+		int i = index++ & (TRACK_SIZE - 1);
+		GPSData received = new GPSData(latitudes[i], longitudes[i]);
+		if(received.getDistanceTo(current) <= 5)
+			current = received;
+		
+		return current;
+	}
+	
+	@Benchmark
+	public double fixFilter() {
+		int i = index++ & (TRACK_SIZE - 1);
+		filter.add(latitudes[i], longitudes[i]);
+		return filter.getLatitude();
+	}
+}
@@ -0,0 +1,75 @@
+package com.navigation.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.AsyncAppender;
+import com.navigation.Logger;
+import com.navigation.recorder.FlightRecordReader;
+import com.navigation.recorder.FlightRecorder;
+
+/**
+ * Zapis rozkazu: rekord binarny w zmapowanym segmencie kontra wpis tekstowy asynchronicznego loggera
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlightRecorderBenchmark {
+	
+	private Path directory;
+	private FlightRecorder recorder;
+	private Logger logger;
+	
+	private int left = 187, right = 255;
+	private long target;
+	
+	@Setup
+	public void setup() throws IOException {
+		Logger.enableAsync(1024, 1000, AsyncAppender.OverflowPolicy.DROP);
+		logger = new Logger(FlightRecorderBenchmark.class, "Logs/benchmark");
+		
+		directory = Files.createTempDirectory("flight");
+		recorder = new FlightRecorder(directory, "benchmark", FlightRecorder.DEFAULT_SEGMENT_RECORDS, 2);
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		recorder.close();
+		for(Path segment : FlightRecordReader.segments(directory))
+			Files.delete(segment);
+		Files.delete(directory);
+		
+		Logger.closeAll();
+		Logger.disableAsync();
+	}
+	
+	@Benchmark
+	public void record() {
+		recorder.record(FlightRecorder.COMMAND, System.nanoTime(), 50.8653772, 20.7168326, 1.25, 
+				FlightRecorder.ACCEPTED, left, right, target++);
+	}
+	
+	@Benchmark
+	public void logText() {
+		logger.info("Command " + left + "|" + right + " was sent, target " + target++);
+	}
+}
@@ -0,0 +1,74 @@
+package com.navigation.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.GPSData;
+import com.navigation.algorithm.Geodesy;
+import com.navigation.algorithm.PreparedPoint;
+
+/**
+ * Obliczenia geodezyjne z GPSData
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeodesyBenchmark {
+	
+	private GPSData current = new GPSData(50.8653772, 20.7168326);
+	private GPSData target = new GPSData(50.8662, 20.7181); // ok. 130 m
+	private double bearing = Math.toRadians(45);
+	private double distance = 25;
+	
+	private PreparedPoint currentPoint = new PreparedPoint(current);
+	private PreparedPoint targetPoint = new PreparedPoint(target);
+	
+	@Benchmark
+	public double distanceTo() {
+		return current.getDistanceTo(target);
+	}
+	
+	@Benchmark
+	public double bearingWith() {
+		return current.getBearingWith(target);
+	}
+	
+	@Benchmark
+	public GPSData destinationPoint() {
+		return current.destinationPointFromDistanceAndBearing(bearing, distance);
+	}
+	
+	@Benchmark
+	public double preparedDistance() {
+		return Geodesy.distance(currentPoint, targetPoint);
+	}
+	
+	@Benchmark
+	public double preparedBearing() {
+		return Geodesy.bearing(currentPoint, targetPoint);
+	}
+	
+	/**
+	 * Krok sterowania: nowa pozycja względem stałego celu
+	 * @return
+	 */
+	@Benchmark
+	public double preparedTick() {
+		currentPoint.set(current.getLatitude(), current.getLongitude());
+		return Geodesy.distance(currentPoint, targetPoint) + Geodesy.bearing(currentPoint, targetPoint);
+	}
+}
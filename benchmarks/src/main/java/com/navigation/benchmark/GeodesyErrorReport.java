@@ -0,0 +1,86 @@
+package com.navigation.benchmark;
+
+import java.util.Random;
+
+import com.navigation.GPSData;
+import com.navigation.algorithm.Angle;
+import com.navigation.algorithm.Geodesy;
+import com.navigation.algorithm.LocalTangentPlane;
+import com.navigation.algorithm.PreparedPoint;
+
+/**
+ * Raport błędów lokalnego układu płaskiego względem dokładnych obliczeń na sferze (GPSData).
+ * Dla losowych par punktów w zasięgu układu porównuje odległość, kierunek i punkt docelowy
+ * oraz sprawdza, czy błąd odległości mieści się w szacowanym ograniczeniu.
+ * <p>
+ * java -cp target/benchmarks.jar com.navigation.benchmark.GeodesyErrorReport [szerokość]
+ * @author Harry
+ *
+ */
+public class GeodesyErrorReport {
+	
+	private static final int SAMPLES = 100000;
+	private static final double[] RANGES = {50, 100, 250, 500, 1000, 2000};
+	
+	public static void main(String[] args) {
+		double latitude = args.length > 0 ? Double.parseDouble(args[0]) : 50.8653772;
+		double longitude = 20.7168326;
+		
+		Random random = new Random(42);
+		PreparedPoint anchor = new PreparedPoint(latitude, longitude);
+		PreparedPoint from = new PreparedPoint(), to = new PreparedPoint(), result = new PreparedPoint();
+		
+		System.out.println("Anchor: " + anchor + ", " + SAMPLES + " samples per range");
+		System.out.printf("%8s %14s %14s %14s %14s %14s %6s%n", "range[m]", "maxDist[m]", "meanDist[m]", 
+				"bound[m]", "maxBear[deg]", "maxDest[m]", "ok");
+		
+		for(double range : RANGES) {
+			LocalTangentPlane plane = new LocalTangentPlane(anchor, range);
+			GPSData anchorData = new GPSData(latitude, longitude);
+			
+			double maxDistanceError = 0, sumDistanceError = 0, maxBearingError = 0, maxDestinationError = 0;
+			boolean withinBound = true;
+			
+			for(int i = 0; i < SAMPLES; i++) {
+				GPSData a = randomPoint(anchorData, range, random);
+				GPSData b = randomPoint(anchorData, range, random);
+				from.set(a);
+				to.set(b);
+				
+				double exact = a.getDistanceTo(b);
+				double distanceError = Math.abs(plane.distance(from, to) - exact);
+				maxDistanceError = Math.max(maxDistanceError, distanceError);
+				sumDistanceError += distanceError;
+				if(distanceError > plane.getErrorBound(exact))
+					withinBound = false;
+				
+				if(exact > 1) { // kierunek dla bardzo bliskich punktów nie ma znaczenia
+					double bearingError = Angle.normalizeAngle(plane.bearing(from, to) - a.getBearingWith(b));
+					maxBearingError = Math.max(maxBearingError, Math.abs(bearingError));
+				}
+				
+				double bearing = random.nextDouble() * 2 * Math.PI;
+				double distance = random.nextDouble() * range;
+				GPSData expected = a.destinationPointFromDistanceAndBearing(bearing, distance);
+				plane.destination(from, bearing, distance, result);
+				maxDestinationError = Math.max(maxDestinationError, 
+						Geodesy.distance(result, new PreparedPoint(expected)));
+			}
+			
+			System.out.printf("%8.0f %14.6f %14.6f %14.6f %14.6f %14.6f %6s%n", range, maxDistanceError, 
+					sumDistanceError / SAMPLES, plane.getErrorBound(2 * range), Math.toDegrees(maxBearingError), 
+					maxDestinationError, withinBound);
+		}
+	}
+	
+	/**
+	 * @param anchor
+	 * @param range
+	 * @param random
+	 * @return losowy punkt w zasięgu układu (z niewielkim marginesem)
+	 */
+	private static GPSData randomPoint(GPSData anchor, double range, Random random) {
+		double distance = Math.sqrt(random.nextDouble()) * range * 0.999;
+		return anchor.destinationPointFromDistanceAndBearing(random.nextDouble() * 2 * Math.PI, distance);
+	}
+}
@@ -0,0 +1,90 @@
+package com.navigation.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.algorithm.Geofence;
+
+/**
+ * Sprawdzenie pozycji względem strefy o nieregularnej granicy: skompilowana siatka kontra test promienia
+ * po wszystkich krawędziach
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeofenceBenchmark {
+	
+	private static final int QUERIES = 1024;
+	
+	@Param({"100", "5000"})
+	private int vertices;
+	
+	private double[] latitudes, longitudes;
+	private Geofence geofence;
+	
+	private double[] queryLatitudes = new double[QUERIES], queryLongitudes = new double[QUERIES];
+	private int query;
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		double scale = 1 / Math.cos(Math.toRadians(50.86));
+		
+		latitudes = new double[vertices];
+		longitudes = new double[vertices];
+		for(int i = 0; i < vertices; i++) {
+			double angle = 2 * Math.PI * i / vertices;
+			double radius = 0.01 * (1 + 0.3 * Math.sin(37 * angle) + 0.1 * random.nextDouble());
+			latitudes[i] = 50.86 + radius * Math.sin(angle);
+			longitudes[i] = 20.71 + radius * Math.cos(angle) * scale;
+		}
+		geofence = new Geofence().addKeepIn(latitudes, longitudes).compile();
+		
+		for(int i = 0; i < QUERIES; i++) {
+			queryLatitudes[i] = 50.86 + (random.nextDouble() * 2 - 1) * 0.014;
+			queryLongitudes[i] = 20.71 + (random.nextDouble() * 2 - 1) * 0.014 * scale;
+		}
+	}
+	
+	@Benchmark
+	public boolean compiled() {
+		int i = next();
+		return geofence.isAllowed(queryLatitudes[i], queryLongitudes[i]);
+	}
+	
+	@Benchmark
+	public boolean rayCasting() {
+		int i = next();
+		double latitude = queryLatitudes[i], longitude = queryLongitudes[i];
+		
+		boolean inside = false;
+		for(int a = 0, b = vertices - 1; a < vertices; b = a++) {
+			if((latitudes[a] > latitude) != (latitudes[b] > latitude) && longitude < longitudes[a]
+					+ (longitudes[b] - longitudes[a]) * (latitude - latitudes[a]) / (latitudes[b] - latitudes[a]))
+				inside = !inside;
+		}
+		return inside;
+	}
+	
+	private int next() {
+		query = (query + 1) & (QUERIES - 1);
+		return query;
+	}
+}
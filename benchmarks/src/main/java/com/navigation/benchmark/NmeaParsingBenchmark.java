@@ -0,0 +1,142 @@
+package com.navigation.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.AsyncAppender;
+import com.navigation.Logger;
+import com.navigation.nmea.NmeaFramer;
+import com.navigation.serial.GPSSerialPortManager;
+
+import net.sf.marineapi.nmea.event.SentenceEvent;
+import net.sf.marineapi.nmea.parser.SentenceFactory;
+import net.sf.marineapi.nmea.sentence.Sentence;
+import net.sf.marineapi.nmea.sentence.SentenceId;
+
+/**
+ * Przetwarzanie całego nagranego logu NMEA (jedna operacja = cały log):
+ * ścieżka Marine API (parsowanie każdej linii i GPSSerialPortManager.sentenceRead)
+ * oraz wydzielanie ramek na bajtach z szybkim parserem.
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NmeaParsingBenchmark {
+	
+	private static final String LOG = "NMEA_App_moving.txt";
+	
+	private GPSSerialPortManager spm;
+	private List<String> lines;
+	private byte[] bytes;
+	private NmeaFramer framer;
+	private SentenceFactory factory = SentenceFactory.getInstance();
+	
+	@Setup
+	public void setup() throws IOException {
+		// wpisy logów nie mogą spowalniać pomiaru
+		Logger.enableAsync(1024, 1000, AsyncAppender.OverflowPolicy.DROP);
+		
+		spm = new GPSSerialPortManager();
+		
+		bytes = load(LOG);
+		lines = new ArrayList<>();
+		for(String line : new String(bytes, StandardCharsets.US_ASCII).split("\r?\n"))
+			if(!line.isEmpty())
+				lines.add(line);
+		
+		framer = new NmeaFramer(spm);
+		framer.accept(SentenceId.GGA.name());
+		framer.accept(SentenceId.HDM.name());
+		framer.accept(SentenceId.HDT.name());
+	}
+	
+	@TearDown
+	public void tearDown() {
+		Logger.closeAll();
+		Logger.disableAsync();
+	}
+	
+	/**
+	 * Dotychczasowa ścieżka: każda linia parsowana przez Marine API, obsługiwane zdania trafiają do sentenceRead
+	 * @return
+	 */
+	@Benchmark
+	public int marineApiSentenceRead() {
+		int dispatched = 0;
+		
+		for(String line : lines) {
+			try {
+				Sentence sentence = factory.createParser(line);
+				String id = sentence.getSentenceId();
+				
+				if(id.equals("GGA") || id.equals("HDM") || id.equals("HDT")) {
+					spm.sentenceRead(new SentenceEvent(this, sentence));
+					dispatched++;
+				}
+			} catch(Exception e) {
+				// nieobsługiwane lub uszkodzone zdanie
+			}
+		}
+		
+		return dispatched;
+	}
+	
+	/**
+	 * Wydzielanie ramek na bajtach i szybki parser (bez logowania surowych zdań)
+	 * @return
+	 */
+	@Benchmark
+	public long framerFastPath() {
+		spm.setRawLogging(false);
+		framer.feed(bytes, 0, bytes.length);
+		return spm.getFixHolder().getSequence();
+	}
+	
+	/**
+	 * Wydzielanie ramek na bajtach i szybki parser z logowaniem surowych zdań
+	 * @return
+	 */
+	@Benchmark
+	public long framerFastPathRawLogging() {
+		spm.setRawLogging(true);
+		framer.feed(bytes, 0, bytes.length);
+		return spm.getFixHolder().getSequence();
+	}
+	
+	static byte[] load(String resource) throws IOException {
+		try(InputStream input = NmeaParsingBenchmark.class.getClassLoader().getResourceAsStream(resource)) {
+			if(input == null)
+				throw new IOException("Resource does not exist: " + resource);
+			
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int count;
+			while((count = input.read(buffer)) > 0)
+				output.write(buffer, 0, count);
+			
+			return output.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.navigation.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.GPSData;
+import com.navigation.algorithm.Geodesy;
+import com.navigation.algorithm.PreparedPoint;
+import com.navigation.algorithm.PreparedPoints;
+
+/**
+ * Zapytania dotyczące całej trasy: najbliższy punkt i długość trasy, GPSData kontra obliczenia wsadowe
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouteBenchmark {
+	
+	@Param({"100", "10000"})
+	private int size;
+	
+	private GPSData[] route;
+	private PreparedPoints points;
+	private double[] distances, bearings;
+	
+	private GPSData current = new GPSData(50.8653772, 20.7168326);
+	private PreparedPoint currentPoint = new PreparedPoint(current);
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		
+		route = new GPSData[size];
+		points = new PreparedPoints(size);
+		distances = new double[size];
+		bearings = new double[size];
+		
+		for(int i = 0; i < size; i++) {
+			double latitude = 50.86 + random.nextDouble() * 0.01;
+			double longitude = 20.71 + random.nextDouble() * 0.01;
+			route[i] = new GPSData(latitude, longitude);
+			points.set(i, latitude, longitude);
+		}
+	}
+	
+	@Benchmark
+	public int nearestGPSData() {
+		int nearest = -1;
+		double nearestDistance = Double.POSITIVE_INFINITY;
+		
+		for(int i = 0; i < size; i++) {
+			double distance = current.getDistanceTo(route[i]);
+			if(distance < nearestDistance) {
+				nearestDistance = distance;
+				nearest = i;
+			}
+		}
+		
+		return nearest;
+	}
+	
+	@Benchmark
+	public int nearestPrepared() {
+		return Geodesy.nearest(currentPoint, points, 0, size);
+	}
+	
+	@Benchmark
+	public double pathLengthGPSData() {
+		double length = 0;
+		for(int i = 1; i < size; i++)
+			length += route[i - 1].getDistanceTo(route[i]);
+		
+		return length;
+	}
+	
+	@Benchmark
+	public double pathLengthPrepared() {
+		return Geodesy.pathLength(points, 0, size);
+	}
+	
+	@Benchmark
+	public double[] distancesAndBearingsPrepared() {
+		Geodesy.distancesAndBearings(currentPoint, points, 0, size, distances, bearings);
+		return bearings;
+	}
+}
@@ -0,0 +1,105 @@
+package com.navigation.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.navigation.algorithm.Geodesy;
+import com.navigation.algorithm.PreparedPoint;
+import com.navigation.algorithm.PreparedPoints;
+import com.navigation.mission.WaypointIndex;
+
+/**
+ * Najbliższy punkt trasy pomiarowej (pasy co 5 m, punkty co 3 m): przeszukiwanie liniowe kontra indeks przestrzenny
+ * @author Harry
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WaypointIndexBenchmark {
+	
+	private static final int QUERIES = 64;
+	private static final int ROW = 1000; // punktów w pasie
+	
+	@Param({"10000", "100000"})
+	private int size;
+	
+	private PreparedPoints points;
+	private WaypointIndex index;
+	
+	private double[] latitudes = new double[QUERIES], longitudes = new double[QUERIES];
+	private PreparedPoint[] queries = new PreparedPoint[QUERIES];
+	private int[] result = new int[256];
+	private int query;
+	
+	@Setup
+	public void setup() {
+		double latitudeStep = 5 / (Geodesy.R * Math.PI / 180);
+		double longitudeStep = 3 / (Geodesy.R * Math.PI / 180 * Math.cos(Math.toRadians(50.86)));
+		
+		points = new PreparedPoints(size);
+		index = new WaypointIndex();
+		for(int i = 0; i < size; i++) {
+			int row = i / ROW, column = i % ROW;
+			if(row % 2 == 1) // trasa zawraca na końcu pasa
+				column = ROW - 1 - column;
+			
+			double latitude = 50.86 + row * latitudeStep;
+			double longitude = 20.71 + column * longitudeStep;
+			points.set(i, latitude, longitude);
+			index.add(latitude, longitude);
+		}
+		
+		Random random = new Random(42);
+		int rows = (size + ROW - 1) / ROW;
+		for(int i = 0; i < QUERIES; i++) {
+			latitudes[i] = 50.86 + random.nextDouble() * rows * latitudeStep;
+			longitudes[i] = 20.71 + random.nextDouble() * ROW * longitudeStep;
+			queries[i] = new PreparedPoint(latitudes[i], longitudes[i]);
+		}
+	}
+	
+	@Benchmark
+	public int nearestLinear() {
+		int i = next();
+		return Geodesy.nearest(queries[i], points, 0, size);
+	}
+	
+	@Benchmark
+	public int nearestIndex() {
+		int i = next();
+		return index.nearest(latitudes[i], longitudes[i], 1, 0, result);
+	}
+	
+	@Benchmark
+	public int nearest8Index() {
+		int i = next();
+		return index.nearest(latitudes[i], longitudes[i], 8, 0, result);
+	}
+	
+	@Benchmark
+	public int withinRadiusIndex() {
+		int i = next();
+		return index.withinRadius(latitudes[i], longitudes[i], 20, 0, result);
+	}
+	
+	private int next() {
+		query = (query + 1) & (QUERIES - 1);
+		return query;
+	}
+}
@@ -0,0 +1,338 @@
+package com.navigation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Asynchroniczny zapis logu do pliku. Rekordy trafiają do ograniczonego bufora cyklicznego,
+ * z którego jeden wątek w tle zapisuje je paczkami przez stale otwarty kanał.
+ * @author Harry
+ *
+ */
+public class AsyncAppender implements Closeable {
+
+	/**
+	 * Zachowanie przy pełnym buforze
+	 */
+	public enum OverflowPolicy {
+		DROP, // odrzuć rekord
+		BLOCK // czekaj na zwolnienie miejsca
+	}
+
+	private static final int BATCH_RECORDS = 256; // maksymalna liczba rekordów w jednej paczce
+	private static final int BUFFER_SIZE = 64 * 1024; // rozmiar bufora zapisu
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	private final FileChannel channel;
+	private final OverflowPolicy policy;
+	private final long flushIntervalNanos;
+
+	// bufor cykliczny
+	private final long[] timestamps;
+	private final String[] prefixes;
+	private final String[] texts;
+	private int head, tail, count;
+
+	// paczka przekazana do zapisu (używana tylko przez wątek piszący)
+	private final long[] batchTimestamps = new long[BATCH_RECORDS];
+	private final String[] batchPrefixes = new String[BATCH_RECORDS];
+	private final String[] batchTexts = new String[BATCH_RECORDS];
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Condition drained = lock.newCondition();
+
+	private long appended, written, flushTarget, dropped;
+	private boolean closed;
+
+	private final Thread writer;
+
+	// formatowanie (używane tylko przez wątek piszący)
+	private final ZoneId zone = ZoneId.systemDefault();
+	private final StringBuilder line = new StringBuilder(256);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private long lastTimestamp = Long.MIN_VALUE;
+	private String lastFormattedTimestamp;
+
+	/**
+	 * @param file plik logu (dopisywanie na końcu)
+	 * @param capacity pojemność bufora w rekordach
+	 * @param flushIntervalMillis maksymalny czas oczekiwania rekordu na zapis
+	 * @param policy zachowanie przy pełnym buforze
+	 * @throws IOException
+	 */
+	public AsyncAppender(Path file, int capacity, long flushIntervalMillis, OverflowPolicy policy) throws IOException {
+		if(capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.policy = policy;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(flushIntervalMillis, 0));
+
+		this.timestamps = new long[capacity];
+		this.prefixes = new String[capacity];
+		this.texts = new String[capacity];
+
+		this.writer = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "logger-" + file.getFileName());
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Dodaje rekord do kolejki
+	 * @param prefix nazwa klasy (może być pusta)
+	 * @param text
+	 * @return false jeśli rekord został odrzucony
+	 */
+	public boolean append(String prefix, String text) {
+		long timestamp = System.currentTimeMillis();
+
+		lock.lock();
+		try {
+			while(count == timestamps.length && !closed) {
+				if(policy == OverflowPolicy.DROP) {
+					dropped++;
+					return false;
+				}
+
+				try {
+					notFull.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					dropped++;
+					return false;
+				}
+			}
+
+			if(closed)
+				return false;
+
+			timestamps[tail] = timestamp;
+			prefixes[tail] = prefix;
+			texts[tail] = text;
+			tail = (tail + 1) % timestamps.length;
+			count++;
+			appended++;
+
+			// budź wątek piszący tylko gdy jest na co
+			if(count == 1 || count == BATCH_RECORDS)
+				notEmpty.signal();
+
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Czeka aż wszystkie dodane dotąd rekordy zostaną zapisane i wymusza zapis na nośnik
+	 */
+	public void flush() {
+		lock.lock();
+		try {
+			long target = appended;
+			flushTarget = Math.max(flushTarget, target);
+			notEmpty.signal();
+
+			while(written < target && writer.isAlive())
+				drained.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			if(channel.isOpen())
+				channel.force(false);
+		} catch (IOException e) {
+			System.err.println(e);
+		}
+	}
+
+	/**
+	 * Zapisuje pozostałe rekordy i zamyka plik
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			if(closed)
+				return;
+
+			closed = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		try {
+			channel.force(false);
+			channel.close();
+		} catch (IOException e) {
+			System.err.println(e);
+		}
+	}
+
+	/**
+	 * @return liczba rekordów odrzuconych z powodu pełnego bufora
+	 */
+	public long getDropped() {
+		lock.lock();
+		try {
+			return dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Główna pętla wątku piszącego
+	 */
+	private void writeLoop() {
+		while(true) {
+			int size;
+
+			lock.lock();
+			try {
+				while(count == 0 && !closed)
+					notEmpty.awaitUninterruptibly();
+
+				if(count == 0)
+					break; // zamknięty i opróżniony
+
+				// zbieraj rekordy do paczki aż minie interwał, paczka się zapełni lub ktoś wymusi zapis
+				long deadline = System.nanoTime() + flushIntervalNanos;
+				long remaining;
+				while(count < BATCH_RECORDS && !closed && flushTarget <= written
+						&& (remaining = deadline - System.nanoTime()) > 0) {
+					try {
+						notEmpty.awaitNanos(remaining);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+
+				size = Math.min(count, BATCH_RECORDS);
+				for(int i = 0; i < size; i++) {
+					batchTimestamps[i] = timestamps[head];
+					batchPrefixes[i] = prefixes[head];
+					batchTexts[i] = texts[head];
+					prefixes[head] = null;
+					texts[head] = null;
+					head = (head + 1) % timestamps.length;
+				}
+				count -= size;
+
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+
+			writeBatch(size);
+
+			lock.lock();
+			try {
+				written += size;
+				drained.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		lock.lock();
+		try {
+			drained.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Formatuje paczkę rekordów i zapisuje ją do pliku
+	 * @param size
+	 */
+	private void writeBatch(int size) {
+		try {
+			for(int i = 0; i < size; i++) {
+				line.setLength(0);
+
+				if(!batchPrefixes[i].isEmpty())
+					line.append(batchPrefixes[i]);
+				line.append('[').append(formatTimestamp(batchTimestamps[i])).append("]: ")
+					.append(batchTexts[i]).append(LINE_SEPARATOR);
+
+				batchPrefixes[i] = null;
+				batchTexts[i] = null;
+
+				encode(CharBuffer.wrap(line));
+			}
+
+			drainBuffer();
+		} catch (IOException e) {
+			System.err.println(e);
+			buffer.clear();
+		}
+	}
+
+	private void encode(CharBuffer chars) throws IOException {
+		encoder.reset();
+		while(true) {
+			CoderResult result = encoder.encode(chars, buffer, true);
+			if(result.isOverflow())
+				drainBuffer();
+			else
+				break;
+		}
+	}
+
+	private void drainBuffer() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Formatuje znacznik czasu tak samo jak LocalDateTime.now(), ponownie używając ostatniego wyniku
+	 * @param timestamp
+	 * @return
+	 */
+	private String formatTimestamp(long timestamp) {
+		if(timestamp != lastTimestamp) {
+			lastTimestamp = timestamp;
+			lastFormattedTimestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), zone).toString();
+		}
+
+		return lastFormattedTimestamp;
+	}
+}
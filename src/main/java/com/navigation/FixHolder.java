@@ -0,0 +1,175 @@
+package com.navigation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Przechowuje ostatnią pozycję i kierunek odczytane z portu szeregowego. Zapis odbywa się
+ * z wątku odczytu portu, odczyt z dowolnej liczby wątków bez blokowania (seqlock).
+ * Czytelnik dostaje zawsze spójny zestaw danych, a po numerze sekwencyjnym pozna,
+ * czy od ostatniego odczytu pojawiła się nowa pozycja.
+ * @author Harry
+ *
+ */
+public class FixHolder {
+	private volatile long version; // nieparzysta wartość - trwa zapis
+	
+	private volatile double latitude, // szerokosc geogr.
+							longitude, // dlugosc geogr.
+							heading = Double.NaN; // kierunek w radianach, NaN - brak
+	private volatile long timestamp; // czas odbioru pozycji (System.nanoTime())
+	private volatile long sequence; // numer pozycji, 0 - brak pozycji
+	
+	// powiadamianie oczekujących na nową pozycję
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition updated = lock.newCondition();
+	private volatile int waiters;
+	private volatile long wakeUps; // zmieniane pod blokadą
+	
+	/**
+	 * Publikuje nową pozycję
+	 * @param latitude
+	 * @param longitude
+	 * @param timestamp czas odbioru (System.nanoTime())
+	 */
+	public synchronized void publishPosition(double latitude, double longitude, long timestamp) {
+		long v = version;
+		version = v + 1;
+		
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.timestamp = timestamp;
+		this.sequence = sequence + 1;
+		
+		version = v + 2;
+		
+		if(waiters > 0)
+			signalAll(false);
+	}
+	
+	/**
+	 * Publikuje nowy kierunek (nie zmienia numeru pozycji)
+	 * @param heading kierunek w radianach
+	 */
+	public synchronized void publishHeading(double heading) {
+		long v = version;
+		version = v + 1;
+		
+		this.heading = heading;
+		
+		version = v + 2;
+	}
+	
+	/**
+	 * Kopiuje spójny stan do podanego obiektu
+	 * @param snapshot
+	 * @return true jeśli odebrano już jakąkolwiek pozycję
+	 */
+	public boolean read(FixSnapshot snapshot) {
+		while(true) {
+			long v = version;
+			if((v & 1) != 0) { // trwa zapis
+				Thread.yield();
+				continue;
+			}
+			
+			double latitude = this.latitude;
+			double longitude = this.longitude;
+			double heading = this.heading;
+			long timestamp = this.timestamp;
+			long sequence = this.sequence;
+			
+			if(version == v) {
+				snapshot.set(latitude, longitude, heading, timestamp, sequence);
+				return sequence > 0;
+			}
+		}
+	}
+	
+	/**
+	 * Czeka na pozycję o numerze innym niż podany
+	 * @param lastSequence numer ostatnio przetworzonej pozycji
+	 * @param timeout maksymalny czas oczekiwania
+	 * @param unit
+	 * @return true jeśli pojawiła się nowa pozycja, false po upływie czasu lub wywołaniu {@link #wakeUp()}
+	 * @throws InterruptedException
+	 */
+	public boolean awaitPosition(long lastSequence, long timeout, TimeUnit unit) throws InterruptedException {
+		return awaitPosition(lastSequence, wakeUps, timeout, unit);
+	}
+	
+	/**
+	 * Czeka na pozycję o numerze innym niż podany. Wywołanie {@link #wakeUp()} po odczycie
+	 * {@link #getWakeUps()} przez wywołującego przerywa oczekiwanie, nawet jeśli nastąpiło przed
+	 * rozpoczęciem tej metody.
+	 * @param lastSequence numer ostatnio przetworzonej pozycji
+	 * @param lastWakeUps wartość {@link #getWakeUps()} odczytana przed sprawdzeniem warunku zakończenia
+	 * @param timeout maksymalny czas oczekiwania
+	 * @param unit
+	 * @return true jeśli pojawiła się nowa pozycja, false po upływie czasu lub wywołaniu {@link #wakeUp()}
+	 * @throws InterruptedException
+	 */
+	public boolean awaitPosition(long lastSequence, long lastWakeUps, long timeout, TimeUnit unit) 
+			throws InterruptedException {
+		if(sequence != lastSequence)
+			return true;
+		
+		long nanos = unit.toNanos(timeout);
+		
+		lock.lock();
+		try {
+			waiters++;
+			
+			while(sequence == lastSequence && wakeUps == lastWakeUps) {
+				if(nanos <= 0)
+					return false;
+				nanos = updated.awaitNanos(nanos);
+			}
+			
+			return sequence != lastSequence;
+		} finally {
+			waiters--;
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return liczba wywołań {@link #wakeUp()}
+	 */
+	public long getWakeUps() {
+		return wakeUps;
+	}
+	
+	/**
+	 * Budzi wszystkie wątki oczekujące na nową pozycję
+	 */
+	public void wakeUp() {
+		signalAll(true);
+	}
+	
+	private void signalAll(boolean wakeUp) {
+		lock.lock();
+		try {
+			if(wakeUp)
+				wakeUps++;
+			updated.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return numer ostatniej pozycji (0 - brak pozycji)
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * @return ostatni kierunek w radianach lub NaN
+	 */
+	public double getHeading() {
+		return heading;
+	}
+}
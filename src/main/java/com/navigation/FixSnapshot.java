@@ -0,0 +1,54 @@
+package com.navigation;
+
+/**
+ * Kopia stanu {@link FixHolder} należąca do czytelnika. Może być używana wielokrotnie.
+ * @author Harry
+ *
+ */
+public class FixSnapshot {
+	private double latitude, longitude, heading = Double.NaN;
+	private long timestamp, sequence;
+	
+	void set(double latitude, double longitude, double heading, long timestamp, long sequence) {
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.heading = heading;
+		this.timestamp = timestamp;
+		this.sequence = sequence;
+	}
+	
+	public double getLatitude() {
+		return latitude;
+	}
+	
+	public double getLongitude() {
+		return longitude;
+	}
+	
+	/**
+	 * @return kierunek w radianach lub NaN jeśli nie jest znany
+	 */
+	public double getHeading() {
+		return heading;
+	}
+	
+	/**
+	 * @return czas odbioru pozycji (System.nanoTime())
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	/**
+	 * @return numer pozycji, 0 - brak pozycji
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public String toString() {
+		return "[latitude=" + latitude + ", longitude=" + longitude + ", heading=" + heading + 
+				", sequence=" + sequence + "]";
+	}
+}
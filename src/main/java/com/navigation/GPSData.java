@@ -77,7 +77,7 @@ public class GPSData {
     
 		double a = Math.pow(Math.sin(latitudeDelta / 2.0), 2.0) + 
 				Math.cos(lat1) * Math.cos(lat2) * 
-				Math.pow(Math.sin(longitudeDelta) / 2.0, 2.0);
+				Math.pow(Math.sin(longitudeDelta / 2.0), 2.0);
 		
 		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
 		
@@ -87,7 +87,7 @@ public class GPSData {
     /**
      * Współrzędne punktu bazując na kierunku i odległości
      * @param bearing
-     * @param distance odległość w km
+     * @param distance odległość w metrach
      * @return
      */
     public GPSData destinationPointFromDistanceAndBearing(double bearing, double distance) {
@@ -9,11 +9,28 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Logger {
 	
+	// konfiguracja trybu asynchronicznego (null - zapis synchroniczny)
+	private static volatile AsyncSettings asyncSettings;
+	private static final List<AsyncAppender> appenders = new CopyOnWriteArrayList<>();
+	
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				closeAll();
+			}
+		}, "logger-shutdown"));
+	}
+	
 	private String userHomeFolder = System.getProperty("user.home");
 	private String className, logName;
+	private AsyncAppender appender;
 	
 	private Logger(String logName) {
 		DateTimeFormatter timeStampPattern = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
@@ -26,6 +43,16 @@ public class Logger {
 				System.out.println("Directory creation failed");
 		
 		this.logName = finalLogName;
+		
+		AsyncSettings settings = asyncSettings;
+		if(settings != null) {
+			try {
+				appender = new AsyncAppender(file.toPath(), settings.capacity, settings.flushIntervalMillis, settings.policy);
+				appenders.add(appender);
+			} catch (IOException e) {
+				System.err.println(e); // zostań przy zapisie synchronicznym
+			}
+		}
 	}
 	
 	public Logger(Class<?> c, String logName) {
@@ -38,7 +65,48 @@ public class Logger {
 		this.className = className;
 	}
 	
+	/**
+	 * Włącza tryb asynchroniczny dla loggerów tworzonych od tej chwili. Każdy z nich trzyma
+	 * otwarty plik, a wpisy zapisuje paczkami wątek w tle.
+	 * @param capacity pojemność kolejki w rekordach
+	 * @param flushIntervalMillis maksymalny czas oczekiwania wpisu na zapis
+	 * @param policy zachowanie przy pełnej kolejce
+	 */
+	public static void enableAsync(int capacity, long flushIntervalMillis, AsyncAppender.OverflowPolicy policy) {
+		asyncSettings = new AsyncSettings(capacity, flushIntervalMillis, policy);
+	}
+	
+	/**
+	 * Przywraca zapis synchroniczny dla loggerów tworzonych od tej chwili
+	 */
+	public static void disableAsync() {
+		asyncSettings = null;
+	}
+	
+	/**
+	 * Zapisuje zaległe wpisy wszystkich asynchronicznych loggerów
+	 */
+	public static void flushAll() {
+		for(AsyncAppender appender : appenders)
+			appender.flush();
+	}
+	
+	/**
+	 * Zapisuje zaległe wpisy i zamyka pliki wszystkich asynchronicznych loggerów
+	 */
+	public static void closeAll() {
+		for(AsyncAppender appender : appenders) {
+			appender.close();
+			appenders.remove(appender);
+		}
+	}
+	
 	public void info(String text) {
+		if(appender != null) {
+			appender.append(className, text);
+			return;
+		}
+		
 		try(FileWriter fw = new FileWriter(userHomeFolder + "/Desktop/" + logName, true);
     	    BufferedWriter bw = new BufferedWriter(fw);
     	    PrintWriter out = new PrintWriter(bw))
@@ -51,4 +119,24 @@ public class Logger {
     	    System.err.println(e);
     	}
 	}
+	
+	/**
+	 * Zapisuje zaległe wpisy tego loggera (w trybie synchronicznym nic nie robi)
+	 */
+	public void flush() {
+		if(appender != null)
+			appender.flush();
+	}
+	
+	private static class AsyncSettings {
+		private final int capacity;
+		private final long flushIntervalMillis;
+		private final AsyncAppender.OverflowPolicy policy;
+		
+		private AsyncSettings(int capacity, long flushIntervalMillis, AsyncAppender.OverflowPolicy policy) {
+			this.capacity = capacity;
+			this.flushIntervalMillis = flushIntervalMillis;
+			this.policy = policy;
+		}
+	}
 }
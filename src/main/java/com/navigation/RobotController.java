@@ -1,45 +1,179 @@
 package com.navigation;
 
+import com.navigation.serial.ConnectionSupervisor;
+import com.navigation.serial.ConnectionSupervisor.LinkState;
 import com.navigation.serial.GPSSerialPortManager;
+import com.navigation.serial.PortDiscovery;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+
 import com.navigation.GPSData;
 import com.navigation.algorithm.Angle;
+import com.navigation.algorithm.DeadReckoning;
+import com.navigation.algorithm.FixFilter;
+import com.navigation.algorithm.Geofence;
+import com.navigation.algorithm.GeodesyBackend;
+import com.navigation.algorithm.PreparedPoint;
+import com.navigation.algorithm.SphericalGeodesy;
+import com.navigation.metrics.Counter;
+import com.navigation.metrics.Histogram;
+import com.navigation.metrics.JmxExporter;
+import com.navigation.metrics.MetricsRegistry;
+import com.navigation.metrics.PrometheusServer;
+import com.navigation.mission.MissionFile;
+import com.navigation.mission.MissionLoader;
+import com.navigation.mission.WaypointIndex;
+import com.navigation.mission.WaypointQueue;
+import com.navigation.recorder.FlightRecorder;
+
+public class RobotController implements Runnable, ConnectionSupervisor.LinkListener {
 
-public class RobotController implements Runnable {
+	/**
+	 * Stany kontrolera
+	 */
+	public enum State {
+		IDLE, // brak aktywnego celu lub jazda wstrzymana
+		WARM_UP, // jazda prosto po ustawieniu celu w celu ustalenia kierunku
+		TRACKING, // prowadzenie do celu
+		ARRIVED, // osiągnięto ostatni cel
+		BREACHED, // pozycja poza dozwolonym obszarem, robot stoi do wywołania clearBreach
+		STOPPED // praca zakończona
+	}
 
 	public static final double MAX_SPEED_PWM = 255; // 20 m/min
 	public static final double MAX_SPEED = 0.33; // 20 m/min (0.33 m/s)
 	public static final double WHEEL_TRACK = 15; // rozstaw kół, 15 cm
-	private static final int MAX_ATTEMPTS = 3; // maksymalna liczba sprawdzeń dystansu
+	private static final int MAX_ATTEMPTS = 3; // maksymalna liczba odrzuceń odstającej pozycji z rzędu
+	private static final double OUTLIER_DISTANCE = 5; // odległość, poniżej której pozycja nie jest odstająca (m)
+	private static final long POLLING_PERIOD = 1000; // okres pętli w trybie odpytywania (ms)
+	private static final long WARM_UP_TIME = 3000; // czas jazdy prosto po ustawieniu celu (ms)
+	private static final int COMMAND_QUEUE_SIZE = 16; // pojemność kolejki rozkazów
+	private static final long COMMAND_RESEND_INTERVAL = 5000; // ponowienie identycznego rozkazu (ms)
+	private static final double ARRIVAL_DISTANCE = 1.5; // odległość, przy której cel uznaje się za osiągnięty (m)
 	
 	protected GPSData previous, current, currentTarget;
-	protected List<GPSData> targets = new ArrayList<GPSData>();
+	protected WaypointQueue targets = new WaypointQueue();
+	private MissionLoader missionLoader; // źródło celów z pliku misji lub null
+	private final WaypointIndex waypointIndex = new WaypointIndex(); // nieosiągnięte punkty misji lub kolejki celów
+	private long indexBase; // bezwzględny indeks celu odpowiadający punktowi 0 w indeksie
+	
+	private final PreparedPoint targetPoint = new PreparedPoint(); // aktualny cel z wyliczonymi wartościami
+	private final PreparedPoint currentPoint = new PreparedPoint(); // aktualna pozycja z wyliczonymi wartościami
+	private GeodesyBackend geodesy = SphericalGeodesy.INSTANCE;
 	
 	private GPSSerialPortManager spm;
+	private ConnectionSupervisor supervisor; // null jeśli port nie jest nadzorowany
+	private volatile boolean linkDown = false; // tylko dla portu nadzorowanego przez supervisor
 	
 	private volatile boolean interrupt = false;
 	private double speed = MAX_SPEED_PWM;
 
 	private Double heading = 0.0, desiredAngle;
 	
-	private int attemptsNo = MAX_ATTEMPTS;
+	private GPSData lastReceived; // ostatnia przyjęta pozycja przed filtrem
+	private FixFilter fixFilter = new FixFilter().setRejection(FixFilter.DEFAULT_THRESHOLD, OUTLIER_DISTANCE, MAX_ATTEMPTS);
+	private volatile Geofence geofence; // null - bez ograniczenia obszaru
+	private FlightRecorder recorder; // null - przebieg pracy nie jest rejestrowany
+	
+	private volatile State state = State.IDLE;
+	private long warmUpDeadline; // koniec sekwencji rozruchowej (System.nanoTime())
+	
+	private final FixSnapshot fix = new FixSnapshot(); // ostatnio odczytana pozycja
+	private long lastFixSequence = 0; // numer ostatnio przetworzonej pozycji
+	
+	// tryb sterowany zdarzeniami
+	private boolean eventDriven = false;
+	private long minPeriod = 0; // minimalny odstęp między krokami (ns)
+	private long watchdogTimeout; // maksymalny czas bez nowej pozycji (ns)
+	private long awaitedSequence = 0; // numer ostatniej pozycji, która obudziła pętlę
+	private long lastTick;
+	
+	// przewidywanie pozycji między pozycjami GPS
+	private DeadReckoning predictor; // null - kroki tylko po nowej pozycji
+	private long predictionPeriod; // okres kroków z przewidywaną pozycją (ns)
+	private long lastPositionTime; // czas nadejścia ostatniej pozycji (System.nanoTime())
+	private boolean predictedTick; // krok bez nowej pozycji
+	private double lastCompassHeading = Double.NaN;
+	
+	// metryki
+	private final Counter rejectedZeros = rejectedCounter("zeros");
+	private final Counter rejectedDistant = rejectedCounter("distant");
+	private final Counter rejectedEqual = rejectedCounter("equal");
+	private final Counter geofenceBreaches = MetricsRegistry.getDefault().counter("controller_geofence_breaches_total", 
+			"Accepted positions outside the geofence that stopped the robot");
+	private final Counter fencedTargets = MetricsRegistry.getDefault().counter("controller_fenced_targets_total", 
+			"Targets skipped because they lie outside the geofence");
+	private final Histogram fixAge = MetricsRegistry.getDefault().histogram("controller_fix_age_seconds", 
+			"Age of the position used for a steering decision", Histogram.DEFAULT_TIME_BOUNDS);
+	private final Histogram loopPeriod = MetricsRegistry.getDefault().histogram("controller_loop_period_seconds", 
+			"Time between control loop steps", Histogram.DEFAULT_TIME_BOUNDS);
+	private final Histogram loopJitter = MetricsRegistry.getDefault().histogram("controller_loop_jitter_seconds", 
+			"Difference between consecutive control loop periods", Histogram.DEFAULT_TIME_BOUNDS);
+	private long lastLoopTime, lastLoopPeriod = -1;
+	private PrometheusServer metricsServer; // null jeśli metryki nie są wystawiane przez HTTP
 	
 	protected Logger logger = new Logger(RobotController.class, "Logs/controller");
 	
 	public RobotController() {
 		initSerialPort();
 	}
+	
+	/**
+	 * Używa podanego (już zainicjalizowanego) portu szeregowego bez nadzoru łącza - jazda nie czeka
+	 * na połączenie (symulacja, pomiary)
+	 * @param spm
+	 */
+	protected RobotController(GPSSerialPortManager spm) {
+		this.spm = spm;
+	}
 
 	/**
 	 * Inicjalizuje port szeregowy
 	 */
 	private void initSerialPort() {
 		spm = new GPSSerialPortManager();
+		// rozkazy wysyłane w tle, powtarzane "0|0" w czasie postoju są pomijane
+		spm.enableCommandWriter(COMMAND_QUEUE_SIZE).setSuppressDuplicates(true, COMMAND_RESEND_INTERVAL);
 		spm.initialize();
+		
+		// zerwane łącze (lub port nieotwarty przy starcie) jest odnawiane w tle, w tym czasie robot stoi
+		supervisor = new ConnectionSupervisor(spm);
+		supervisor.addListener(this);
+		try {
+			PortDiscovery.getDefault().startWatching();
+			supervisor.watch(PortDiscovery.getDefault());
+		} catch (IOException e) {
+			System.err.println(e.toString());
+		}
+		linkDown = !spm.isOpen(); // nadzorca nie zgłasza stanu początkowego
+		supervisor.start();
+	}
+	
+	/**
+	 * Zatrzymuje robota po zerwaniu łącza i wznawia jazdę (od sekwencji rozruchowej) po jego odnowieniu.
+	 * Wywoływane z wątku nadzorującego - stan zmienia i rozkaz zatrzymania wysyła pętla sterowania,
+	 * budzona tutaj w trybie sterowanym zdarzeniami.
+	 */
+	@Override
+	public void linkStateChanged(LinkState linkState, String reason) {
+		logger.info("Link " + linkState + ": " + reason);
+		
+		if(linkState == LinkState.DOWN) {
+			linkDown = true;
+			spm.getFixHolder().wakeUp();
+		} else if(linkState == LinkState.CONNECTED) {
+			linkDown = false;
+		}
+	}
+	
+	/**
+	 * @return true jeśli łącze z portem jest zerwane
+	 */
+	public boolean isLinkDown() {
+		return linkDown;
 	}
 	
 	/**
@@ -55,22 +189,132 @@ public class RobotController implements Runnable {
 	 * @param target
 	 */
 	public void addTarget(GPSData target) {
-		this.targets.add(target);
+		this.targets.add(target.getLatitude(), target.getLongitude());
+		if(missionLoader == null)
+			waypointIndex.add(target.getLatitude(), target.getLongitude());
 		logger.info("Target added: " + target);
 	}
 	
+	/**
+	 * Wstawia punkt docelowy w podanym miejscu kolejki. Wstawienie przed aktualnym celem
+	 * przerywa jazdę do niego - nowy cel zostanie ustawiony w kolejnym kroku.
+	 * @param index indeks liczony od aktualnego celu (0 - przed aktualnym celem)
+	 * @param target
+	 */
+	public void insertTarget(int index, GPSData target) {
+		this.targets.insert(index, target.getLatitude(), target.getLongitude());
+		if(missionLoader == null) // wstawienie przesuwa numery dalszych celów
+			rebuildIndex();
+		logger.info("Target inserted at " + index + ": " + target);
+		
+		if(index == 0 && currentTarget != null) {
+			currentTarget = null;
+			desiredAngle = null;
+			if(state != State.BREACHED)
+				setState(State.IDLE);
+		}
+	}
+	
+	/**
+	 * Zastępuje cele punktami z pliku misji. Punkty wczytywane są porcjami w trakcie jazdy,
+	 * a misja wznawiana jest od punktu zapisanego w pliku.
+	 * @param mission
+	 * @param window maksymalna liczba punktów misji w kolejce celów
+	 * @return
+	 */
+	public MissionLoader loadMission(MissionFile mission, int window) {
+		clearTargets();
+		
+		missionLoader = new MissionLoader(mission, targets, window);
+		missionLoader.update();
+		logger.info("Mission loaded: " + mission.getCount() + " waypoints, resuming at " + mission.getReached());
+		
+		return missionLoader;
+	}
+	
+	/**
+	 * Wraca na trasę przy najbliższym nieosiągniętym punkcie (misji lub kolejki celów) - punkty przed
+	 * nim są pomijane, a jazda do nowego celu zaczyna się w kolejnym kroku.
+	 * <p>
+	 * Dla misji indeks przestrzenny budowany jest przy pierwszym wywołaniu z punktów jeszcze
+	 * nieosiągniętych i zajmuje około 20 bajtów na punkt - misja, do której robot nie wraca,
+	 * jest czytana z pliku porcjami bez kopiowania punktów do pamięci.
+	 * @return liczba pominiętych punktów lub -1 jeśli pozycja nie jest znana
+	 */
+	public int rejoinRoute() {
+		GPSData position = current;
+		if(position == null)
+			return -1;
+
+		int skipped;
+		if(missionLoader != null) {
+			long reached = missionLoader.getReached();
+			if(waypointIndex.size() == 0) { // numer punktu = indeks w misji - indexBase
+				MissionFile mission = missionLoader.getMission();
+				indexBase = reached;
+				waypointIndex.addAll(mission.coordinates((int) reached, (int) (mission.getCount() - reached)));
+			}
+
+			int nearest = waypointIndex.nearest(position.getLatitude(), position.getLongitude(), (int) (reached - indexBase));
+			if(nearest < 0)
+				return 0;
+
+			missionLoader.seek(nearest + indexBase);
+			skipped = (int) (nearest + indexBase - reached);
+		} else {
+			long reached = targets.getReached();
+			int nearest = waypointIndex.nearest(position.getLatitude(), position.getLongitude(), (int) (reached - indexBase));
+			if(nearest < 0)
+				return 0;
+
+			skipped = (int) (nearest + indexBase - reached);
+			targets.skip(skipped);
+		}
+
+		logger.info("Route rejoined, waypoints skipped: " + skipped);
+		if(skipped > 0 && currentTarget != null) {
+			currentTarget = null;
+			desiredAngle = null;
+			if(state != State.BREACHED)
+				setState(State.IDLE);
+		}
+		return skipped;
+	}
+
+	/**
+	 * Buduje indeks przestrzenny od nowa z celów pozostałych w kolejce
+	 */
+	private void rebuildIndex() {
+		synchronized(targets) {
+			waypointIndex.clear();
+			indexBase = targets.getReached();
+			for(int i = 0; i < targets.size(); i++)
+				waypointIndex.add(targets.latitude(i), targets.longitude(i));
+		}
+	}
+
+	/**
+	 * @return kolejka punktów docelowych
+	 */
+	public WaypointQueue getWaypoints() {
+		return targets;
+	}
+	
 	/**
 	 * Czyści wszystkie cele i zatrzymuje robota
 	 */
 	public void clearTargets() {
 		targets.clear();
+		missionLoader = null;
+		waypointIndex.clear();
+		indexBase = targets.getReached();
 		
 		currentTarget = null;
 		desiredAngle = null;
 		previous = null;
+		setState(State.IDLE);
 		
-		String command = "0|0"; // rozkaz zatrzymania
-		spm.sendCommand(command);
+		spm.sendCommand(0, 0); // rozkaz zatrzymania
 	}
 
 	/**
@@ -86,18 +330,147 @@ public class RobotController implements Runnable {
 	 */
 	public void interrupt() {
 		interrupt = true;
+		spm.getFixHolder().wakeUp();
+	}
+	
+	/**
+	 * Włącza tryb, w którym pętla sterowania jest budzona przez każdą nową pozycję z portu szeregowego
+	 * zamiast co sekundę. Musi zostać wywołane przed uruchomieniem metody run.
+	 * @param minPeriodMillis minimalny odstęp między kolejnymi krokami (0 - bez ograniczenia)
+	 * @param watchdogMillis czas bez nowej pozycji, po którym robot jest zatrzymywany (dodatni)
+	 */
+	public void setEventDriven(long minPeriodMillis, long watchdogMillis) {
+		if(minPeriodMillis < 0)
+			throw new IllegalArgumentException("Minimum period must not be negative");
+		if(watchdogMillis <= 0)
+			throw new IllegalArgumentException("Watchdog timeout must be positive");
+		
+		this.eventDriven = true;
+		this.minPeriod = TimeUnit.MILLISECONDS.toNanos(minPeriodMillis);
+		this.watchdogTimeout = TimeUnit.MILLISECONDS.toNanos(watchdogMillis);
+	}
+	
+	/**
+	 * Włącza przewidywanie pozycji i kierunku między pozycjami GPS na podstawie wysłanych rozkazów.
+	 * Pętla sterowania wykonuje wtedy kroki co zadany okres także bez nowej pozycji. Musi zostać
+	 * wywołane przed uruchomieniem metody run.
+	 * @param periodMillis okres kroków (np. 20 ms - 50 Hz)
+	 * @return moduł przewidywania, do dalszej konfiguracji
+	 */
+	public DeadReckoning enableDeadReckoning(long periodMillis) {
+		if(predictor == null)
+			predictor = new DeadReckoning(MAX_SPEED / MAX_SPEED_PWM, WHEEL_TRACK / 100);
+		predictionPeriod = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+		return predictor;
+	}
+	
+	/**
+	 * Ustawia filtr pozycji (okno, wynik i zasady odrzucania pozycji odstających). Musi zostać
+	 * wywołane przed uruchomieniem metody run.
+	 * @param fixFilter
+	 */
+	public void setFixFilter(FixFilter fixFilter) {
+		this.fixFilter = fixFilter;
+	}
+	
+	/**
+	 * Włącza rejestrowanie przebiegu pracy (pozycje, kierunki i rozkazy) w plikach binarnych
+	 * w katalogu logów. Musi zostać wywołane przed uruchomieniem metody run.
+	 * @return rejestrator lub null jeśli nie udało się utworzyć pliku
+	 */
+	public FlightRecorder enableFlightRecorder() {
+		if(recorder == null) {
+			try {
+				recorder = new FlightRecorder();
+				logger.info("Flight recorder started: " + recorder.getSegment());
+			} catch (IOException e) {
+				System.err.println(e.toString());
+			}
+		}
+		return recorder;
+	}
+	
+	/**
+	 * Ustawia strefy dozwolone i zabronione. Każda przyjęta pozycja poza dozwolonym obszarem zatrzymuje
+	 * robota, a cele poza nim są pomijane.
+	 * @param geofence strefy lub null (bez ograniczenia)
+	 */
+	public void setGeofence(Geofence geofence) {
+		this.geofence = geofence == null ? null : geofence.compile();
+	}
+	
+	/**
+	 * Wznawia pracę po wyjechaniu poza dozwolony obszar (np. po przestawieniu robota). Jazda do
+	 * przerwanego celu zaczyna się od sekwencji rozruchowej.
+	 * @return false jeśli aktualna pozycja nadal jest poza dozwolonym obszarem
+	 */
+	public boolean clearBreach() {
+		if(state != State.BREACHED)
+			return true;
+		
+		Geofence geofence = this.geofence;
+		GPSData position = current;
+		if(geofence != null && position != null && !geofence.isAllowed(position.getLatitude(), position.getLongitude()))
+			return false;
+		
+		logger.info("Geofence breach cleared");
+		setState(State.IDLE);
+		return true;
+	}
+	
+	/**
+	 * Ustawia sposób liczenia odległości i kierunku do celu (domyślnie dokładnie na sferze)
+	 * @param geodesy
+	 */
+	public void setGeodesy(GeodesyBackend geodesy) {
+		this.geodesy = geodesy;
+		
+		if(currentTarget != null)
+			geodesy.targetChanged(targetPoint);
+	}
+	
+	/**
+	 * Wystawia metryki przez JMX i opcjonalnie przez lokalny serwer HTTP w formacie Prometheusa
+	 * @param httpPort port serwera HTTP (ujemny - tylko JMX)
+	 */
+	public void exportMetrics(int httpPort) {
+		try {
+			JmxExporter.register(MetricsRegistry.getDefault(), JmxExporter.DEFAULT_NAME);
+		} catch (JMException e) {
+			System.err.println(e.toString());
+		}
+		
+		if(httpPort >= 0 && metricsServer == null) {
+			try {
+				metricsServer = new PrometheusServer(MetricsRegistry.getDefault(), httpPort);
+				logger.info("Metrics available at http://localhost:" + metricsServer.getPort() + "/metrics");
+			} catch (IOException e) {
+				System.err.println(e.toString());
+			}
+		}
 	}
 	
 	/**
 	 * Zatrzymuje robota
 	 */
 	protected void stop() {
-		String command = "0|0"; // rozkaz zatrzymania
-		spm.sendCommand(command);
+		if(supervisor != null)
+			supervisor.close();
+		if(metricsServer != null)
+			metricsServer.close();
+		
+		spm.sendCommand(0, 0); // rozkaz zatrzymania
 		// zamknij port
 		spm.close();
 		
+		if(missionLoader != null)
+			missionLoader.getMission().force();
+		if(recorder != null)
+			recorder.close();
+		
+		setState(State.STOPPED);
 		logger.info("Robot stopped");
+		Logger.flushAll(); // zapisz zaległe wpisy logów
 	}
 	
 	/**
@@ -108,12 +481,9 @@ public class RobotController implements Runnable {
 		sendCommands();
 		
 		while(!interrupt) {
-			try {
-				TimeUnit.MILLISECONDS.sleep(1000); // odczekaj sekundę
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} 
+			if(!awaitTick())
+				continue;
+			recordLoopPeriod();
 
 			// jeśli ustawiono cel i odrzucono współrzędną jed prosto 
 			updatePreviousAndCurrent();
@@ -123,23 +493,208 @@ public class RobotController implements Runnable {
 		
 		stop();
 	}
+	
+	/**
+	 * Czeka na kolejny krok pętli. W trybie odpytywania odczekuje sekundę, w trybie sterowanym
+	 * zdarzeniami czeka na nową pozycję (z ograniczeniem częstotliwości) i zatrzymuje robota,
+	 * jeśli pozycja nie nadejdzie w zadanym czasie.
+	 * @return false jeśli krok należy pominąć
+	 */
+	private boolean awaitTick() {
+		try {
+			if(!eventDriven) {
+				if(predictor != null)
+					TimeUnit.NANOSECONDS.sleep(predictionPeriod);
+				else
+					TimeUnit.MILLISECONDS.sleep(POLLING_PERIOD); // odczekaj sekundę
+				return true;
+			}
+			
+			long wait = lastTick + minPeriod - System.nanoTime();
+			if(wait > 0)
+				TimeUnit.NANOSECONDS.sleep(wait);
+			
+			long now = System.nanoTime();
+			long timeout = watchdogTimeout;
+			boolean tickFirst = false;
+			
+			// z przewidywaniem krok wykonywany jest co okres, a czas kontroli liczy się od ostatniej pozycji
+			if(predictor != null) {
+				if(lastPositionTime == 0)
+					lastPositionTime = now;
+				timeout = Math.max(lastPositionTime + watchdogTimeout - now, 0);
+				if(predictionPeriod < timeout) {
+					timeout = predictionPeriod;
+					tickFirst = true;
+				}
+			}
+			
+			// w trakcie rozruchu krok wyzwala także koniec sekwencji
+			if(state == State.WARM_UP) {
+				long untilDeadline = warmUpDeadline - now;
+				if(untilDeadline < timeout) {
+					timeout = Math.max(untilDeadline, 0);
+					tickFirst = true;
+				}
+			}
+			
+			// stan budzenia odczytany przed sprawdzeniem warunków - późniejsze wakeUp nie zostanie utracone
+			FixHolder fixHolder = spm.getFixHolder();
+			long wakeUps = fixHolder.getWakeUps();
+			if(interrupt)
+				return false;
+			if(isLinkLost())
+				return true;
+			
+			if(fixHolder.awaitPosition(awaitedSequence, wakeUps, timeout, TimeUnit.NANOSECONDS)) {
+				lastPositionTime = System.nanoTime();
+			} else {
+				if(interrupt)
+					return false;
+				if(isLinkLost())
+					return true; // krok zatrzymuje robota
+				
+				if(!tickFirst) {
+					lastPositionTime = System.nanoTime(); // kolejna kontrola po pełnym czasie
+					onWatchdog();
+					return false;
+				}
+			}
+			
+			awaitedSequence = fixHolder.getSequence();
+			lastTick = System.nanoTime();
+			return true;
+		} catch (InterruptedException e) {
+			interrupt = true;
+			return false;
+		}
+	}
+	
+	/**
+	 * Zapisuje okres pętli sterowania i jego zmianę względem poprzedniego kroku
+	 */
+	private void recordLoopPeriod() {
+		long now = System.nanoTime();
+		if(lastLoopTime != 0) {
+			long period = now - lastLoopTime;
+			loopPeriod.recordNanos(period);
+			if(lastLoopPeriod >= 0)
+				loopJitter.recordNanos(Math.abs(period - lastLoopPeriod));
+			lastLoopPeriod = period;
+		}
+		lastLoopTime = now;
+	}
+	
+	private static Counter rejectedCounter(String reason) {
+		return MetricsRegistry.getDefault().counter("controller_fix_rejected_total", "Positions rejected by the controller", 
+				"reason", reason);
+	}
+	
+	/**
+	 * Zatrzymuje robota, gdy przez zbyt długi czas nie nadeszła nowa pozycja
+	 */
+	private void onWatchdog() {
+		logger.info("No position received for " + TimeUnit.NANOSECONDS.toMillis(watchdogTimeout) + "ms. Stopping");
+		sendCommand(0, 0);
+		
+		// po wznowieniu odbioru pozycji zacznij od sekwencji rozruchowej
+		if(state == State.WARM_UP || state == State.TRACKING)
+			setState(State.IDLE);
+	}
 
 	/**
 	 * Aktualizuje poprzedni i aktualny punkt
 	 */
 	protected void updatePreviousAndCurrent() {
-		GPSData receivedData = spm.getGps();
+		predictedTick = true;
+		updatePredictedHeading();
+		
+		// brak nowej pozycji od ostatniego sprawdzenia
+		if(!spm.readFix(fix) || fix.getSequence() == lastFixSequence)
+			return;
+		
+		lastFixSequence = fix.getSequence();
+		GPSData receivedData = new GPSData(fix.getLatitude(), fix.getLongitude());
 
-		if(ignoreZerosOnStart(receivedData))
+		if(ignoreZerosOnStart(receivedData)) {
+			rejectedZeros.increment();
+			recordFix(FlightRecorder.REJECTED_ZEROS);
 			return;
+		}
 
 		logger.info("Received data: " + receivedData);
 
-		if(ignoreDistantResult(receivedData) || ignoreEqualResult(receivedData))
+		// powtórzona pozycja nie trafia do okna filtru
+		if(ignoreEqualResult(receivedData)) {
+			rejectedEqual.increment();
+			recordFix(FlightRecorder.REJECTED_EQUAL);
+			return;
+		}
+		if(ignoreDistantResult(receivedData)) {
+			rejectedDistant.increment();
+			recordFix(FlightRecorder.REJECTED_DISTANT);
 			return;
+		}
+		recordFix(FlightRecorder.ACCEPTED);
+		lastReceived = receivedData;
 
 		previous = current; // zapamietaj aktualna pozycje jako pozycje poprzednia
-		current = new GPSData(receivedData);
+		current = new GPSData(fixFilter.getLatitude(), fixFilter.getLongitude());
+		predictedTick = false;
+		checkGeofence();
+		
+		if(predictor != null)
+			predictor.fix(current.getLatitude(), current.getLongitude(), fix.getTimestamp());
+	}
+	
+	/**
+	 * Rejestruje odebraną pozycję (w chwili odbioru)
+	 * @param flag przyjęta lub powód odrzucenia
+	 */
+	private void recordFix(byte flag) {
+		if(recorder != null)
+			recorder.record(FlightRecorder.FIX, fix.getTimestamp(), fix.getLatitude(), fix.getLongitude(), 
+					heading, flag, 0, 0, targetIndex());
+	}
+	
+	/**
+	 * @return bezwzględny indeks aktualnego celu (w misji, jeśli jest wczytana) lub -1
+	 */
+	private long targetIndex() {
+		if(currentTarget == null)
+			return -1;
+		return missionLoader != null ? missionLoader.getReached() : targets.getReached();
+	}
+	
+	/**
+	 * Zatrzymuje robota, jeśli przyjęta pozycja leży poza dozwolonym obszarem. Robot stoi do wywołania
+	 * {@link #clearBreach()} lub {@link #clearTargets()}, więc szum pozycji przy granicy nie wznawia jazdy.
+	 */
+	private void checkGeofence() {
+		Geofence geofence = this.geofence;
+		if(geofence == null || state == State.BREACHED || state == State.STOPPED)
+			return;
+		if(geofence.isAllowed(current.getLatitude(), current.getLongitude()))
+			return;
+		
+		geofenceBreaches.increment();
+		logger.info("Geofence breached at " + current + ". Stopping");
+		sendCommand(0, 0);
+		setState(State.BREACHED);
+	}
+	
+	/**
+	 * Przekazuje nowy odczyt kompasu do modułu przewidywania
+	 */
+	private void updatePredictedHeading() {
+		if(predictor == null)
+			return;
+		
+		double compass = spm.getFixHolder().getHeading();
+		if(!Double.isNaN(compass) && compass != lastCompassHeading) {
+			lastCompassHeading = compass;
+			predictor.heading(compass, System.nanoTime());
+		}
 	}
 
 	/**
@@ -155,7 +710,7 @@ public class RobotController implements Runnable {
 	}
 
 	/** 
-	 * Jeśli odległość między punktami jest większa niż 5 metrów - ignoruj.
+	 * Jeśli pozycja leży dalej niż 5 metrów od mediany ostatnich pozycji (i daleko poza ich rozrzutem) - ignoruj.
 	 * Jeśli 3 współrzędne pod rząd zostanie zignorowanych to następna zostanie uwzględniona.
 	 * Jest to zabezpieczenie przed sytuacją kiedy robot mimo wszystko jechał w poprawnym kierunku
 	 * ale GPS przez pewien okres czasu dawał błędne dane. Wtedy robot mógł się zablokować na jednym
@@ -164,26 +719,22 @@ public class RobotController implements Runnable {
 	 * @return
 	 */
 	private boolean ignoreDistantResult(GPSData receivedData) {
-		if(current != null && receivedData.getDistanceTo(current) > 5 && attemptsNo > 0) {
-			attemptsNo--; // zmniejsz liczbę prób
-
-			logger.info("Distance between current and received is higher than 5m. Ignored");
+		if(!fixFilter.add(receivedData.getLatitude(), receivedData.getLongitude())) {
+			logger.info("Distance between median and received is " + fixFilter.getLastDistance() + "m. Ignored");
 			return true;
 		}
 		
-		attemptsNo = MAX_ATTEMPTS; // zresetuj liczbę prób
-		
 		return false;
 	}
 
 	/**
-	 * Ignoruj wynik jeśli jest on identyczny z poprzednim
+	 * Ignoruj wynik jeśli jest on identyczny z poprzednim (przed filtrem - wynik filtru może być uśredniony)
 	 * @param receivedData
 	 * @return
 	 */
 	private boolean ignoreEqualResult(GPSData receivedData) {
-		if(current != null) {
-			if(current.equalsPrecise(receivedData)) {
+		if(lastReceived != null) {
+			if(lastReceived.equalsPrecise(receivedData)) {
 
 				logger.info("Received data is the same as last known value. Ignored");
 				return true;
@@ -206,96 +757,223 @@ public class RobotController implements Runnable {
 	}
 
 	/**
-	 * Dokonuje obliczeń, buduje komendy i wysyła je do robota
+	 * Dokonuje obliczeń, buduje komendy i wysyła je do robota. Zachowanie zależy od stanu kontrolera.
+	 */
+	protected void sendCommands() {
+		if(isLinkLost()) // rozkaz zatrzymania wysyła stan IDLE, po odnowieniu łącza jazda od sekwencji rozruchowej
+			setState(State.IDLE);
+		
+		switch(state) {
+			case IDLE:
+			case ARRIVED: // każ robotowi stać, jeśli cel się pojawi ustaw go jako aktywny
+				sendCommand(0, 0);
+				
+				if(supervisor != null && linkDown) // czekaj na odnowienie łącza
+					break;
+				else if(currentTarget != null) // wznowienie jazdy do przerwanego celu
+					startWarmUp();
+				else if(!targets.isEmpty())
+					applyTarget();
+				break;
+			case WARM_UP:
+				if(System.nanoTime() - warmUpDeadline < 0)
+					break; // robot jedzie prosto, pozycje są w tym czasie aktualizowane
+				
+				setState(State.TRACKING);
+				track();
+				break;
+			case TRACKING:
+				track();
+				break;
+			case BREACHED: // stój do wywołania clearBreach
+				sendCommand(0, 0);
+				break;
+			case STOPPED:
+				break;
+		}
+	}
+
+	/**
+	 * Prowadzi robota do aktualnego celu
 	 */
-	private void sendCommands() {
+	private void track() {
+		if(currentTarget == null) { // cele wyczyszczone w trakcie jazdy
+			setState(State.IDLE);
+			return;
+		}
+		
+		double distance = Double.POSITIVE_INFINITY;
+		long now = System.nanoTime();
+		boolean predicted = predictor != null && predictor.isValid(now);
+		if(predicted) { // pozycja przewidziana na bieżącą chwilę
+			predictor.predict(now);
+			predictor.getPosition(currentPoint);
+			distance = geodesy.distance(currentPoint, targetPoint);
+		} else if(current != null) {
+			currentPoint.set(current);
+			distance = geodesy.distance(currentPoint, targetPoint);
+		}
+		
+		// kroki z przewidywaną pozycją nie są logowane szczegółowo
+		boolean verbose = !predictedTick || predictor == null;
 		
-		if(currentTarget != null) { // jeśli jest ustalony aktualny cel
-			if(!currentTarget.equals(current)) { // jeśli nie jest on taki sam jak aktualna pozycja
-				if(current != null && previous != null) {	
-					logger.info("Distance from current to target: " + current.getDistanceTo(currentTarget) + "m");
+		if(distance >= ARRIVAL_DISTANCE) { // jeśli cel nie jest taki sam jak aktualna pozycja
+			if(predicted || current != null && previous != null) {	
+				if(verbose) {
+					logger.info("Distance from current to target: " + distance + "m");
 					logger.info("Previous: " + previous + " Current: " + current + " Target: " + currentTarget);
 					logger.info("---------------------");
-	
+				}
+
+				if(predicted)
+					setHeading(predictor.getHeading());
+				else
 					setHeading();
+				if(recorder != null)
+					recorder.record(FlightRecorder.HEADING, now, currentPoint.getLatitude(), currentPoint.getLongitude(), 
+							heading, predicted ? FlightRecorder.PREDICTED : FlightRecorder.ACCEPTED, 0, 0, targetIndex());
+				
+				desiredAngle = Angle.denormalizeAngle(geodesy.bearing(currentPoint, targetPoint));
+
+				double angleDelta = Math.atan2(Math.sin(desiredAngle - heading), Math.cos(desiredAngle - heading));
+				if(verbose) {
 					logger.info("Heading: " + Math.toDegrees(heading));
-					
-					desiredAngle = Angle.denormalizeAngle(current.getBearingWith(currentTarget));
 					logger.info("Desired angle: " + Math.toDegrees(desiredAngle));
-	
-					double angleDelta = Math.atan2(Math.sin(desiredAngle - heading), Math.cos(desiredAngle - heading));
 					logger.info("Delta: " + Math.toDegrees(angleDelta) + " " + Math.toDegrees(2*Math.PI - angleDelta) + "\n");
-					
-					double radius = 600 / Math.toDegrees(Math.abs(angleDelta)) + 35;
-					radius = Math.min(radius, 500000); // limit to 500 meters
-					
-					double leftVelocity = 0.0;
-					double rightVelocity = 0.0;
-					
-					if(angleDelta < 0) { // left
-						rightVelocity = speed;
-						leftVelocity = speed * (radius - WHEEL_TRACK / 2) / (radius + WHEEL_TRACK / 2) - 70;
-					} else if(angleDelta > 0) { // right
-						leftVelocity = speed;
-						rightVelocity = speed * (radius - WHEEL_TRACK / 2) / (radius + WHEEL_TRACK / 2) - 70;
-					}
-	
-					String command = (int)leftVelocity + "|" + (int)rightVelocity;
-					logger.info("Command: " + (int)leftVelocity + ", " + (int)rightVelocity + " Radius: " + radius + "cm / " + radius/100 + "m");
-					sendCommand(command);
-	
 				}
-			} else { // każd robotowi się zatrzymać jeśli osiągnął cel, poszukaj następnego celu
-				logger.info("Target reached!");
 				
-				String command = "0|0";
-				sendCommand(command);
+				double radius = 600 / Math.toDegrees(Math.abs(angleDelta)) + 35;
+				radius = Math.min(radius, 500000); // limit to 500 meters
+				
+				double leftVelocity = 0.0;
+				double rightVelocity = 0.0;
+				
+				if(angleDelta < 0) { // left
+					rightVelocity = speed;
+					leftVelocity = speed * (radius - WHEEL_TRACK / 2) / (radius + WHEEL_TRACK / 2) - 70;
+				} else if(angleDelta > 0) { // right
+					leftVelocity = speed;
+					rightVelocity = speed * (radius - WHEEL_TRACK / 2) / (radius + WHEEL_TRACK / 2) - 70;
+				}
 
-				targets.remove(0);
-				if(!targets.isEmpty())
-					applyTarget();
-				else
-					currentTarget = null;
+				if(verbose)
+					logger.info("Command: " + (int)leftVelocity + ", " + (int)rightVelocity + " Radius: " + radius + "cm / " + radius/100 + "m");
+				sendCommand((int)leftVelocity, (int)rightVelocity);
+				if(fix.getTimestamp() != 0)
+					fixAge.recordNanos(System.nanoTime() - fix.getTimestamp());
 
-				desiredAngle = null;
 			}
-		} else { // każ robotowi stać jeśli nie ma zdefiniowanego celu, jeśli cel się pojawi ustaw go jako aktywny
-			String command = "0|0"; 
-			sendCommand(command);
+		} else { // każd robotowi się zatrzymać jeśli osiągnął cel, poszukaj następnego celu
+			logger.info("Target reached!");
+			
+			sendCommand(0, 0);
+
+			targets.advance();
+			if(missionLoader != null) // zapisz postęp i uzupełnij kolejkę
+				missionLoader.update();
+			desiredAngle = null;
 			
-			if(!targets.isEmpty())
+			if(!targets.isEmpty()) {
 				applyTarget();
+			} else {
+				currentTarget = null;
+				setState(State.ARRIVED);
+			}
 		}
 	}
 
 	/**
-	 * Ustawia nowy cel i dodaje 3 sekundową sekwencję rozruchową w celu aktualizacji współrzędnych
+	 * Ustawia nowy cel i rozpoczyna 3 sekundową sekwencję rozruchową w celu aktualizacji współrzędnych
 	 */
 	private void applyTarget() {
+		if(!skipFencedTargets()) {
+			currentTarget = null;
+			setState(State.ARRIVED);
+			return;
+		}
+		
 		currentTarget = targets.get(0);
+		targets.get(0, targetPoint);
+		geodesy.targetChanged(targetPoint);
 		logger.info("Target set: " + currentTarget);
+		startWarmUp();
+	}
+
+	/**
+	 * Pomija cele leżące poza dozwolonym obszarem
+	 * @return false jeśli nie został żaden cel
+	 */
+	private boolean skipFencedTargets() {
+		Geofence geofence = this.geofence;
+		if(geofence != null) {
+			while(!targets.isEmpty() && !geofence.isAllowed(targets.latitude(0), targets.longitude(0))) {
+				fencedTargets.increment();
+				logger.info("Target outside geofence skipped: " + targets.get(0));
+				
+				targets.advance();
+				if(missionLoader != null)
+					missionLoader.update();
+			}
+		}
+		return !targets.isEmpty();
+	}
+
+	/**
+	 * @return true jeśli łącze zostało zerwane w trakcie jazdy (wywoływane w wątku pętli sterowania)
+	 */
+	private boolean isLinkLost() {
+		return supervisor != null && linkDown && (state == State.WARM_UP || state == State.TRACKING);
+	}
+
+	/**
+	 * Rozpoczyna sekwencję rozruchową - robot jedzie prosto, a pętla sterowania dalej
+	 * przetwarza pozycje. Śledzenie celu zaczyna się po upływie {@link #WARM_UP_TIME}.
+	 */
+	private void startWarmUp() {
 		driveStraight();
-		try {
-			TimeUnit.SECONDS.sleep(3);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		warmUpDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARM_UP_TIME);
+		setState(State.WARM_UP);
+	}
+
+	/**
+	 * Skraca sekwencję rozruchową - śledzenie celu zaczyna się w kolejnym kroku (symulacja, pomiary)
+	 */
+	protected void endWarmUp() {
+		warmUpDeadline = System.nanoTime();
+	}
+
+	/**
+	 * Zmienia stan kontrolera
+	 * @param newState
+	 */
+	protected void setState(State newState) {
+		if(state != newState) {
+			logger.info("State: " + state + " -> " + newState);
+			state = newState;
 		}
 	}
 
+	/**
+	 * @return aktualny stan kontrolera
+	 */
+	public State getState() {
+		return state;
+	}
+
 	/**
 	 * Rozkaz jazdy prosto
 	 */
 	private void driveStraight() {
-		sendCommand("255|255"); // każ robotowi jechać prosto
+		sendCommand(255, 255); // każ robotowi jechać prosto
 	}
 
 	/**
 	 * Ustawia kierunek. Wydzielone do funkcji aby można było kontrolować tą wartość takeże w testach.
 	 */
 	protected void setHeading() {
-		Double headingFromMagnetometer = spm.getHeading();
+		double headingFromMagnetometer = spm.getFixHolder().getHeading();
 		
-		if(headingFromMagnetometer != null)
+		if(!Double.isNaN(headingFromMagnetometer))
 			setHeading(headingFromMagnetometer);
 		else
 			setHeading(Angle.denormalizeAngle(previous.getBearingWith(current)));
@@ -303,10 +981,22 @@ public class RobotController implements Runnable {
 
 	/**
 	 * Wysyła komendę przez port szeregowy
-	 * @param command
+	 * @param left wartość dla lewego koła
+	 * @param right wartość dla prawego koła
 	 */
-	protected void sendCommand(String command) {
-		spm.sendCommand(command);
-		logger.info("Command " + command + " was sent\r\n\r\n");
+	protected void sendCommand(int left, int right) {
+		spm.sendCommand(left, right);
+		long now = System.nanoTime();
+		if(predictor != null)
+			predictor.command(left, right, now);
+		if(recorder != null) {
+			GPSData position = current;
+			recorder.record(FlightRecorder.COMMAND, now, position == null ? Double.NaN : position.getLatitude(), 
+					position == null ? Double.NaN : position.getLongitude(), heading, 
+					predictedTick && predictor != null ? FlightRecorder.PREDICTED : FlightRecorder.ACCEPTED, left, right, targetIndex());
+		}
+		
+		if(!predictedTick || predictor == null)
+			logger.info("Command " + left + "|" + right + " was sent\r\n\r\n");
 	}
 }
@@ -0,0 +1,344 @@
+package com.navigation.algorithm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Przewidywanie pozycji i kierunku robota między kolejnymi pozycjami GPS (model jednokołowy).
+ * Prędkość liniowa i obrotowa wynikają z wysłanych zadanych prędkości kół, a każda nowa pozycja
+ * i odczyt kompasu korygują stan ze stałym wzmocnieniem (filtr alfa-beta). Stosunek rzeczywistej
+ * prędkości do zadanej jest przy tym stale doszacowywany.
+ * <p>
+ * Stan liczony jest w lokalnym układzie East-North zakotwiczonym w pierwszej pozycji. Wszystkie pola
+ * są prymitywne, a metody nie tworzą obiektów, więc przewidywanie można wywoływać z dużą częstotliwością.
+ * Instancja nie jest bezpieczna wątkowo.
+ * @author Harry
+ *
+ */
+public class DeadReckoning {
+
+	public static final double DEFAULT_POSITION_GAIN = 0.7;
+	public static final double DEFAULT_HEADING_GAIN = 0.5;
+	public static final double DEFAULT_SPEED_GAIN = 0.2;
+	public static final long DEFAULT_HORIZON = 2000; // ms
+
+	private static final double MIN_COURSE_DISTANCE = 0.5; // minimalne przesunięcie do wyznaczenia kursu (m)
+	private static final double MIN_SCALE_DISTANCE = 2; // minimalna droga do doszacowania skali prędkości (m)
+	private static final double MAX_SCALE_TURN = 0.2; // maksymalny obrót na tej drodze (rad), na łuku cięciwa jest krótsza
+	private static final double REANCHOR_DISTANCE = 1000; // odległość od zakotwiczenia, po której układ jest przesuwany (m)
+	private static final double MIN_SPEED_SCALE = 0.2, MAX_SPEED_SCALE = 3;
+	private static final double TWO_PI = 2 * Math.PI;
+
+	private final double speedPerUnit; // m/s na jednostkę zadanej prędkości koła
+	private final double wheelTrack; // rozstaw kół (m)
+
+	private double positionGain = DEFAULT_POSITION_GAIN;
+	private double headingGain = DEFAULT_HEADING_GAIN;
+	private double speedGain = DEFAULT_SPEED_GAIN;
+	private long horizon = TimeUnit.MILLISECONDS.toNanos(DEFAULT_HORIZON);
+
+	// układ lokalny
+	private boolean anchored;
+	private double anchorLatRad, anchorLonRad, eastScale;
+
+	// stan
+	private double east, north; // m
+	private double heading = Double.NaN; // rad, 0 .. 2PI, zgodnie z ruchem wskazówek zegara od północy
+	private double speed, yawRate; // z zadanych prędkości (m/s, rad/s)
+	private double speedScale = 1; // rzeczywista prędkość / zadana
+	private long stateTime; // czas stanu (System.nanoTime())
+
+	// ostatnia pozycja GPS
+	private boolean hasFix;
+	private long fixTime, headingTime;
+	private double courseEast, courseNorth; // pozycja początkowa do wyznaczenia kursu
+	private double scaleEast, scaleNorth; // pozycja początkowa do doszacowania skali prędkości
+	private double commandedDistance; // droga wynikająca z rozkazów od pozycji początkowej (bez skali)
+	private double commandedTurn; // obrót wynikający z rozkazów od pozycji początkowej (bez skali)
+
+	/**
+	 * @param speedPerUnit prędkość koła w m/s odpowiadająca jednostce zadanej prędkości
+	 * @param wheelTrack rozstaw kół w metrach
+	 */
+	public DeadReckoning(double speedPerUnit, double wheelTrack) {
+		if(speedPerUnit <= 0 || wheelTrack <= 0)
+			throw new IllegalArgumentException("Speed per unit and wheel track must be positive");
+
+		this.speedPerUnit = speedPerUnit;
+		this.wheelTrack = wheelTrack;
+	}
+
+	/**
+	 * Ustawia wzmocnienia korekty (0 - pomiar ignorowany, 1 - stan zastępowany pomiarem)
+	 * @param position korekta pozycji przez GPS
+	 * @param heading korekta kierunku przez kompas lub kurs z kolejnych pozycji
+	 * @param speed korekta skali prędkości
+	 * @return
+	 */
+	public DeadReckoning setGains(double position, double heading, double speed) {
+		this.positionGain = position;
+		this.headingGain = heading;
+		this.speedGain = speed;
+		return this;
+	}
+
+	/**
+	 * Ustawia maksymalny czas przewidywania od ostatniej pozycji GPS
+	 * @param horizonMillis
+	 * @return
+	 */
+	public DeadReckoning setHorizon(long horizonMillis) {
+		this.horizon = TimeUnit.MILLISECONDS.toNanos(horizonMillis);
+		return this;
+	}
+
+	/**
+	 * Porzuca stan (np. po zerwaniu łącza)
+	 */
+	public void reset() {
+		anchored = false;
+		hasFix = false;
+		heading = Double.NaN;
+		speed = 0;
+		yawRate = 0;
+		commandedDistance = 0;
+		commandedTurn = 0;
+	}
+
+	/**
+	 * Koryguje stan pozycją GPS
+	 * @param latitude stopnie
+	 * @param longitude stopnie
+	 * @param timestamp czas odbioru pozycji (System.nanoTime())
+	 */
+	public void fix(double latitude, double longitude, long timestamp) {
+		double latRad = Math.toRadians(latitude), lonRad = Math.toRadians(longitude);
+
+		if(!anchored || Math.abs(latRad - anchorLatRad) * Geodesy.R > REANCHOR_DISTANCE
+				|| Math.abs(lonRad - anchorLonRad) * eastScale > REANCHOR_DISTANCE) {
+			anchor(latRad, lonRad);
+		}
+
+		double measuredEast = (lonRad - anchorLonRad) * eastScale;
+		double measuredNorth = (latRad - anchorLatRad) * Geodesy.R;
+
+		if(!hasFix || timestamp - fixTime > horizon) { // brak wiarygodnego stanu
+			east = measuredEast;
+			north = measuredNorth;
+			stateTime = timestamp;
+			courseEast = scaleEast = measuredEast;
+			courseNorth = scaleNorth = measuredNorth;
+			commandedDistance = 0;
+			commandedTurn = 0;
+		} else {
+			// stan mógł zostać przewidziany dalej niż czas pozycji - przesuń pomiar do czasu stanu
+			if(timestamp - stateTime < 0 && !Double.isNaN(heading)) {
+				double lag = (stateTime - timestamp) / 1e9;
+				double distance = speed * speedScale * lag;
+				measuredEast += distance * Math.sin(heading);
+				measuredNorth += distance * Math.cos(heading);
+			} else {
+				advance(timestamp);
+			}
+
+			updateSpeedScale(measuredEast, measuredNorth);
+			updateCourse(measuredEast, measuredNorth, timestamp);
+
+			east += positionGain * (measuredEast - east);
+			north += positionGain * (measuredNorth - north);
+		}
+
+		hasFix = true;
+		fixTime = timestamp;
+	}
+
+	/**
+	 * Koryguje kierunek odczytem kompasu
+	 * @param heading radiany, zgodnie z ruchem wskazówek zegara od północy
+	 * @param timestamp czas odczytu (System.nanoTime())
+	 */
+	public void heading(double heading, long timestamp) {
+		advance(timestamp);
+		correctHeading(heading, headingGain);
+		headingTime = timestamp;
+	}
+
+	/**
+	 * Zapamiętuje wysłane zadane prędkości kół
+	 * @param left
+	 * @param right
+	 * @param timestamp czas wysłania (System.nanoTime())
+	 */
+	public void command(int left, int right, long timestamp) {
+		advance(timestamp);
+		speed = (left + right) / 2.0 * speedPerUnit;
+		yawRate = (left - right) * speedPerUnit / wheelTrack; // szybsze lewe koło - skręt w prawo
+	}
+
+	/**
+	 * Przesuwa stan do podanej chwili
+	 * @param now System.nanoTime()
+	 */
+	public void predict(long now) {
+		advance(now);
+	}
+
+	/**
+	 * @param now System.nanoTime()
+	 * @return true jeśli stan jest znany i ostatnia pozycja GPS nie jest starsza niż horyzont przewidywania
+	 */
+	public boolean isValid(long now) {
+		return hasFix && !Double.isNaN(heading) && now - fixTime <= horizon;
+	}
+
+	/**
+	 * Zapisuje przewidywaną pozycję do punktu
+	 * @param result
+	 */
+	public void getPosition(PreparedPoint result) {
+		result.set(getLatitude(), getLongitude());
+	}
+
+	public double getLatitude() {
+		return Math.toDegrees(anchorLatRad + north / Geodesy.R);
+	}
+
+	public double getLongitude() {
+		return Math.toDegrees(anchorLonRad + east / eastScale);
+	}
+
+	/**
+	 * @return kierunek w radianach (0 .. 2PI) lub NaN jeśli nieznany
+	 */
+	public double getHeading() {
+		return heading;
+	}
+
+	/**
+	 * @return przewidywana prędkość (m/s)
+	 */
+	public double getSpeed() {
+		return speed * speedScale;
+	}
+
+	/**
+	 * @return doszacowany stosunek rzeczywistej prędkości do zadanej
+	 */
+	public double getSpeedScale() {
+		return speedScale;
+	}
+
+	/**
+	 * @return czas od ostatniej pozycji GPS do chwili stanu (ns)
+	 */
+	public long getPredictionAge() {
+		return stateTime - fixTime;
+	}
+
+	private void anchor(double latRad, double lonRad) {
+		if(anchored) { // przenieś stan do nowego układu
+			double latitude = anchorLatRad + north / Geodesy.R;
+			double longitude = anchorLonRad + east / eastScale;
+			double shiftNorth = (anchorLatRad - latRad) * Geodesy.R;
+			double shiftEast = (anchorLonRad - lonRad) * Geodesy.R * Math.cos(latRad);
+
+			setAnchor(latRad, lonRad);
+			north = (latitude - anchorLatRad) * Geodesy.R;
+			east = (longitude - anchorLonRad) * eastScale;
+			// punkty odniesienia leżą blisko, wystarczy przesunięcie układu
+			courseNorth += shiftNorth;
+			courseEast += shiftEast;
+			scaleNorth += shiftNorth;
+			scaleEast += shiftEast;
+		} else {
+			setAnchor(latRad, lonRad);
+		}
+	}
+
+	private void setAnchor(double latRad, double lonRad) {
+		anchorLatRad = latRad;
+		anchorLonRad = lonRad;
+		eastScale = Geodesy.R * Math.cos(latRad);
+		anchored = true;
+	}
+
+	/**
+	 * Całkuje ruch po łuku od czasu stanu do podanej chwili (nie dalej niż horyzont od ostatniej pozycji)
+	 * @param time
+	 */
+	private void advance(long time) {
+		if(hasFix && time - (fixTime + horizon) > 0)
+			time = fixTime + horizon;
+
+		long elapsed = time - stateTime;
+		if(elapsed <= 0)
+			return;
+		stateTime = time;
+
+		if(Double.isNaN(heading) || !hasFix)
+			return;
+
+		double dt = elapsed / 1e9;
+		double v = speed * speedScale;
+		double turn = yawRate * speedScale * dt;
+		commandedDistance += Math.abs(speed) * dt;
+		commandedTurn += Math.abs(yawRate) * dt;
+
+		if(Math.abs(turn) < 1e-6) {
+			east += v * dt * Math.sin(heading);
+			north += v * dt * Math.cos(heading);
+		} else {
+			double radius = v * dt / turn;
+			double newHeading = heading + turn;
+			east += radius * (Math.cos(heading) - Math.cos(newHeading));
+			north += radius * (Math.sin(newHeading) - Math.sin(heading));
+			heading = wrap(newHeading);
+		}
+	}
+
+	/**
+	 * Porównuje przesunięcie między pozycjami GPS z drogą wynikającą z rozkazów
+	 */
+	private void updateSpeedScale(double measuredEast, double measuredNorth) {
+		if(commandedDistance < MIN_SCALE_DISTANCE && commandedTurn < MAX_SCALE_TURN)
+			return;
+
+		if(commandedTurn < MAX_SCALE_TURN) { // tylko odcinki prawie proste
+			double travelled = Math.hypot(measuredEast - scaleEast, measuredNorth - scaleNorth);
+			double ratio = travelled / commandedDistance;
+			speedScale += speedGain * (ratio - speedScale);
+			speedScale = Math.min(Math.max(speedScale, MIN_SPEED_SCALE), MAX_SPEED_SCALE);
+		}
+		
+		scaleEast = measuredEast;
+		scaleNorth = measuredNorth;
+		commandedDistance = 0;
+		commandedTurn = 0;
+	}
+
+	/**
+	 * Wyznacza kierunek z przesunięcia między pozycjami, jeśli kompas nie podał go od dłuższego czasu
+	 */
+	private void updateCourse(double measuredEast, double measuredNorth, long timestamp) {
+		double dEast = measuredEast - courseEast, dNorth = measuredNorth - courseNorth;
+		if(dEast * dEast + dNorth * dNorth < MIN_COURSE_DISTANCE * MIN_COURSE_DISTANCE)
+			return;
+
+		if(speed > 0 && (headingTime == 0 || timestamp - headingTime > horizon))
+			correctHeading(Math.atan2(dEast, dNorth), Double.isNaN(heading) ? 1 : headingGain);
+		
+		courseEast = measuredEast;
+		courseNorth = measuredNorth;
+	}
+
+	private void correctHeading(double measured, double gain) {
+		if(Double.isNaN(heading))
+			heading = wrap(measured);
+		else
+			heading = wrap(heading + gain * Angle.normalizeAngle(wrap(measured) - heading));
+	}
+
+	private static double wrap(double angle) {
+		angle %= TWO_PI;
+		return angle < 0 ? angle + TWO_PI : angle;
+	}
+}
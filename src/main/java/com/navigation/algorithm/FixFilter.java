@@ -0,0 +1,336 @@
+package com.navigation.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Filtr kolejnych pozycji GPS działający na oknie ostatnich pozycji w buforze cyklicznym typu double[].
+ * Udostępnia średnią ruchomą (sumy aktualizowane w czasie stałym), medianę (posortowana kopia okna
+ * aktualizowana przez wstawienie i usunięcie jednej wartości) i odrzucanie pozycji odstających.
+ * <p>
+ * Pozycja jest odstająca, jeśli jej odległość od mediany okna przekracza zarówno zadaną odległość
+ * minimalną, jak i wielokrotność odporną miary rozrzutu (MAD - mediana odległości pozycji okna od jego
+ * mediany). Dopóki w oknie jest mniej niż 3 pozycje, rozrzutu nie da się oszacować i pozycja jest
+ * odstająca, jeśli jest dalej od ostatniej przyjętej niż zadana odległość minimalna. Po zadanej
+ * liczbie odrzuceń z rzędu pozycja jest przyjmowana, a okno zaczyna się od niej na nowo - robot mógł
+ * się rzeczywiście przemieścić, a filtr nie może zablokować się na starej pozycji.
+ * <p>
+ * Pozycje przechowywane są w metrach w lokalnym układzie East-North. Metody nie tworzą obiektów.
+ * Instancja nie jest bezpieczna wątkowo.
+ * @author Harry
+ *
+ */
+public class FixFilter {
+
+	/**
+	 * Wynik filtru
+	 */
+	public enum Output {
+		RAW, // ostatnia przyjęta pozycja
+		MEAN, // średnia okna
+		MEDIAN // mediana okna (osobno dla każdej osi)
+	}
+
+	public static final int DEFAULT_WINDOW = 5;
+	public static final double DEFAULT_THRESHOLD = 3.5; // wielokrotność odchylenia wyznaczonego z MAD
+	public static final double DEFAULT_MIN_DISTANCE = 5; // m
+	public static final int DEFAULT_MAX_REJECTIONS = 3;
+
+	private static final int MIN_SAMPLES = 3; // minimalna liczba pozycji w oknie do odrzucania
+	private static final double MAD_SCALE = 1.4826; // MAD -> odchylenie standardowe (rozkład normalny)
+	private static final double REANCHOR_DISTANCE = 10000; // m
+	private static final int RESUM_INTERVAL = 1024; // co tyle pozycji sumy są liczone od nowa
+
+	private final int capacity;
+	private final double[] east, north; // bufor cykliczny
+	private final double[] sortedEast, sortedNorth; // posortowane wartości okna
+	private final double[] scratch; // odległości od mediany
+	private int head, count;
+	private double sumEast, sumNorth;
+	private int sinceResum;
+
+	private Output output = Output.RAW;
+	private double threshold = DEFAULT_THRESHOLD;
+	private double minDistance = DEFAULT_MIN_DISTANCE;
+	private int maxRejections = DEFAULT_MAX_REJECTIONS;
+
+	// układ lokalny
+	private boolean anchored;
+	private double anchorLatRad, anchorLonRad, eastScale;
+
+	private double lastEast, lastNorth;
+	private double lastDistance; // odległość ostatniej pozycji od mediany okna
+	private int consecutiveRejections;
+	private long accepted, rejected;
+
+	public FixFilter() {
+		this(DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param window liczba pozycji w oknie
+	 */
+	public FixFilter(int window) {
+		if(window <= 0)
+			throw new IllegalArgumentException("Window must be positive");
+
+		this.capacity = window;
+		this.east = new double[window];
+		this.north = new double[window];
+		this.sortedEast = new double[window];
+		this.sortedNorth = new double[window];
+		this.scratch = new double[window];
+	}
+
+	/**
+	 * Ustawia wynik filtru (domyślnie ostatnia przyjęta pozycja)
+	 * @param output
+	 * @return
+	 */
+	public FixFilter setOutput(Output output) {
+		this.output = output;
+		return this;
+	}
+
+	/**
+	 * Ustawia zasady odrzucania pozycji odstających
+	 * @param threshold wielokrotność odchylenia wyznaczonego z MAD (nieskończoność - bez odrzucania)
+	 * @param minDistance odległość od mediany, poniżej której pozycja nigdy nie jest odrzucana (m)
+	 * @param maxRejections liczba odrzuceń z rzędu, po której pozycja jest przyjmowana mimo wszystko
+	 * @return
+	 */
+	public FixFilter setRejection(double threshold, double minDistance, int maxRejections) {
+		this.threshold = threshold;
+		this.minDistance = minDistance;
+		this.maxRejections = maxRejections;
+		return this;
+	}
+
+	/**
+	 * Dodaje pozycję do filtru
+	 * @param latitude stopnie
+	 * @param longitude stopnie
+	 * @return false jeśli pozycja została odrzucona jako odstająca
+	 */
+	public boolean add(double latitude, double longitude) {
+		double latRad = Math.toRadians(latitude), lonRad = Math.toRadians(longitude);
+		if(!anchored)
+			anchor(latRad, lonRad);
+
+		// odległa pozycja też jest sprawdzana w obecnym układzie - przybliżenie wystarcza do odrzucenia
+		double e = (lonRad - anchorLonRad) * eastScale;
+		double n = (latRad - anchorLatRad) * Geodesy.R;
+
+		if(count >= MIN_SAMPLES ? isOutlier(e, n) : isDistant(e, n)) {
+			rejected++;
+			if(++consecutiveRejections <= maxRejections)
+				return false;
+
+			clear(); // zbyt wiele odrzuceń z rzędu - pozycja rzeczywiście się zmieniła
+		}
+
+		if(Math.abs(e) > REANCHOR_DISTANCE || Math.abs(n) > REANCHOR_DISTANCE) { // przyjęta daleko od początku układu
+			clear();
+			anchor(latRad, lonRad);
+			e = 0;
+			n = 0;
+		}
+
+		consecutiveRejections = 0;
+		accepted++;
+		push(e, n);
+		return true;
+	}
+
+	/**
+	 * Porzuca okno (np. po zerwaniu łącza)
+	 */
+	public void reset() {
+		clear();
+		anchored = false;
+		consecutiveRejections = 0;
+	}
+
+	/**
+	 * @return szerokość wyniku filtru (stopnie)
+	 */
+	public double getLatitude() {
+		return toLatitude(outputNorth());
+	}
+
+	/**
+	 * @return długość wyniku filtru (stopnie)
+	 */
+	public double getLongitude() {
+		return toLongitude(outputEast());
+	}
+
+	public double getMeanLatitude() {
+		return toLatitude(sumNorth / count);
+	}
+
+	public double getMeanLongitude() {
+		return toLongitude(sumEast / count);
+	}
+
+	public double getMedianLatitude() {
+		return toLatitude(median(sortedNorth, count));
+	}
+
+	public double getMedianLongitude() {
+		return toLongitude(median(sortedEast, count));
+	}
+
+	/**
+	 * @return odległość ostatnio sprawdzanej pozycji od mediany okna lub od ostatniej przyjętej pozycji,
+	 * jeśli okno jest zbyt małe (m)
+	 */
+	public double getLastDistance() {
+		return lastDistance;
+	}
+
+	/**
+	 * @return liczba pozycji w oknie
+	 */
+	public int size() {
+		return count;
+	}
+
+	public long getAccepted() {
+		return accepted;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	private double outputEast() {
+		switch(output) {
+			case MEAN:
+				return sumEast / count;
+			case MEDIAN:
+				return median(sortedEast, count);
+			default:
+				return lastEast;
+		}
+	}
+
+	private double outputNorth() {
+		switch(output) {
+			case MEAN:
+				return sumNorth / count;
+			case MEDIAN:
+				return median(sortedNorth, count);
+			default:
+				return lastNorth;
+		}
+	}
+
+	private double toLatitude(double north) {
+		return Math.toDegrees(anchorLatRad + north / Geodesy.R);
+	}
+
+	private double toLongitude(double east) {
+		return Math.toDegrees(anchorLonRad + east / eastScale);
+	}
+
+	/**
+	 * Porównuje odległość pozycji od mediany okna z rozrzutem okna
+	 */
+	private boolean isOutlier(double e, double n) {
+		double medianEast = median(sortedEast, count);
+		double medianNorth = median(sortedNorth, count);
+		lastDistance = Math.hypot(e - medianEast, n - medianNorth);
+		if(lastDistance <= minDistance)
+			return false;
+
+		for(int i = 0; i < count; i++)
+			scratch[i] = Math.hypot(east[i] - medianEast, north[i] - medianNorth);
+		Arrays.sort(scratch, 0, count); // sortowanie przez wstawianie dla małych tablic, bez alokacji
+
+		double deviation = MAD_SCALE * median(scratch, count);
+		return lastDistance > threshold * deviation;
+	}
+
+	/**
+	 * Porównuje odległość pozycji od ostatniej przyjętej z odległością minimalną (okno zbyt małe dla MAD)
+	 */
+	private boolean isDistant(double e, double n) {
+		if(count == 0)
+			return false;
+
+		lastDistance = Math.hypot(e - lastEast, n - lastNorth);
+		return lastDistance > minDistance;
+	}
+
+	private void push(double e, double n) {
+		if(count == capacity) { // usuń najstarszą pozycję
+			remove(sortedEast, east[head]);
+			remove(sortedNorth, north[head]);
+			sumEast -= east[head];
+			sumNorth -= north[head];
+			count--;
+		}
+
+		east[head] = e;
+		north[head] = n;
+		head = (head + 1) % capacity;
+		insert(sortedEast, e);
+		insert(sortedNorth, n);
+		count++;
+
+		sumEast += e;
+		sumNorth += n;
+		if(++sinceResum == RESUM_INTERVAL) // ogranicz narastanie błędu zaokrągleń
+			resum();
+
+		lastEast = e;
+		lastNorth = n;
+	}
+
+	private void insert(double[] sorted, double value) {
+		int index = Arrays.binarySearch(sorted, 0, count, value);
+		if(index < 0)
+			index = -index - 1;
+
+		System.arraycopy(sorted, index, sorted, index + 1, count - index);
+		sorted[index] = value;
+	}
+
+	private void remove(double[] sorted, double value) {
+		int index = Arrays.binarySearch(sorted, 0, count, value);
+		System.arraycopy(sorted, index + 1, sorted, index, count - index - 1);
+	}
+
+	private void resum() {
+		sumEast = 0;
+		sumNorth = 0;
+		for(int i = 0; i < count; i++) {
+			sumEast += sortedEast[i];
+			sumNorth += sortedNorth[i];
+		}
+		sinceResum = 0;
+	}
+
+	private void anchor(double latRad, double lonRad) {
+		anchorLatRad = latRad;
+		anchorLonRad = lonRad;
+		eastScale = Geodesy.R * Math.cos(latRad);
+		anchored = true;
+	}
+
+	private void clear() {
+		head = 0;
+		count = 0;
+		sumEast = 0;
+		sumNorth = 0;
+		sinceResum = 0;
+	}
+
+	private static double median(double[] sorted, int count) {
+		if(count == 0)
+			return Double.NaN;
+		
+		int middle = count / 2;
+		return count % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+	}
+}
@@ -0,0 +1,150 @@
+package com.navigation.algorithm;
+
+/**
+ * Obliczenia na sferze (haversine) korzystające z wartości wyliczonych wcześniej w {@link PreparedPoint}
+ * i {@link PreparedPoints}. Dla pary punktów potrzebne są tylko funkcje różnic współrzędnych.
+ * @author Harry
+ *
+ */
+public final class Geodesy {
+	public static final double R = 6371e3; // promien Ziemi w metrach
+	
+	private Geodesy() {}
+	
+	/**
+	 * @param from
+	 * @param to
+	 * @return odległość w metrach
+	 */
+	public static double distance(PreparedPoint from, PreparedPoint to) {
+		return R * centralAngle(haversine(from.latRad, from.cosLat, from.lonRad, to.latRad, to.cosLat, to.lonRad));
+	}
+	
+	/**
+	 * @param from
+	 * @param to
+	 * @return kąt (w radianach, -PI .. PI) od punktu from w kierunku to
+	 */
+	public static double bearing(PreparedPoint from, PreparedPoint to) {
+		double longitudeDelta = to.lonRad - from.lonRad;
+		
+		double y = Math.sin(longitudeDelta) * to.cosLat;
+		double x = from.cosLat * to.sinLat - from.sinLat * to.cosLat * Math.cos(longitudeDelta);
+		
+		return Math.atan2(y, x);
+	}
+	
+	/**
+	 * Wyznacza punkt leżący w podanej odległości i kierunku od punktu from
+	 * @param from
+	 * @param bearing kąt w radianach
+	 * @param distance odległość w metrach
+	 * @param result punkt, w którym zostanie zapisany wynik
+	 * @return result
+	 */
+	public static PreparedPoint destination(PreparedPoint from, double bearing, double distance, PreparedPoint result) {
+		double angle = distance / R;
+		double sinAngle = Math.sin(angle), cosAngle = Math.cos(angle);
+		
+		double sinLatitude = from.sinLat * cosAngle + from.cosLat * sinAngle * Math.cos(bearing);
+		double latitude = Math.asin(sinLatitude);
+		double longitude = from.lonRad + Math.atan2(Math.sin(bearing) * sinAngle * from.cosLat, 
+				cosAngle - from.sinLat * sinLatitude);
+		
+		return result.set(Math.toDegrees(latitude), Math.toDegrees(longitude));
+	}
+	
+	/**
+	 * Liczy odległości i kąty od punktu do punktów [start, end) w jednym przebiegu
+	 * @param from
+	 * @param points
+	 * @param start
+	 * @param end
+	 * @param distances wynikowe odległości (w metrach) pod indeksami [start, end) lub null
+	 * @param bearings wynikowe kąty (w radianach) pod indeksami [start, end) lub null
+	 */
+	public static void distancesAndBearings(PreparedPoint from, PreparedPoints points, int start, int end, 
+			double[] distances, double[] bearings) {
+		double[] latRad = points.latRad, lonRad = points.lonRad, sinLat = points.sinLat, cosLat = points.cosLat;
+		
+		for(int i = start; i < end; i++) {
+			double halfLongitudeDelta = (lonRad[i] - from.lonRad) / 2;
+			double sinHalf = Math.sin(halfLongitudeDelta);
+			
+			if(distances != null) {
+				double sinLatitude = Math.sin((latRad[i] - from.latRad) / 2);
+				double a = sinLatitude * sinLatitude + from.cosLat * cosLat[i] * sinHalf * sinHalf;
+				distances[i] = R * centralAngle(a);
+			}
+			
+			if(bearings != null) {
+				double cosHalf = Math.cos(halfLongitudeDelta);
+				double sinDelta = 2 * sinHalf * cosHalf;
+				double cosDelta = 1 - 2 * sinHalf * sinHalf;
+				
+				double y = sinDelta * cosLat[i];
+				double x = from.cosLat * sinLat[i] - from.sinLat * cosLat[i] * cosDelta;
+				bearings[i] = Math.atan2(y, x);
+			}
+		}
+	}
+	
+	/**
+	 * @param from
+	 * @param points
+	 * @param start
+	 * @param end
+	 * @return indeks najbliższego punktu z zakresu [start, end) lub -1 jeśli zakres jest pusty
+	 */
+	public static int nearest(PreparedPoint from, PreparedPoints points, int start, int end) {
+		double[] latRad = points.latRad, lonRad = points.lonRad, cosLat = points.cosLat;
+		
+		int nearest = -1;
+		double nearestHaversine = Double.POSITIVE_INFINITY;
+		
+		// haversine rośnie razem z odległością, więc porównanie nie wymaga liczenia odległości
+		for(int i = start; i < end; i++) {
+			double a = haversine(from.latRad, from.cosLat, from.lonRad, latRad[i], cosLat[i], lonRad[i]);
+			if(a < nearestHaversine) {
+				nearestHaversine = a;
+				nearest = i;
+			}
+		}
+		
+		return nearest;
+	}
+	
+	/**
+	 * @param points
+	 * @param start
+	 * @param end
+	 * @return długość łamanej przechodzącej przez punkty [start, end) w metrach
+	 */
+	public static double pathLength(PreparedPoints points, int start, int end) {
+		double[] latRad = points.latRad, lonRad = points.lonRad, cosLat = points.cosLat;
+		
+		double length = 0;
+		for(int i = start + 1; i < end; i++)
+			length += centralAngle(haversine(latRad[i - 1], cosLat[i - 1], lonRad[i - 1], latRad[i], cosLat[i], lonRad[i]));
+		
+		return R * length;
+	}
+	
+	/**
+	 * @return sin²(Δφ/2) + cos φ1 cos φ2 sin²(Δλ/2)
+	 */
+	static double haversine(double latRad1, double cosLat1, double lonRad1, double latRad2, double cosLat2, double lonRad2) {
+		double sinLatitude = Math.sin((latRad2 - latRad1) / 2);
+		double sinLongitude = Math.sin((lonRad2 - lonRad1) / 2);
+		
+		return sinLatitude * sinLatitude + cosLat1 * cosLat2 * sinLongitude * sinLongitude;
+	}
+	
+	/**
+	 * @param haversine
+	 * @return kąt środkowy w radianach
+	 */
+	static double centralAngle(double haversine) {
+		return 2 * Math.asin(Math.min(1, Math.sqrt(haversine)));
+	}
+}
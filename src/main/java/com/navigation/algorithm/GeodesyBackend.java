@@ -0,0 +1,39 @@
+package com.navigation.algorithm;
+
+/**
+ * Sposób liczenia odległości, kierunku i punktu docelowego między pozycjami
+ * @author Harry
+ *
+ */
+public interface GeodesyBackend {
+	
+	/**
+	 * Informuje o nowym celu (np. aby zakotwiczyć przy nim lokalny układ współrzędnych)
+	 * @param target
+	 */
+	void targetChanged(PreparedPoint target);
+	
+	/**
+	 * @param from
+	 * @param to
+	 * @return odległość w metrach
+	 */
+	double distance(PreparedPoint from, PreparedPoint to);
+	
+	/**
+	 * @param from
+	 * @param to
+	 * @return kąt (w radianach, -PI .. PI) od punktu from w kierunku to
+	 */
+	double bearing(PreparedPoint from, PreparedPoint to);
+	
+	/**
+	 * Wyznacza punkt leżący w podanej odległości i kierunku
+	 * @param from
+	 * @param bearing kąt w radianach
+	 * @param distance odległość w metrach
+	 * @param result punkt, w którym zostanie zapisany wynik
+	 * @return result
+	 */
+	PreparedPoint destination(PreparedPoint from, double bearing, double distance, PreparedPoint result);
+}
@@ -0,0 +1,419 @@
+package com.navigation.algorithm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Strefy dozwolone (keep-in) i zabronione (keep-out) w postaci wielokątów. Pozycja jest dozwolona,
+ * jeśli leży w którejś strefie dozwolonej (lub nie ma żadnej) i w żadnej strefie zabronionej.
+ * <p>
+ * Wielokąty są kompilowane raz do siatki w lokalnym układzie East-North: każda komórka zna krawędzie,
+ * które ją przecinają, oraz to, czy jej środek leży w każdym z wielokątów. Sprawdzenie pozycji polega na
+ * policzeniu przecięć odcinka od środka komórki do pozycji z krawędziami tej komórki, więc jego koszt
+ * nie zależy od liczby wierzchołków. Sprawdzenie nie tworzy obiektów i jest bezpieczne wątkowo.
+ * @author Harry
+ *
+ */
+public class Geofence {
+
+	public static final int DEFAULT_CELLS_PER_EDGE = 4;
+
+	private static final int MAX_CELLS = 1 << 20;
+
+	private final List<double[]> latitudes = new ArrayList<>();
+	private final List<double[]> longitudes = new ArrayList<>();
+	private final List<Boolean> keepOut = new ArrayList<>();
+	private int cellsPerEdge = DEFAULT_CELLS_PER_EDGE;
+
+	private volatile Grid grid; // null - wielokąty zmienione od ostatniej kompilacji
+
+	/**
+	 * Dodaje strefę dozwoloną
+	 * @param latitudes szerokości wierzchołków (stopnie)
+	 * @param longitudes długości wierzchołków (stopnie)
+	 * @return
+	 */
+	public Geofence addKeepIn(double[] latitudes, double[] longitudes) {
+		return addPolygon(latitudes, longitudes, false);
+	}
+
+	/**
+	 * Dodaje strefę zabronioną
+	 * @param latitudes szerokości wierzchołków (stopnie)
+	 * @param longitudes długości wierzchołków (stopnie)
+	 * @return
+	 */
+	public Geofence addKeepOut(double[] latitudes, double[] longitudes) {
+		return addPolygon(latitudes, longitudes, true);
+	}
+
+	/**
+	 * Ustawia gęstość siatki (domyślnie 4 komórki na krawędź, najwyżej 2^20 komórek)
+	 * @param cellsPerEdge
+	 * @return
+	 */
+	public synchronized Geofence setCellsPerEdge(int cellsPerEdge) {
+		if(cellsPerEdge <= 0)
+			throw new IllegalArgumentException("Cells per edge must be positive");
+
+		this.cellsPerEdge = cellsPerEdge;
+		grid = null;
+		return this;
+	}
+
+	/**
+	 * Kompiluje wielokąty do siatki. Wywoływane automatycznie przy pierwszym sprawdzeniu po zmianie stref.
+	 * @return
+	 */
+	public synchronized Geofence compile() {
+		if(grid == null)
+			grid = new Grid(latitudes, longitudes, keepOut, cellsPerEdge);
+		return this;
+	}
+
+	/**
+	 * @param latitude stopnie
+	 * @param longitude stopnie
+	 * @return true jeśli pozycja leży w obszarze dozwolonym
+	 */
+	public boolean isAllowed(double latitude, double longitude) {
+		Grid grid = this.grid;
+		if(grid == null) {
+			compile();
+			grid = this.grid;
+		}
+		return grid.isAllowed(latitude, longitude);
+	}
+
+	public synchronized int getPolygonCount() {
+		return keepOut.size();
+	}
+
+	/**
+	 * @return liczba krawędzi wszystkich wielokątów
+	 */
+	public int getEdgeCount() {
+		compile();
+		return grid.edgePolygon.length;
+	}
+
+	/**
+	 * @return liczba komórek siatki
+	 */
+	public int getCellCount() {
+		compile();
+		return grid.columns * grid.rows;
+	}
+
+	/**
+	 * Wczytuje strefy z pliku tekstowego. Wiersz "keep-in" lub "keep-out" rozpoczyna wielokąt, kolejne
+	 * wiersze "szerokość, długość" są jego wierzchołkami. Wiersze puste i zaczynające się od # są pomijane.
+	 * @param file
+	 * @return skompilowane strefy
+	 * @throws IOException
+	 */
+	public static Geofence load(Path file) throws IOException {
+		Geofence geofence = new Geofence();
+		List<double[]> vertices = new ArrayList<>();
+		Boolean out = null;
+
+		try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				if(line.equalsIgnoreCase("keep-in") || line.equalsIgnoreCase("keep-out")) {
+					geofence.addPolygon(vertices, out);
+					vertices.clear();
+					out = line.equalsIgnoreCase("keep-out");
+					continue;
+				}
+
+				String[] values = line.split(",");
+				if(out == null || values.length != 2)
+					throw new IOException("Invalid line: " + line);
+
+				try {
+					vertices.add(new double[] {Double.parseDouble(values[0].trim()), Double.parseDouble(values[1].trim())});
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid line: " + line);
+				}
+			}
+		}
+		geofence.addPolygon(vertices, out);
+
+		return geofence.compile();
+	}
+
+	private void addPolygon(List<double[]> vertices, Boolean out) {
+		if(out == null)
+			return;
+
+		double[] latitudes = new double[vertices.size()], longitudes = new double[vertices.size()];
+		for(int i = 0; i < vertices.size(); i++) {
+			latitudes[i] = vertices.get(i)[0];
+			longitudes[i] = vertices.get(i)[1];
+		}
+		addPolygon(latitudes, longitudes, out);
+	}
+
+	private synchronized Geofence addPolygon(double[] latitudes, double[] longitudes, boolean out) {
+		if(latitudes.length != longitudes.length)
+			throw new IllegalArgumentException("Latitudes and longitudes differ in length");
+
+		int count = latitudes.length;
+		if(count > 1 && latitudes[0] == latitudes[count - 1] && longitudes[0] == longitudes[count - 1])
+			count--; // wielokąt zamknięty powtórzonym pierwszym wierzchołkiem
+		if(count < 3)
+			throw new IllegalArgumentException("Polygon needs at least 3 vertices");
+
+		this.latitudes.add(Arrays.copyOf(latitudes, count));
+		this.longitudes.add(Arrays.copyOf(longitudes, count));
+		this.keepOut.add(out);
+		grid = null;
+		return this;
+	}
+
+	/**
+	 * Skompilowane strefy (niezmienne)
+	 */
+	private static class Grid {
+
+		private final int polygons;
+		private final boolean[] keepOut;
+		private final boolean keepIn; // czy jest jakakolwiek strefa dozwolona
+
+		// układ lokalny
+		private final double anchorLatRad, anchorLonRad, eastScale;
+
+		// krawędzie, kolejno dla każdego wielokąta
+		private final double[] ax, ay, bx, by;
+		private final int[] edgePolygon;
+
+		// siatka
+		private final double minX, minY, cellSize;
+		private final int columns, rows;
+		private final int[] cellStart; // krawędzie komórki: cellEdges[cellStart[c]..cellStart[c + 1])
+		private final int[] cellEdges;
+		private final long[] centerInside; // bit (komórka * polygons + wielokąt)
+
+		private Grid(List<double[]> latitudes, List<double[]> longitudes, List<Boolean> keepOut, int cellsPerEdge) {
+			polygons = keepOut.size();
+			this.keepOut = new boolean[polygons];
+			boolean keepIn = false;
+			int edges = 0;
+			double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+			double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+			for(int p = 0; p < polygons; p++) {
+				this.keepOut[p] = keepOut.get(p);
+				keepIn |= !this.keepOut[p];
+				edges += latitudes.get(p).length;
+
+				for(double latitude : latitudes.get(p)) {
+					minLat = Math.min(minLat, latitude);
+					maxLat = Math.max(maxLat, latitude);
+				}
+				for(double longitude : longitudes.get(p)) {
+					minLon = Math.min(minLon, longitude);
+					maxLon = Math.max(maxLon, longitude);
+				}
+			}
+			this.keepIn = keepIn;
+
+			// układ zakotwiczony w środku obszaru
+			anchorLatRad = polygons == 0 ? 0 : Math.toRadians((minLat + maxLat) / 2);
+			anchorLonRad = polygons == 0 ? 0 : Math.toRadians((minLon + maxLon) / 2);
+			eastScale = Geodesy.R * Math.cos(anchorLatRad);
+
+			ax = new double[edges];
+			ay = new double[edges];
+			bx = new double[edges];
+			by = new double[edges];
+			edgePolygon = new int[edges];
+
+			double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+			int edge = 0;
+			for(int p = 0; p < polygons; p++) {
+				double[] lats = latitudes.get(p), lons = longitudes.get(p);
+				int first = edge;
+				for(int i = 0; i < lats.length; i++, edge++) {
+					ax[edge] = toEast(lons[i]);
+					ay[edge] = toNorth(lats[i]);
+					edgePolygon[edge] = p;
+
+					minX = Math.min(minX, ax[edge]);
+					maxX = Math.max(maxX, ax[edge]);
+					minY = Math.min(minY, ay[edge]);
+					maxY = Math.max(maxY, ay[edge]);
+				}
+				for(int i = first; i < edge; i++) { // koniec krawędzi = następny wierzchołek
+					int following = i + 1 < edge ? i + 1 : first;
+					bx[i] = ax[following];
+					by[i] = ay[following];
+				}
+			}
+
+			// rozmiar komórki tak, aby na krawędź przypadało zadane pole
+			double width = polygons == 0 ? 1 : maxX - minX, height = polygons == 0 ? 1 : maxY - minY;
+			long target = Math.min(MAX_CELLS, Math.max(1, (long) edges * cellsPerEdge));
+			double size = Math.sqrt(Math.max(width * height, 1e-6) / target);
+			size = Math.max(size, Math.max(width, height) / Math.sqrt(MAX_CELLS)); // obszar wydłużony
+			cellSize = Math.max(size, 1e-3);
+
+			// margines, aby wierzchołki na brzegu obszaru leżały wewnątrz siatki
+			this.minX = (polygons == 0 ? 0 : minX) - cellSize / 2;
+			this.minY = (polygons == 0 ? 0 : minY) - cellSize / 2;
+			columns = (int) Math.ceil((width + cellSize) / cellSize);
+			rows = (int) Math.ceil((height + cellSize) / cellSize);
+
+			// przypisanie krawędzi do komórek (dwa przebiegi: liczenie i wypełnianie)
+			cellStart = new int[columns * rows + 1];
+			for(int e = 0; e < edges; e++)
+				bucket(e, null);
+			for(int c = 0; c < columns * rows; c++)
+				cellStart[c + 1] += cellStart[c];
+			cellEdges = new int[cellStart[columns * rows]];
+			int[] fill = Arrays.copyOf(cellStart, columns * rows);
+			for(int e = 0; e < edges; e++)
+				bucket(e, fill);
+
+			// położenie środków komórek - przecięcia wiersza środków z krawędziami
+			centerInside = new long[(int) (((long) columns * rows * polygons + 63) / 64)];
+			double[] crossings = new double[edges];
+			edge = 0;
+			for(int p = 0; p < polygons; p++) {
+				int first = edge;
+				edge += latitudes.get(p).length;
+
+				for(int row = 0; row < rows; row++) {
+					double y = this.minY + (row + 0.5) * cellSize;
+					int count = 0;
+					for(int e = first; e < edge; e++) {
+						if((ay[e] > y) != (by[e] > y))
+							crossings[count++] = ax[e] + (y - ay[e]) * (bx[e] - ax[e]) / (by[e] - ay[e]);
+					}
+					Arrays.sort(crossings, 0, count);
+
+					int passed = 0;
+					for(int column = 0; column < columns; column++) {
+						double x = this.minX + (column + 0.5) * cellSize;
+						while(passed < count && crossings[passed] < x)
+							passed++;
+						if(passed % 2 == 1) {
+							long bit = (long) (row * columns + column) * polygons + p;
+							centerInside[(int) (bit >>> 6)] |= 1L << bit;
+						}
+					}
+				}
+			}
+		}
+
+		private boolean isAllowed(double latitude, double longitude) {
+			if(polygons == 0)
+				return true;
+
+			double x = toEast(longitude), y = toNorth(latitude);
+			int column = (int) Math.floor((x - minX) / cellSize);
+			int row = (int) Math.floor((y - minY) / cellSize);
+			if(column < 0 || column >= columns || row < 0 || row >= rows) // poza wszystkimi wielokątami
+				return !keepIn;
+
+			int cell = row * columns + column;
+			double cx = minX + (column + 0.5) * cellSize, cy = minY + (row + 0.5) * cellSize;
+
+			boolean inKeepIn = false;
+			int e = cellStart[cell], end = cellStart[cell + 1];
+			for(int p = 0; p < polygons; p++) {
+				long bit = (long) cell * polygons + p;
+				boolean inside = (centerInside[(int) (bit >>> 6)] & (1L << bit)) != 0;
+
+				// krawędzie komórki są uporządkowane według wielokątów
+				for(; e < end && edgePolygon[cellEdges[e]] == p; e++) {
+					if(crosses(cellEdges[e], cx, cy, x, y))
+						inside = !inside;
+				}
+
+				if(inside) {
+					if(keepOut[p])
+						return false;
+					inKeepIn = true;
+				}
+			}
+
+			return inKeepIn || !keepIn;
+		}
+
+		/**
+		 * Sprawdza, czy odcinek (x0, y0) - (x1, y1) przecina krawędź. Wierzchołek leżący dokładnie na
+		 * odcinku traktowany jest jak leżący po jego lewej stronie, więc nie jest liczony dwukrotnie.
+		 */
+		private boolean crosses(int e, double x0, double y0, double x1, double y1) {
+			double dx = x1 - x0, dy = y1 - y0;
+			boolean a = dx * (ay[e] - y0) - dy * (ax[e] - x0) >= 0;
+			boolean b = dx * (by[e] - y0) - dy * (bx[e] - x0) >= 0;
+			if(a == b)
+				return false;
+
+			double ex = bx[e] - ax[e], ey = by[e] - ay[e];
+			boolean start = ex * (y0 - ay[e]) - ey * (x0 - ax[e]) >= 0;
+			boolean finish = ex * (y1 - ay[e]) - ey * (x1 - ax[e]) >= 0;
+			return start != finish;
+		}
+
+		/**
+		 * Przypisuje krawędź do komórek, przez które przechodzi
+		 * @param e krawędź
+		 * @param fill null - tylko liczenie krawędzi komórek
+		 */
+		private void bucket(int e, int[] fill) {
+			int fromColumn = Math.max(0, (int) Math.floor((Math.min(ax[e], bx[e]) - minX) / cellSize));
+			int toColumn = Math.min(columns - 1, (int) Math.floor((Math.max(ax[e], bx[e]) - minX) / cellSize));
+			int fromRow = Math.max(0, (int) Math.floor((Math.min(ay[e], by[e]) - minY) / cellSize));
+			int toRow = Math.min(rows - 1, (int) Math.floor((Math.max(ay[e], by[e]) - minY) / cellSize));
+
+			double ex = bx[e] - ax[e], ey = by[e] - ay[e];
+			double tolerance = 1e-9 * (Math.abs(ex) + Math.abs(ey)) * cellSize;
+
+			for(int row = fromRow; row <= toRow; row++) {
+				for(int column = fromColumn; column <= toColumn; column++) {
+					// komórka jest pomijana, jeśli wszystkie jej narożniki leżą po jednej stronie prostej
+					int positive = 0, negative = 0;
+					for(int corner = 0; corner < 4; corner++) {
+						double x = minX + (column + (corner & 1)) * cellSize;
+						double y = minY + (row + (corner >> 1)) * cellSize;
+						double side = ex * (y - ay[e]) - ey * (x - ax[e]);
+						if(side > tolerance)
+							positive++;
+						else if(side < -tolerance)
+							negative++;
+					}
+					if(positive == 4 || negative == 4)
+						continue;
+
+					int cell = row * columns + column;
+					if(fill == null)
+						cellStart[cell + 1]++;
+					else
+						cellEdges[fill[cell]++] = e;
+				}
+			}
+		}
+
+		private double toEast(double longitude) {
+			return (Math.toRadians(longitude) - anchorLonRad) * eastScale;
+		}
+
+		private double toNorth(double latitude) {
+			return (Math.toRadians(latitude) - anchorLatRad) * Geodesy.R;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.navigation.algorithm;
+
+/**
+ * Przybliżenie lokalnym układem płaskim East-North zakotwiczonym w wybranym punkcie (początek misji
+ * lub aktualny cel). Odległość, kierunek i punkt docelowy liczone są jak na płaszczyźnie, bez funkcji
+ * trygonometrycznych dla odległości.
+ * <p>
+ * Błąd rośnie z odległością od punktu zakotwiczenia. Punkty dalsze niż zadany zasięg są liczone
+ * dokładnie na sferze (patrz {@link #getErrorBound(double)}).
+ * @author Harry
+ *
+ */
+public class LocalTangentPlane implements GeodesyBackend {
+	
+	public static final double DEFAULT_RANGE = 1000; // zasięg w metrach
+	
+	private final double range;
+	private boolean followTarget;
+	
+	private boolean anchored = false;
+	private double anchorLatRad, anchorLonRad;
+	private double eastScale; // metry na radian długości (R * cos szerokości zakotwiczenia)
+	private double tanLatitude;
+	
+	/**
+	 * Układ zakotwiczany w każdym nowym celu
+	 * @param range zasięg w metrach
+	 */
+	public LocalTangentPlane(double range) {
+		if(range <= 0)
+			throw new IllegalArgumentException("Range must be positive");
+		
+		this.range = range;
+		this.followTarget = true;
+	}
+	
+	/**
+	 * Układ zakotwiczony na stałe w podanym punkcie (np. początek misji)
+	 * @param anchor
+	 * @param range zasięg w metrach
+	 */
+	public LocalTangentPlane(PreparedPoint anchor, double range) {
+		this(range);
+		this.followTarget = false;
+		setAnchor(anchor);
+	}
+	
+	/**
+	 * Ustawia punkt zakotwiczenia układu
+	 * @param anchor
+	 */
+	public void setAnchor(PreparedPoint anchor) {
+		this.anchorLatRad = anchor.latRad;
+		this.anchorLonRad = anchor.lonRad;
+		this.eastScale = Geodesy.R * anchor.cosLat;
+		this.tanLatitude = Math.abs(anchor.sinLat / anchor.cosLat);
+		this.anchored = true;
+	}
+	
+	public double getRange() {
+		return range;
+	}
+	
+	/**
+	 * Szacowany maksymalny błąd odległości dla punktów w zasięgu układu. Składa się z błędu skali
+	 * wschód-zachód (zmiana cosinusa szerokości) i pominiętej krzywizny.
+	 * @param distance odległość w metrach
+	 * @return błąd w metrach
+	 */
+	public double getErrorBound(double distance) {
+		double angle = range / Geodesy.R;
+		return distance * (angle * tanLatitude + angle * angle);
+	}
+	
+	/**
+	 * @param point
+	 * @return true jeśli punkt leży w zasięgu układu
+	 */
+	public boolean covers(PreparedPoint point) {
+		if(!anchored)
+			return false;
+		
+		double east = east(point), north = north(point);
+		return east * east + north * north <= range * range;
+	}
+	
+	@Override
+	public void targetChanged(PreparedPoint target) {
+		if(followTarget)
+			setAnchor(target);
+	}
+
+	@Override
+	public double distance(PreparedPoint from, PreparedPoint to) {
+		if(!covers(from) || !covers(to))
+			return Geodesy.distance(from, to);
+		
+		double east = (to.lonRad - from.lonRad) * eastScale;
+		double north = (to.latRad - from.latRad) * Geodesy.R;
+		return Math.sqrt(east * east + north * north);
+	}
+
+	@Override
+	public double bearing(PreparedPoint from, PreparedPoint to) {
+		if(!covers(from) || !covers(to))
+			return Geodesy.bearing(from, to);
+		
+		return Math.atan2((to.lonRad - from.lonRad) * eastScale, (to.latRad - from.latRad) * Geodesy.R);
+	}
+
+	@Override
+	public PreparedPoint destination(PreparedPoint from, double bearing, double distance, PreparedPoint result) {
+		if(!covers(from) || distance > range)
+			return Geodesy.destination(from, bearing, distance, result);
+		
+		double latitude = from.latRad + distance * Math.cos(bearing) / Geodesy.R;
+		double longitude = from.lonRad + distance * Math.sin(bearing) / eastScale;
+		return result.set(Math.toDegrees(latitude), Math.toDegrees(longitude));
+	}
+	
+	/**
+	 * @param point
+	 * @return współrzędna wschodnia punktu w metrach
+	 */
+	public double east(PreparedPoint point) {
+		return (point.lonRad - anchorLonRad) * eastScale;
+	}
+	
+	/**
+	 * @param point
+	 * @return współrzędna północna punktu w metrach
+	 */
+	public double north(PreparedPoint point) {
+		return (point.latRad - anchorLatRad) * Geodesy.R;
+	}
+}
@@ -0,0 +1,74 @@
+package com.navigation.algorithm;
+
+import com.navigation.GPSData;
+
+/**
+ * Punkt z wyliczonymi raz wartościami potrzebnymi do obliczeń geodezyjnych (radiany, sinus i cosinus
+ * szerokości). Używany wielokrotnie, np. dla stałego celu lub aktualnej pozycji, oszczędza
+ * powtarzanych wywołań funkcji trygonometrycznych.
+ * @author Harry
+ *
+ */
+public class PreparedPoint {
+	private double latitude, longitude; // w stopniach
+	double latRad, lonRad, sinLat, cosLat;
+	
+	public PreparedPoint() {}
+	
+	public PreparedPoint(double latitude, double longitude) {
+		set(latitude, longitude);
+	}
+	
+	public PreparedPoint(GPSData data) {
+		set(data);
+	}
+	
+	/**
+	 * Ustawia współrzędne i przelicza wartości pomocnicze
+	 * @param latitude w stopniach
+	 * @param longitude w stopniach
+	 * @return
+	 */
+	public PreparedPoint set(double latitude, double longitude) {
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.latRad = Math.toRadians(latitude);
+		this.lonRad = Math.toRadians(longitude);
+		this.sinLat = Math.sin(latRad);
+		this.cosLat = Math.cos(latRad);
+		return this;
+	}
+	
+	public PreparedPoint set(GPSData data) {
+		return set(data.getLatitude(), data.getLongitude());
+	}
+	
+	public double getLatitude() {
+		return latitude;
+	}
+	
+	public double getLongitude() {
+		return longitude;
+	}
+	
+	/**
+	 * @param target
+	 * @return odległość w metrach
+	 */
+	public double distanceTo(PreparedPoint target) {
+		return Geodesy.distance(this, target);
+	}
+	
+	/**
+	 * @param target
+	 * @return kąt (w radianach, -PI .. PI) w kierunku celu
+	 */
+	public double bearingTo(PreparedPoint target) {
+		return Geodesy.bearing(this, target);
+	}
+
+	@Override
+	public String toString() {
+		return "[latitude=" + latitude + ", longitude=" + longitude + "]";
+	}
+}
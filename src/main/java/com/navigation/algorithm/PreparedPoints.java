@@ -0,0 +1,79 @@
+package com.navigation.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Zbiór punktów zapisany w tablicach prymitywnych (struktura tablic) z wyliczonymi wartościami
+ * pomocniczymi. Pozwala na obliczenia dla wielu punktów w jednym przebiegu bez tworzenia obiektów.
+ * @author Harry
+ *
+ */
+public class PreparedPoints {
+	double[] latRad, lonRad, sinLat, cosLat;
+	
+	public PreparedPoints(int capacity) {
+		latRad = new double[capacity];
+		lonRad = new double[capacity];
+		sinLat = new double[capacity];
+		cosLat = new double[capacity];
+	}
+	
+	/**
+	 * Ustawia punkt o podanym indeksie (w razie potrzeby powiększa tablice)
+	 * @param index
+	 * @param latitude w stopniach
+	 * @param longitude w stopniach
+	 */
+	public void set(int index, double latitude, double longitude) {
+		ensureCapacity(index + 1);
+		
+		double lat = Math.toRadians(latitude);
+		latRad[index] = lat;
+		lonRad[index] = Math.toRadians(longitude);
+		sinLat[index] = Math.sin(lat);
+		cosLat[index] = Math.cos(lat);
+	}
+	
+	/**
+	 * Ustawia punkty [start, end) na podstawie tablic współrzędnych w stopniach
+	 * @param latitudes
+	 * @param longitudes
+	 * @param start
+	 * @param end
+	 */
+	public void set(double[] latitudes, double[] longitudes, int start, int end) {
+		ensureCapacity(end);
+		
+		for(int i = start; i < end; i++)
+			set(i, latitudes[i], longitudes[i]);
+	}
+	
+	/**
+	 * Przesuwa punkty [from, from + length) pod indeks to
+	 * @param from
+	 * @param to
+	 * @param length
+	 */
+	public void move(int from, int to, int length) {
+		ensureCapacity(to + length);
+		
+		System.arraycopy(latRad, from, latRad, to, length);
+		System.arraycopy(lonRad, from, lonRad, to, length);
+		System.arraycopy(sinLat, from, sinLat, to, length);
+		System.arraycopy(cosLat, from, cosLat, to, length);
+	}
+	
+	public int capacity() {
+		return latRad.length;
+	}
+	
+	public void ensureCapacity(int capacity) {
+		if(capacity > latRad.length) {
+			int newCapacity = Math.max(capacity, latRad.length + (latRad.length >> 1) + 1);
+			latRad = Arrays.copyOf(latRad, newCapacity);
+			lonRad = Arrays.copyOf(lonRad, newCapacity);
+			sinLat = Arrays.copyOf(sinLat, newCapacity);
+			cosLat = Arrays.copyOf(cosLat, newCapacity);
+		}
+	}
+}
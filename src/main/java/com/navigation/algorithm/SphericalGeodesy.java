@@ -0,0 +1,29 @@
+package com.navigation.algorithm;
+
+/**
+ * Dokładne obliczenia na sferze (haversine), patrz {@link Geodesy}
+ * @author Harry
+ *
+ */
+public class SphericalGeodesy implements GeodesyBackend {
+	
+	public static final SphericalGeodesy INSTANCE = new SphericalGeodesy();
+	
+	@Override
+	public void targetChanged(PreparedPoint target) {}
+
+	@Override
+	public double distance(PreparedPoint from, PreparedPoint to) {
+		return Geodesy.distance(from, to);
+	}
+
+	@Override
+	public double bearing(PreparedPoint from, PreparedPoint to) {
+		return Geodesy.bearing(from, to);
+	}
+
+	@Override
+	public PreparedPoint destination(PreparedPoint from, double bearing, double distance, PreparedPoint result) {
+		return Geodesy.destination(from, bearing, distance, result);
+	}
+}
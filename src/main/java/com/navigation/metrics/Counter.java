@@ -0,0 +1,25 @@
+package com.navigation.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Licznik rosnący. Zwiększanie nie blokuje i jest tanie także przy wielu wątkach.
+ * @author Harry
+ *
+ */
+public class Counter {
+	
+	private final LongAdder value = new LongAdder();
+	
+	public void increment() {
+		value.increment();
+	}
+	
+	public void add(long amount) {
+		value.add(amount);
+	}
+	
+	public long get() {
+		return value.sum();
+	}
+}
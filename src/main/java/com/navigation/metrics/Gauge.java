@@ -0,0 +1,11 @@
+package com.navigation.metrics;
+
+/**
+ * Wartość odczytywana w chwili eksportu (np. długość kolejki lub licznik innego modułu)
+ * @author Harry
+ *
+ */
+public interface Gauge {
+	
+	double get();
+}
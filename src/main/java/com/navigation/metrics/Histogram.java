@@ -0,0 +1,124 @@
+package com.navigation.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram o stałych przedziałach. Zapis wartości to wyszukanie przedziału i zwiększenie licznika,
+ * bez blokad i alokacji.
+ * @author Harry
+ *
+ */
+public class Histogram {
+	
+	/**
+	 * Domyślne przedziały dla czasów w sekundach: od 10 µs do ok. 20 s
+	 */
+	public static final double[] DEFAULT_TIME_BOUNDS = exponentialBounds(10e-6, 2, 22);
+	
+	private final double[] bounds; // górne granice przedziałów (rosnąco)
+	private final LongAdder[] counts; // ostatni przedział - powyżej największej granicy
+	private final DoubleAdder sum = new DoubleAdder();
+	
+	/**
+	 * @param bounds górne granice przedziałów
+	 */
+	public Histogram(double[] bounds) {
+		this.bounds = bounds.clone();
+		Arrays.sort(this.bounds);
+		
+		this.counts = new LongAdder[bounds.length + 1];
+		for(int i = 0; i < counts.length; i++)
+			counts[i] = new LongAdder();
+	}
+	
+	/**
+	 * @param start pierwsza granica
+	 * @param factor mnożnik kolejnych granic
+	 * @param count liczba granic
+	 * @return
+	 */
+	public static double[] exponentialBounds(double start, double factor, int count) {
+		double[] bounds = new double[count];
+		for(int i = 0; i < count; i++)
+			bounds[i] = start * Math.pow(factor, i);
+		return bounds;
+	}
+	
+	public void record(double value) {
+		int index = Arrays.binarySearch(bounds, value);
+		if(index < 0)
+			index = -index - 1;
+		
+		counts[index].increment();
+		sum.add(value);
+	}
+	
+	/**
+	 * Zapisuje czas podany w nanosekundach jako sekundy
+	 * @param nanos
+	 */
+	public void recordNanos(long nanos) {
+		record(nanos / 1e9);
+	}
+	
+	public long getCount() {
+		long count = 0;
+		for(LongAdder c : counts)
+			count += c.sum();
+		return count;
+	}
+	
+	public double getSum() {
+		return sum.sum();
+	}
+	
+	/**
+	 * @return górne granice przedziałów
+	 */
+	public double[] getBounds() {
+		return bounds.clone();
+	}
+	
+	/**
+	 * @return liczba wartości w kolejnych przedziałach (ostatni - powyżej największej granicy)
+	 */
+	public long[] getCounts() {
+		long[] result = new long[counts.length];
+		for(int i = 0; i < counts.length; i++)
+			result[i] = counts[i].sum();
+		return result;
+	}
+	
+	/**
+	 * Przybliżony kwantyl (interpolacja liniowa wewnątrz przedziału)
+	 * @param q od 0 do 1
+	 * @return wartość lub NaN, jeśli histogram jest pusty
+	 */
+	public double quantile(double q) {
+		long[] values = getCounts();
+		long total = 0;
+		for(long v : values)
+			total += v;
+		if(total == 0)
+			return Double.NaN;
+		
+		double rank = q * total;
+		long cumulative = 0;
+		for(int i = 0; i < values.length; i++) {
+			if(values[i] == 0 || cumulative + values[i] < rank) {
+				cumulative += values[i];
+				continue;
+			}
+			
+			if(i == bounds.length) // powyżej największej granicy
+				return bounds.length > 0 ? bounds[bounds.length - 1] : Double.NaN;
+			
+			double lower = i == 0 ? 0 : bounds[i - 1];
+			return lower + (bounds[i] - lower) * (rank - cumulative) / values[i];
+		}
+		
+		return bounds.length > 0 ? bounds[bounds.length - 1] : Double.NaN;
+	}
+}
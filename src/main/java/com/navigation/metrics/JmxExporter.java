@@ -0,0 +1,99 @@
+package com.navigation.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Wystawia metryki rejestru przez JMX (np. w JConsole) jako atrybuty tylko do odczytu.
+ * Lista atrybutów jest budowana przy każdym odczycie, więc obejmuje także metryki dodane później.
+ * @author Harry
+ *
+ */
+public class JmxExporter implements DynamicMBean {
+	
+	public static final String DEFAULT_NAME = "com.navigation:type=Metrics";
+	
+	private final MetricsRegistry registry;
+	
+	public JmxExporter(MetricsRegistry registry) {
+		this.registry = registry;
+	}
+	
+	/**
+	 * Rejestruje metryki w serwerze MBean platformy
+	 * @param registry
+	 * @param name np. {@link #DEFAULT_NAME}
+	 * @return nazwa do późniejszego wyrejestrowania
+	 * @throws JMException
+	 */
+	public static ObjectName register(MetricsRegistry registry, String name) throws JMException {
+		ObjectName objectName = new ObjectName(name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if(server.isRegistered(objectName))
+			server.unregisterMBean(objectName);
+		server.registerMBean(new JmxExporter(registry), objectName);
+		return objectName;
+	}
+	
+	public static void unregister(ObjectName name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+	}
+	
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Double value = registry.snapshot().get(attribute);
+		if(value == null)
+			throw new AttributeNotFoundException(attribute);
+		return value;
+	}
+	
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Double> snapshot = registry.snapshot();
+		AttributeList list = new AttributeList();
+		for(String attribute : attributes) {
+			Double value = snapshot.get(attribute);
+			if(value != null)
+				list.add(new Attribute(attribute, value));
+		}
+		return list;
+	}
+	
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+	}
+	
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+	
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName), "Metrics have no operations: " + actionName);
+	}
+	
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<>();
+		for(String name : registry.snapshot().keySet())
+			attributes.add(new MBeanAttributeInfo(name, Double.class.getName(), name, true, false, false));
+		
+		return new MBeanInfo(getClass().getName(), "Navigation metrics",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+	}
+}
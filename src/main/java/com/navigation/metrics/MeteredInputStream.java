@@ -0,0 +1,36 @@
+package com.navigation.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Strumień zliczający odczytane bajty
+ * @author Harry
+ *
+ */
+public class MeteredInputStream extends FilterInputStream {
+	
+	private final Counter bytes;
+	
+	public MeteredInputStream(InputStream in, Counter bytes) {
+		super(in);
+		this.bytes = bytes;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if(b >= 0)
+			bytes.increment();
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int count = in.read(b, off, len);
+		if(count > 0)
+			bytes.add(count);
+		return count;
+	}
+}
@@ -0,0 +1,32 @@
+package com.navigation.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Strumień zliczający zapisane bajty
+ * @author Harry
+ *
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+	
+	private final Counter bytes;
+	
+	public MeteredOutputStream(OutputStream out, Counter bytes) {
+		super(out);
+		this.bytes = bytes;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		bytes.increment();
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len); // bez zapisu bajt po bajcie jak w FilterOutputStream
+		bytes.add(len);
+	}
+}
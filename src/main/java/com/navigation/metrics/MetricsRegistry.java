@@ -0,0 +1,258 @@
+package com.navigation.metrics;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Rejestr metryk (liczniki, wartości chwilowe, histogramy) w ramach procesu. Metryka jest
+ * identyfikowana nazwą i etykietami (np. port="COM3"). Moduły pobierają metryki raz i dalej
+ * aktualizują je bez dostępu do rejestru.
+ * <p>
+ * Zawartość rejestru można wystawić przez JMX ({@link JmxExporter}) lub w formacie tekstowym
+ * Prometheusa ({@link PrometheusServer}).
+ * @author Harry
+ *
+ */
+public class MetricsRegistry {
+	
+	public enum Type {
+		COUNTER, GAUGE, HISTOGRAM
+	}
+	
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+	
+	private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+	
+	/**
+	 * @return rejestr wspólny dla całej aplikacji
+	 */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * Zwraca licznik (tworzy go przy pierwszym wywołaniu)
+	 * @param name np. "serial_bytes_read_total"
+	 * @param help opis
+	 * @param labels pary nazwa, wartość
+	 * @return
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		Family family = family(name, help, Type.COUNTER);
+		String key = labels(labels);
+		Object metric = family.metrics.get(key);
+		if(metric == null) {
+			family.metrics.putIfAbsent(key, new Counter());
+			metric = family.metrics.get(key);
+		}
+
+		if(!(metric instanceof Counter))
+			throw new IllegalArgumentException("Metric " + name + " is registered as a function counter");
+		return (Counter) metric;
+	}
+	
+	/**
+	 * Rejestruje licznik prowadzony przez inny moduł (zastępuje poprzedni o tych samych etykietach)
+	 * @param name
+	 * @param help
+	 * @param value
+	 * @param labels pary nazwa, wartość
+	 */
+	public void functionCounter(String name, String help, Gauge value, String... labels) {
+		family(name, help, Type.COUNTER).metrics.put(labels(labels), value);
+	}
+	
+	/**
+	 * Rejestruje wartość chwilową (zastępuje poprzednią o tych samych etykietach)
+	 * @param name
+	 * @param help
+	 * @param gauge
+	 * @param labels pary nazwa, wartość
+	 */
+	public void gauge(String name, String help, Gauge gauge, String... labels) {
+		family(name, help, Type.GAUGE).metrics.put(labels(labels), gauge);
+	}
+	
+	/**
+	 * Zwraca histogram (tworzy go przy pierwszym wywołaniu)
+	 * @param name
+	 * @param help
+	 * @param bounds górne granice przedziałów (używane tylko przy tworzeniu)
+	 * @param labels pary nazwa, wartość
+	 * @return
+	 */
+	public Histogram histogram(String name, String help, double[] bounds, String... labels) {
+		Family family = family(name, help, Type.HISTOGRAM);
+		String key = labels(labels);
+		Object metric = family.metrics.get(key);
+		if(metric == null) {
+			family.metrics.putIfAbsent(key, new Histogram(bounds));
+			metric = family.metrics.get(key);
+		}
+		return (Histogram) metric;
+	}
+	
+	/**
+	 * Usuwa metrykę (np. po zamknięciu portu)
+	 * @param name
+	 * @param labels pary nazwa, wartość
+	 */
+	public void remove(String name, String... labels) {
+		Family family = families.get(name);
+		if(family != null)
+			family.metrics.remove(labels(labels));
+	}
+	
+	/**
+	 * Zapisuje wszystkie metryki w formacie tekstowym Prometheusa
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeText(Appendable out) throws IOException {
+		for(Family family : families.values()) {
+			if(family.metrics.isEmpty())
+				continue;
+			
+			out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+			out.append("# TYPE ").append(family.name).append(' ')
+				.append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+			
+			for(Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+				String labels = entry.getKey();
+				Object metric = entry.getValue();
+				
+				if(metric instanceof Histogram) {
+					Histogram histogram = (Histogram) metric;
+					double[] bounds = histogram.getBounds();
+					long[] counts = histogram.getCounts();
+					
+					long cumulative = 0;
+					for(int i = 0; i < counts.length; i++) {
+						cumulative += counts[i];
+						String le = i < bounds.length ? format(bounds[i]) : "+Inf";
+						sample(out, family.name + "_bucket", join(labels, "le=\"" + le + "\""), cumulative);
+					}
+					sample(out, family.name + "_sum", labels, histogram.getSum());
+					sample(out, family.name + "_count", labels, cumulative);
+				} else {
+					sample(out, family.name, labels, value(metric));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Płaska lista bieżących wartości (histogramy jako liczba, suma i kwantyle)
+	 * @return nazwa z etykietami, wartość
+	 */
+	public Map<String, Double> snapshot() {
+		Map<String, Double> result = new LinkedHashMap<>();
+		
+		for(Family family : families.values()) {
+			for(Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+				String labels = entry.getKey().isEmpty() ? "" : "{" + entry.getKey() + "}";
+				Object metric = entry.getValue();
+				
+				if(metric instanceof Histogram) {
+					Histogram histogram = (Histogram) metric;
+					result.put(family.name + "_count" + labels, (double) histogram.getCount());
+					result.put(family.name + "_sum" + labels, histogram.getSum());
+					result.put(family.name + "_p50" + labels, histogram.quantile(0.5));
+					result.put(family.name + "_p99" + labels, histogram.quantile(0.99));
+				} else {
+					result.put(family.name + labels, value(metric));
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+	private Family family(String name, String help, Type type) {
+		Family family = families.get(name);
+		if(family == null) {
+			families.putIfAbsent(name, new Family(name, help, type));
+			family = families.get(name);
+		}
+		
+		if(family.type != type)
+			throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+		return family;
+	}
+	
+	private static double value(Object metric) {
+		if(metric instanceof Counter)
+			return ((Counter) metric).get();
+		return ((Gauge) metric).get();
+	}
+	
+	private static void sample(Appendable out, String name, String labels, double value) throws IOException {
+		out.append(name);
+		if(!labels.isEmpty())
+			out.append('{').append(labels).append('}');
+		out.append(' ').append(format(value)).append('\n');
+	}
+	
+	private static String format(double value) {
+		if(Double.isNaN(value))
+			return "NaN";
+		if(Double.isInfinite(value))
+			return value > 0 ? "+Inf" : "-Inf";
+		if(value == Math.rint(value) && Math.abs(value) < 1e15)
+			return Long.toString((long) value);
+		return Double.toString(value);
+	}
+	
+	private static String join(String labels, String label) {
+		return labels.isEmpty() ? label : labels + "," + label;
+	}
+	
+	/**
+	 * Zamienia pary nazwa, wartość na postać name="value",...
+	 * @param labels
+	 * @return
+	 */
+	private static String labels(String[] labels) {
+		if(labels.length % 2 != 0)
+			throw new IllegalArgumentException("Labels must be given as name, value pairs");
+		
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < labels.length; i += 2) {
+			if(i > 0)
+				builder.append(',');
+			builder.append(labels[i]).append("=\"");
+			
+			String value = labels[i + 1];
+			for(int j = 0; j < value.length(); j++) {
+				char c = value.charAt(j);
+				if(c == '\\' || c == '"')
+					builder.append('\\').append(c);
+				else if(c == '\n')
+					builder.append("\\n");
+				else
+					builder.append(c);
+			}
+			builder.append('"');
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Metryki o tej samej nazwie, różniące się etykietami
+	 */
+	private static class Family {
+		private final String name, help;
+		private final Type type;
+		private final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+		
+		private Family(String name, String help, Type type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+}
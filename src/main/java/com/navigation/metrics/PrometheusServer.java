@@ -0,0 +1,81 @@
+package com.navigation.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Lokalny serwer HTTP wystawiający metryki w formacie tekstowym Prometheusa pod adresem /metrics.
+ * Nasłuchuje tylko na interfejsie lokalnym.
+ * @author Harry
+ *
+ */
+public class PrometheusServer implements Closeable {
+	
+	public static final int DEFAULT_PORT = 9464;
+	
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	
+	private final HttpServer server;
+	private final ExecutorService executor;
+	
+	/**
+	 * Uruchamia serwer
+	 * @param registry
+	 * @param port numer portu (0 - dowolny wolny)
+	 * @throws IOException
+	 */
+	public PrometheusServer(final MetricsRegistry registry, int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", new HttpHandler() {
+			
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				StringBuilder text = new StringBuilder(4096);
+				registry.writeText(text);
+				byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+				
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, body.length);
+				try(OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "metrics-http");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+	
+	/**
+	 * @return port, na którym nasłuchuje serwer
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+	
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,145 @@
+package com.navigation.mission;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Plik misji zmapowany do pamięci. Format (big-endian):
+ * <pre>
+ * nagłówek (32 bajty):
+ *   int   magic    "MSN1"
+ *   short version  1
+ *   short flags    0
+ *   long  count    liczba punktów
+ *   long  reached  liczba osiągniętych punktów (wznowienie misji)
+ *   long  updated  czas ostatniej zmiany postępu (ms)
+ * punkty (16 bajtów każdy):
+ *   double latitude, double longitude
+ * </pre>
+ * Punkty czytane są bezpośrednio ze zmapowanego pliku, a postęp zapisywany jest w miejscu nagłówka.
+ * @author Harry
+ *
+ */
+public class MissionFile implements Closeable {
+	
+	public static final int MAGIC = 0x4D534E31; // "MSN1"
+	public static final short VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+	public static final int RECORD_SIZE = 16;
+	
+	static final int COUNT_OFFSET = 8;
+	static final int REACHED_OFFSET = 16;
+	static final int UPDATED_OFFSET = 24;
+	
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final DoubleBuffer coordinates;
+	private final long count;
+	
+	/**
+	 * Otwiera plik misji do odczytu i zapisu postępu
+	 * @param file
+	 * @throws IOException jeśli plik nie jest poprawnym plikiem misji
+	 */
+	public MissionFile(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		
+		try {
+			long size = channel.size();
+			if(size < HEADER_SIZE)
+				throw new IOException("Mission file too short: " + file);
+			if(size > Integer.MAX_VALUE)
+				throw new IOException("Mission file too large: " + file);
+			
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			
+			if(buffer.getInt(0) != MAGIC)
+				throw new IOException("Not a mission file: " + file);
+			if(buffer.getShort(4) != VERSION)
+				throw new IOException("Unsupported mission file version: " + buffer.getShort(4));
+			
+			count = buffer.getLong(COUNT_OFFSET);
+			if(count < 0 || HEADER_SIZE + count * RECORD_SIZE > size)
+				throw new IOException("Mission file truncated: " + file);
+			
+			ByteBuffer records = buffer.duplicate();
+			records.position(HEADER_SIZE);
+			records.limit((int) (HEADER_SIZE + count * RECORD_SIZE));
+			coordinates = records.slice().order(ByteOrder.BIG_ENDIAN).asDoubleBuffer();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return liczba punktów w misji
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	/**
+	 * @return liczba osiągniętych punktów zapisana w pliku
+	 */
+	public long getReached() {
+		return buffer.getLong(REACHED_OFFSET);
+	}
+	
+	/**
+	 * Zapisuje postęp misji w nagłówku
+	 * @param reached liczba osiągniętych punktów
+	 */
+	public void setReached(long reached) {
+		buffer.putLong(REACHED_OFFSET, Math.min(Math.max(reached, 0), count));
+		buffer.putLong(UPDATED_OFFSET, System.currentTimeMillis());
+	}
+	
+	/**
+	 * @return czas ostatniej zmiany postępu (ms) lub 0
+	 */
+	public long getUpdated() {
+		return buffer.getLong(UPDATED_OFFSET);
+	}
+	
+	public double latitude(int index) {
+		return coordinates.get(2 * index);
+	}
+	
+	public double longitude(int index) {
+		return coordinates.get(2 * index + 1);
+	}
+	
+	/**
+	 * @param start indeks pierwszego punktu
+	 * @param length liczba punktów
+	 * @return widok na współrzędne punktów [start, start + length) zapisane naprzemiennie
+	 */
+	public DoubleBuffer coordinates(int start, int length) {
+		DoubleBuffer view = coordinates.duplicate();
+		view.position(2 * start);
+		view.limit(2 * (start + length));
+		return view;
+	}
+	
+	/**
+	 * Wymusza zapis postępu na nośnik
+	 */
+	public void force() {
+		buffer.force();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		force();
+		channel.close();
+	}
+}
@@ -0,0 +1,100 @@
+package com.navigation.mission;
+
+/**
+ * Przekazuje punkty z pliku misji do kolejki celów porcjami, tak aby w kolejce było najwyżej
+ * zadane okno punktów, i zapisuje w pliku postęp misji. Misja wznawiana jest od punktu
+ * zapisanego w nagłówku.
+ * <p>
+ * Postęp liczony jest jako liczba punktów przekazanych do kolejki pomniejszona o liczbę
+ * punktów w niej pozostałych - cele wstawione ręcznie opóźniają go, ale go nie cofają.
+ * @author Harry
+ *
+ */
+public class MissionLoader {
+	
+	public static final int DEFAULT_WINDOW = 1024;
+	
+	private final MissionFile mission;
+	private final WaypointQueue queue;
+	private final int window;
+	
+	private long loaded; // indeks następnego punktu do przekazania
+	private long reached;
+	
+	/**
+	 * @param mission
+	 * @param queue kolejka celów (powinna być pusta)
+	 * @param window maksymalna liczba punktów przekazanych do kolejki naraz
+	 */
+	public MissionLoader(MissionFile mission, WaypointQueue queue, int window) {
+		if(window <= 0)
+			throw new IllegalArgumentException("Window must be positive");
+		
+		this.mission = mission;
+		this.queue = queue;
+		this.window = window;
+		this.reached = mission.getReached();
+		this.loaded = reached;
+	}
+	
+	/**
+	 * Uzupełnia kolejkę i zapisuje postęp. Wywoływane po każdym osiągniętym celu.
+	 */
+	public void update() {
+		synchronized(queue) {
+			long progress = loaded - queue.size();
+			if(progress > reached) {
+				reached = progress;
+				mission.setReached(reached);
+			}
+			
+			int free = window - queue.size();
+			long remaining = mission.getCount() - loaded;
+			int length = (int) Math.min(free, remaining);
+			
+			if(length > 0)
+				loaded += queue.addAll(mission.coordinates((int) loaded, length));
+		}
+	}
+	
+	/**
+	 * Przechodzi do podanego punktu misji (np. powrót na trasę przy najbliższym punkcie). Jeśli punkt
+	 * jest w kolejce, pomijane są punkty przed nim, w przeciwnym razie kolejka jest czyszczona
+	 * (razem z celami wstawionymi ręcznie) i wypełniana od tego punktu.
+	 * @param index indeks punktu misji, nie mniejszy niż liczba osiągniętych punktów
+	 */
+	public void seek(long index) {
+		synchronized(queue) {
+			if(index < reached || index > mission.getCount())
+				throw new IndexOutOfBoundsException("Index: " + index + ", reached: " + reached + ", count: " + mission.getCount());
+
+			long offset = index - (loaded - queue.size()); // indeks w kolejce
+			if(offset >= 0 && offset < queue.size()) {
+				queue.skip((int) offset);
+			} else {
+				queue.clear();
+				loaded = index;
+			}
+
+			update();
+		}
+	}
+
+	/**
+	 * @return true jeśli wszystkie punkty misji zostały przekazane do kolejki
+	 */
+	public boolean isLoaded() {
+		return loaded == mission.getCount();
+	}
+	
+	/**
+	 * @return liczba osiągniętych punktów misji
+	 */
+	public long getReached() {
+		return reached;
+	}
+	
+	public MissionFile getMission() {
+		return mission;
+	}
+}
@@ -0,0 +1,132 @@
+package com.navigation.mission;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tworzy plik misji (format opisany w {@link MissionFile}). Punkty zapisywane są strumieniowo
+ * przez bufor, a liczba punktów uzupełniana jest w nagłówku przy zamknięciu.
+ * @author Harry
+ *
+ */
+public class MissionWriter implements Closeable {
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+	private long count;
+	
+	/**
+	 * Tworzy (lub nadpisuje) plik misji
+	 * @param file
+	 * @throws IOException
+	 */
+	public MissionWriter(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+				StandardOpenOption.TRUNCATE_EXISTING);
+		
+		buffer.putInt(MissionFile.MAGIC);
+		buffer.putShort(MissionFile.VERSION);
+		buffer.putShort((short) 0);
+		buffer.putLong(0); // liczba punktów
+		buffer.putLong(0); // osiągnięte punkty
+		buffer.putLong(0); // czas zmiany postępu
+	}
+	
+	/**
+	 * Dopisuje punkt
+	 * @param latitude
+	 * @param longitude
+	 * @throws IOException
+	 */
+	public void append(double latitude, double longitude) throws IOException {
+		if(buffer.remaining() < MissionFile.RECORD_SIZE)
+			drain();
+		
+		buffer.putDouble(latitude);
+		buffer.putDouble(longitude);
+		count++;
+	}
+	
+	/**
+	 * Dopisuje wszystkie pozostałe punkty kolejki
+	 * @param queue
+	 * @throws IOException
+	 */
+	public void append(WaypointQueue queue) throws IOException {
+		synchronized(queue) {
+			for(int i = 0; i < queue.size(); i++)
+				append(queue.latitude(i), queue.longitude(i));
+		}
+	}
+	
+	public long getCount() {
+		return count;
+	}
+	
+	/**
+	 * Zapisuje pozostałe dane i liczbę punktów w nagłówku
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			drain();
+			
+			ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+			header.putLong(0, count);
+			channel.write(header, MissionFile.COUNT_OFFSET);
+			channel.force(false);
+		} finally {
+			channel.close();
+		}
+	}
+	
+	private void drain() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+	
+	/**
+	 * Zamienia listę celów zapisaną przez symulator (linie "[czas]: szerokość, długość")
+	 * lub zwykły plik tekstowy "szerokość, długość" na plik misji
+	 * @param args plik wejściowy, plik misji
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2) {
+			System.err.println("Usage: MissionWriter <targetList> <mission>");
+			return;
+		}
+		
+		try(BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+			MissionWriter writer = new MissionWriter(Paths.get(args[1]))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				int start = line.indexOf("]: ");
+				String[] values = (start >= 0 ? line.substring(start + 3) : line).split(",");
+				if(values.length != 2)
+					continue;
+				
+				try {
+					writer.append(Double.parseDouble(values[0].trim()), Double.parseDouble(values[1].trim()));
+				} catch (NumberFormatException e) {
+					System.err.println("Invalid line: " + line);
+				}
+			}
+			
+			System.out.println(writer.getCount() + " waypoints written");
+		}
+	}
+}
@@ -0,0 +1,386 @@
+package com.navigation.mission;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import com.navigation.algorithm.Geodesy;
+
+/**
+ * Indeks przestrzenny punktów trasy - jednorodna siatka kwadratowych komórek w lokalnym układzie
+ * East-North zakotwiczonym w pierwszym punkcie. Komórki trzymane są w tablicy mieszającej (adresowanie
+ * otwarte), a punkty jednej komórki tworzą listę w tablicy <code>int[]</code>, więc dodawanie punktu
+ * i zapytania nie tworzą obiektów.
+ * <p>
+ * Punkty identyfikowane są numerem w kolejności dodawania. Zapytania pomijają punkty o numerze
+ * mniejszym niż podany, co pozwala wykluczyć punkty już osiągnięte bez usuwania ich z indeksu.
+ * Przeszukiwane są tylko komórki w pobliżu punktu zapytania, więc czas zapytania nie zależy od
+ * liczby punktów trasy, a jedynie od ich zagęszczenia. Układ płaski sprawdza się dla tras
+ * o zasięgu do kilkudziesięciu kilometrów.
+ * @author Harry
+ *
+ */
+public class WaypointIndex {
+
+	public static final double DEFAULT_CELL_SIZE = 10; // m
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private final double cellSize;
+
+	// punkty
+	private double[] east, north;
+	private int[] next; // następny punkt w tej samej komórce lub -1
+	private int size;
+
+	// komórki: klucz (x, y) -> pierwszy punkt
+	private long[] keys;
+	private int[] heads;
+	private int cells;
+	private int minX, maxX, minY, maxY; // zakres zajętych komórek
+
+	// układ lokalny
+	private boolean anchored;
+	private double anchorLatRad, anchorLonRad, eastScale;
+
+	// k najbliższych (kopiec z największą odległością na szczycie)
+	private double[] heapDistances = new double[0];
+	private int[] heapIds = new int[0];
+	private int heapSize;
+
+	public WaypointIndex() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param cellSize rozmiar komórki w metrach (zbliżony do typowego odstępu między punktami)
+	 */
+	public WaypointIndex(double cellSize) {
+		if(cellSize <= 0)
+			throw new IllegalArgumentException("Cell size must be positive");
+
+		this.cellSize = cellSize;
+		clear();
+	}
+
+	/**
+	 * @return liczba punktów w indeksie
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Usuwa wszystkie punkty
+	 */
+	public synchronized void clear() {
+		east = new double[DEFAULT_CAPACITY];
+		north = new double[DEFAULT_CAPACITY];
+		next = new int[DEFAULT_CAPACITY];
+		size = 0;
+
+		keys = new long[DEFAULT_CAPACITY];
+		heads = new int[DEFAULT_CAPACITY];
+		Arrays.fill(keys, EMPTY);
+		cells = 0;
+		minX = minY = Integer.MAX_VALUE;
+		maxX = maxY = Integer.MIN_VALUE;
+
+		anchored = false;
+	}
+
+	/**
+	 * Dodaje punkt
+	 * @param latitude
+	 * @param longitude
+	 * @return numer punktu
+	 */
+	public synchronized int add(double latitude, double longitude) {
+		double latRad = Math.toRadians(latitude), lonRad = Math.toRadians(longitude);
+		if(!anchored) {
+			anchorLatRad = latRad;
+			anchorLonRad = lonRad;
+			eastScale = Geodesy.R * Math.cos(latRad);
+			anchored = true;
+		}
+
+		if(size == east.length) {
+			int capacity = size * 2;
+			east = Arrays.copyOf(east, capacity);
+			north = Arrays.copyOf(north, capacity);
+			next = Arrays.copyOf(next, capacity);
+		}
+
+		int id = size++;
+		double e = (lonRad - anchorLonRad) * eastScale;
+		double n = (latRad - anchorLatRad) * Geodesy.R;
+		east[id] = e;
+		north[id] = n;
+
+		int x = cell(e), y = cell(n);
+		int slot = findSlot(key(x, y));
+		if(keys[slot] == EMPTY) {
+			keys[slot] = key(x, y);
+			heads[slot] = -1;
+			cells++;
+
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		next[id] = heads[slot];
+		heads[slot] = id;
+
+		if(cells * 2 > keys.length)
+			rehash();
+
+		return id;
+	}
+
+	/**
+	 * Dodaje punkty zapisane naprzemiennie (szerokość, długość), np. z pliku misji
+	 * @param coordinates bufor od pozycji do limitu
+	 * @return numer pierwszego dodanego punktu
+	 */
+	public synchronized int addAll(DoubleBuffer coordinates) {
+		int first = size;
+		while(coordinates.remaining() >= 2) {
+			double latitude = coordinates.get();
+			add(latitude, coordinates.get());
+		}
+		return first;
+	}
+
+	public synchronized double latitude(int id) {
+		return Math.toDegrees(anchorLatRad + north[check(id)] / Geodesy.R);
+	}
+
+	public synchronized double longitude(int id) {
+		return Math.toDegrees(anchorLonRad + east[check(id)] / eastScale);
+	}
+
+	/**
+	 * @param latitude
+	 * @param longitude
+	 * @param minId najmniejszy numer branego pod uwagę punktu
+	 * @return numer najbliższego punktu lub -1 jeśli nie ma punktów o numerze co najmniej minId
+	 */
+	public synchronized int nearest(double latitude, double longitude, int minId) {
+		int[] result = new int[1]; // jedna tablica na zapytanie - pomijalne wobec przeszukiwania
+		return nearest(latitude, longitude, 1, minId, result) > 0 ? result[0] : -1;
+	}
+
+	/**
+	 * Wyszukuje k najbliższych punktów
+	 * @param latitude
+	 * @param longitude
+	 * @param k
+	 * @param minId najmniejszy numer branego pod uwagę punktu
+	 * @param result numery punktów, od najbliższego (co najmniej k elementów)
+	 * @return liczba znalezionych punktów (najwyżej k)
+	 */
+	public synchronized int nearest(double latitude, double longitude, int k, int minId, int[] result) {
+		if(size == 0 || k <= 0 || minId >= size)
+			return 0;
+
+		if(heapIds.length < k) {
+			heapIds = new int[k];
+			heapDistances = new double[k];
+		}
+		heapSize = 0;
+
+		double e = toEast(longitude), n = toNorth(latitude);
+		int x = cell(e), y = cell(n);
+
+		// pierścienie komórek coraz dalej od komórki zapytania
+		int maxRing = Math.max(Math.max(x - minX, maxX - x), Math.max(y - minY, maxY - y));
+		for(int ring = 0; ring <= maxRing; ring++) {
+			visitRing(x, y, ring, e, n, k, minId);
+
+			// punkty w dalszych pierścieniach są odległe co najmniej o ring komórek
+			double reach = ring * cellSize;
+			if(heapSize == k && heapDistances[0] <= reach * reach)
+				break;
+		}
+
+		// kopiec -> wynik od najbliższego
+		int count = heapSize;
+		for(int i = count - 1; i >= 0; i--) {
+			result[i] = heapIds[0];
+			pop();
+		}
+		return count;
+	}
+
+	/**
+	 * Wyszukuje punkty w zadanej odległości (w kolejności komórek, nie odległości)
+	 * @param latitude
+	 * @param longitude
+	 * @param radius promień w metrach
+	 * @param minId najmniejszy numer branego pod uwagę punktu
+	 * @param result numery punktów
+	 * @return liczba znalezionych punktów (może być większa niż rozmiar tablicy - zapisane są tylko pierwsze)
+	 */
+	public synchronized int withinRadius(double latitude, double longitude, double radius, int minId, int[] result) {
+		if(size == 0)
+			return 0;
+
+		double e = toEast(longitude), n = toNorth(latitude);
+		double radiusSquared = radius * radius;
+		int fromX = Math.max(cell(e - radius), minX), toX = Math.min(cell(e + radius), maxX);
+		int fromY = Math.max(cell(n - radius), minY), toY = Math.min(cell(n + radius), maxY);
+
+		int count = 0;
+		for(int cx = fromX; cx <= toX; cx++) {
+			for(int cy = fromY; cy <= toY; cy++) {
+				int slot = findSlot(key(cx, cy));
+				if(keys[slot] == EMPTY)
+					continue;
+
+				for(int id = heads[slot]; id >= 0; id = next[id]) {
+					if(id < minId)
+						continue;
+
+					double de = east[id] - e, dn = north[id] - n;
+					if(de * de + dn * dn <= radiusSquared) {
+						if(count < result.length)
+							result[count] = id;
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Odwiedza komórki w odległości (w sensie maksimum współrzędnych) ring od komórki (x, y)
+	 */
+	private void visitRing(int x, int y, int ring, double e, double n, int k, int minId) {
+		if(ring == 0) {
+			visitCell(x, y, e, n, k, minId);
+			return;
+		}
+
+		for(int cx = x - ring; cx <= x + ring; cx++) {
+			visitCell(cx, y - ring, e, n, k, minId);
+			visitCell(cx, y + ring, e, n, k, minId);
+		}
+		for(int cy = y - ring + 1; cy <= y + ring - 1; cy++) {
+			visitCell(x - ring, cy, e, n, k, minId);
+			visitCell(x + ring, cy, e, n, k, minId);
+		}
+	}
+
+	private void visitCell(int x, int y, double e, double n, int k, int minId) {
+		if(x < minX || x > maxX || y < minY || y > maxY)
+			return;
+
+		int slot = findSlot(key(x, y));
+		if(keys[slot] == EMPTY)
+			return;
+
+		for(int id = heads[slot]; id >= 0; id = next[id]) {
+			if(id < minId)
+				continue;
+
+			double de = east[id] - e, dn = north[id] - n;
+			double distance = de * de + dn * dn;
+			if(heapSize < k)
+				push(distance, id);
+			else if(distance < heapDistances[0]) {
+				pop();
+				push(distance, id);
+			}
+		}
+	}
+
+	private void push(double distance, int id) {
+		int i = heapSize++;
+		while(i > 0) {
+			int parent = (i - 1) / 2;
+			if(heapDistances[parent] >= distance)
+				break;
+			heapDistances[i] = heapDistances[parent];
+			heapIds[i] = heapIds[parent];
+			i = parent;
+		}
+		heapDistances[i] = distance;
+		heapIds[i] = id;
+	}
+
+	private void pop() {
+		double distance = heapDistances[--heapSize];
+		int id = heapIds[heapSize];
+
+		int i = 0;
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= heapSize)
+				break;
+			if(child + 1 < heapSize && heapDistances[child + 1] > heapDistances[child])
+				child++;
+			if(heapDistances[child] <= distance)
+				break;
+			heapDistances[i] = heapDistances[child];
+			heapIds[i] = heapIds[child];
+			i = child;
+		}
+		if(heapSize > 0) {
+			heapDistances[i] = distance;
+			heapIds[i] = id;
+		}
+	}
+
+	private double toEast(double longitude) {
+		return (Math.toRadians(longitude) - anchorLonRad) * eastScale;
+	}
+
+	private double toNorth(double latitude) {
+		return (Math.toRadians(latitude) - anchorLatRad) * Geodesy.R;
+	}
+
+	private int cell(double coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+
+	private int check(int id) {
+		if(id < 0 || id >= size)
+			throw new IndexOutOfBoundsException("Id: " + id + ", size: " + size);
+		return id;
+	}
+
+	private static long key(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param key
+	 * @return miejsce klucza w tablicy lub pierwsze wolne miejsce
+	 */
+	private int findSlot(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while(keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+
+		keys = new long[oldKeys.length * 2];
+		heads = new int[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldKeys[i] != EMPTY) {
+				int slot = findSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				heads[slot] = oldHeads[i];
+			}
+		}
+	}
+}
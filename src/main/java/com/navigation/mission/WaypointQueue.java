@@ -0,0 +1,277 @@
+package com.navigation.mission;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.navigation.GPSData;
+import com.navigation.algorithm.Geodesy;
+import com.navigation.algorithm.PreparedPoint;
+import com.navigation.algorithm.PreparedPoints;
+
+/**
+ * Kolejka punktów docelowych zapisana w równoległych tablicach <code>double[]</code>. Osiągnięcie
+ * celu przesuwa tylko kursor, a miejsce po osiągniętych punktach odzyskiwane jest przy dodawaniu
+ * nowych (kompaktowanie). Dla każdego punktu przechowywane są też wartości pomocnicze
+ * ({@link PreparedPoints}), więc zapytania o całą trasę nie wymagają tworzenia obiektów.
+ * <p>
+ * Indeksy w metodach dostępu są liczone od aktualnego celu (0 - aktualny cel).
+ * @author Harry
+ *
+ */
+public class WaypointQueue {
+	
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	private double[] latitudes, longitudes;
+	private final PreparedPoints prepared;
+	
+	private int head; // indeks aktualnego celu w tablicach
+	private int tail; // indeks za ostatnim punktem
+	private long reached; // liczba osiągniętych (pominiętych) punktów od początku misji
+	
+	public WaypointQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public WaypointQueue(int capacity) {
+		capacity = Math.max(capacity, 1);
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+		prepared = new PreparedPoints(capacity);
+	}
+	
+	/**
+	 * @return liczba pozostałych punktów (razem z aktualnym celem)
+	 */
+	public synchronized int size() {
+		return tail - head;
+	}
+	
+	public synchronized boolean isEmpty() {
+		return tail == head;
+	}
+	
+	/**
+	 * @return liczba osiągniętych punktów, czyli bezwzględny indeks aktualnego celu w misji
+	 */
+	public synchronized long getReached() {
+		return reached;
+	}
+	
+	/**
+	 * Dodaje punkt na końcu kolejki
+	 * @param latitude
+	 * @param longitude
+	 */
+	public synchronized void add(double latitude, double longitude) {
+		ensureSpace(1);
+		set(tail++, latitude, longitude);
+	}
+	
+	/**
+	 * Wstawia punkt w podanym miejscu kolejki
+	 * @param index indeks liczony od aktualnego celu (0 - przed aktualnym celem, size() - na końcu)
+	 * @param latitude
+	 * @param longitude
+	 */
+	public synchronized void insert(int index, double latitude, double longitude) {
+		if(index < 0 || index > tail - head)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (tail - head));
+		
+		if(index == 0 && head > 0) { // wolne miejsce przed aktualnym celem
+			set(--head, latitude, longitude);
+			return;
+		}
+		
+		ensureSpace(1);
+		int position = head + index;
+		int length = tail - position;
+		System.arraycopy(latitudes, position, latitudes, position + 1, length);
+		System.arraycopy(longitudes, position, longitudes, position + 1, length);
+		prepared.move(position, position + 1, length);
+		tail++;
+		
+		set(position, latitude, longitude);
+	}
+	
+	/**
+	 * Dodaje punkty zapisane naprzemiennie (szerokość, długość) bez tworzenia obiektów
+	 * @param coordinates bufor od pozycji do limitu, parzysta liczba wartości
+	 * @return liczba dodanych punktów
+	 */
+	public synchronized int addAll(DoubleBuffer coordinates) {
+		int count = coordinates.remaining() / 2;
+		ensureSpace(count);
+		
+		for(int i = 0; i < count; i++) {
+			double latitude = coordinates.get();
+			double longitude = coordinates.get();
+			set(tail++, latitude, longitude);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Dodaje punkty z pliku zawierającego same współrzędne (pary double, big-endian) mapując go do pamięci
+	 * @param file
+	 * @return liczba dodanych punktów
+	 * @throws IOException
+	 */
+	public int load(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return addAll(buffer.order(ByteOrder.BIG_ENDIAN).asDoubleBuffer());
+		}
+	}
+	
+	/**
+	 * Oznacza aktualny cel jako osiągnięty
+	 * @return false jeśli kolejka była pusta
+	 */
+	public synchronized boolean advance() {
+		if(head == tail)
+			return false;
+		
+		head++;
+		reached++;
+		
+		if(head == tail) // kolejka pusta, zacznij od początku tablic
+			head = tail = 0;
+		
+		return true;
+	}
+	
+	/**
+	 * Pomija punkty przed podanym indeksem (np. powrót na trasę przy najbliższym punkcie)
+	 * @param index indeks liczony od aktualnego celu
+	 */
+	public synchronized void skip(int index) {
+		if(index < 0 || index > tail - head)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (tail - head));
+		
+		head += index;
+		reached += index;
+		
+		if(head == tail)
+			head = tail = 0;
+	}
+	
+	/**
+	 * Usuwa wszystkie pozostałe punkty (liczone jako pominięte)
+	 */
+	public synchronized void clear() {
+		reached += tail - head;
+		head = tail = 0;
+	}
+	
+	/**
+	 * @param index indeks liczony od aktualnego celu
+	 * @return szerokość geograficzna punktu
+	 */
+	public synchronized double latitude(int index) {
+		return latitudes[position(index)];
+	}
+	
+	/**
+	 * @param index indeks liczony od aktualnego celu
+	 * @return długość geograficzna punktu
+	 */
+	public synchronized double longitude(int index) {
+		return longitudes[position(index)];
+	}
+	
+	/**
+	 * @param index indeks liczony od aktualnego celu
+	 * @return nowy obiekt z współrzędnymi punktu
+	 */
+	public synchronized GPSData get(int index) {
+		int position = position(index);
+		return new GPSData(latitudes[position], longitudes[position]);
+	}
+	
+	/**
+	 * Ustawia punkt z wyliczonymi wartościami pomocniczymi
+	 * @param index indeks liczony od aktualnego celu
+	 * @param point
+	 * @return point
+	 */
+	public synchronized PreparedPoint get(int index, PreparedPoint point) {
+		int position = position(index);
+		return point.set(latitudes[position], longitudes[position]);
+	}
+	
+	/**
+	 * @param from
+	 * @return indeks (liczony od aktualnego celu) najbliższego pozostałego punktu lub -1 jeśli kolejka jest pusta
+	 */
+	public synchronized int nearest(PreparedPoint from) {
+		int nearest = Geodesy.nearest(from, prepared, head, tail);
+		return nearest < 0 ? -1 : nearest - head;
+	}
+	
+	/**
+	 * @return długość pozostałej trasy (od aktualnego celu do ostatniego punktu) w metrach
+	 */
+	public synchronized double remainingLength() {
+		return Geodesy.pathLength(prepared, head, tail);
+	}
+	
+	/**
+	 * @return kopia pozostałych punktów (np. do rysowania)
+	 */
+	public synchronized List<GPSData> toList() {
+		List<GPSData> list = new ArrayList<GPSData>(tail - head);
+		for(int i = head; i < tail; i++)
+			list.add(new GPSData(latitudes[i], longitudes[i]));
+		
+		return list;
+	}
+	
+	private int position(int index) {
+		if(index < 0 || index >= tail - head)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (tail - head));
+		
+		return head + index;
+	}
+	
+	private void set(int position, double latitude, double longitude) {
+		latitudes[position] = latitude;
+		longitudes[position] = longitude;
+		prepared.set(position, latitude, longitude);
+	}
+	
+	/**
+	 * Zapewnia miejsce na podaną liczbę punktów za ostatnim - najpierw przesuwając punkty
+	 * na początek tablic, a jeśli to nie wystarczy, powiększając je
+	 * @param count
+	 */
+	private void ensureSpace(int count) {
+		if(tail + count <= latitudes.length)
+			return;
+		
+		int size = tail - head;
+		if(head > 0) {
+			System.arraycopy(latitudes, head, latitudes, 0, size);
+			System.arraycopy(longitudes, head, longitudes, 0, size);
+			prepared.move(head, 0, size);
+			head = 0;
+			tail = size;
+		}
+		
+		if(size + count > latitudes.length) {
+			int capacity = Math.max(size + count, latitudes.length + (latitudes.length >> 1));
+			latitudes = Arrays.copyOf(latitudes, capacity);
+			longitudes = Arrays.copyOf(longitudes, capacity);
+			prepared.ensureCapacity(capacity);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.navigation.nmea;
+
+/**
+ * Wielokrotnie używany rekord z danymi odczytanymi ze zdań GGA, HDT i HDM.
+ * Wszystkie pola są prymitywne, brak danych oznaczany jest przez NaN.
+ * Obiekt nie jest bezpieczny wątkowo - należy do wątku odczytującego port.
+ * @author Harry
+ *
+ */
+public class GPSFix {
+	double latitude = Double.NaN, // szerokosc geogr.
+		   longitude = Double.NaN, // dlugosc geogr.
+		   altitude = Double.NaN, // wysokosc (m n.p.m.)
+		   hdop = Double.NaN, // horyzontalne rozmycie precyzji
+		   heading = Double.NaN; // kierunek w stopniach
+	int fixQuality; // jakość pozycji (0 - brak)
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	public double getAltitude() {
+		return altitude;
+	}
+
+	public double getHdop() {
+		return hdop;
+	}
+
+	/**
+	 * @return kierunek w stopniach (prawdziwy lub magnetyczny, zależnie od ostatniego zdania)
+	 */
+	public double getHeading() {
+		return heading;
+	}
+
+	public int getFixQuality() {
+		return fixQuality;
+	}
+
+	/**
+	 * @return true jeśli znana jest pozycja
+	 */
+	public boolean hasPosition() {
+		return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+	}
+
+	/**
+	 * Czyści wszystkie dane
+	 */
+	public void clear() {
+		latitude = longitude = altitude = hdop = heading = Double.NaN;
+		fixQuality = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "[latitude=" + latitude + ", longitude=" + longitude + ", altitude=" + altitude + 
+				", quality=" + fixQuality + ", hdop=" + hdop + ", heading=" + heading + "]";
+	}
+}
@@ -0,0 +1,287 @@
+package com.navigation.nmea;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Wydziela ramki NMEA (<code>$...*hh\r\n</code>) bezpośrednio z bajtów odczytanych ze strumienia.
+ * Identyfikator zdania i suma kontrolna są sprawdzane na bajtach, zanim powstanie jakikolwiek obiekt,
+ * więc zdania, na które nikt nie czeka, nie powodują alokacji.
+ * @author Harry
+ *
+ */
+public class NmeaFramer {
+
+	/**
+	 * Odbiorca poprawnych ramek
+	 */
+	public interface FrameListener {
+		/**
+		 * Wywoływane dla każdej poprawnej ramki, która przeszła filtr
+		 * @param frame bufor ustawiony na ramkę (od '$' do końca sumy kontrolnej, bez CR/LF),
+		 * ważny tylko w czasie wywołania
+		 * @param sentenceId zakodowany identyfikator zdania (patrz {@link NmeaFramer#sentenceId(CharSequence)})
+		 */
+		void frameRead(ByteBuffer frame, int sentenceId);
+	}
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private static final int MIN_FRAME_LENGTH = 6; // $ + talker (2) + identyfikator (3)
+
+	private final byte[] data;
+	private final ByteBuffer frame;
+	private final FrameListener listener;
+
+	private int[] acceptedIds = new int[0];
+	private int[] acceptedTalkers = new int[0];
+
+	private int limit; // koniec danych w buforze
+	private int scanPosition; // miejsce, od którego trwa przeszukiwanie
+	private int frameStart = -1; // początek bieżącej ramki lub -1
+
+	// statystyki
+	private long frames, filtered, checksumErrors, overflows;
+
+	public NmeaFramer(FrameListener listener) {
+		this(DEFAULT_CAPACITY, listener);
+	}
+
+	/**
+	 * @param capacity rozmiar bufora (musi pomieścić najdłuższą ramkę)
+	 * @param listener
+	 */
+	public NmeaFramer(int capacity, FrameListener listener) {
+		this.data = new byte[capacity];
+		this.frame = ByteBuffer.wrap(data);
+		this.listener = listener;
+	}
+
+	/**
+	 * Koduje trzyliterowy identyfikator zdania (np. "GGA") do postaci liczbowej
+	 * @param id
+	 * @return
+	 */
+	public static int sentenceId(CharSequence id) {
+		if(id.length() != 3)
+			throw new IllegalArgumentException("Sentence id must have 3 characters: " + id);
+
+		return (id.charAt(0) << 16) | (id.charAt(1) << 8) | id.charAt(2);
+	}
+
+	/**
+	 * Koduje dwuliterowy identyfikator nadawcy (np. "GP")
+	 * @param talker
+	 * @return
+	 */
+	public static int talkerId(CharSequence talker) {
+		if(talker.length() != 2)
+			throw new IllegalArgumentException("Talker id must have 2 characters: " + talker);
+
+		return (talker.charAt(0) << 8) | talker.charAt(1);
+	}
+
+	/**
+	 * Przepuszcza zdania o podanym identyfikatorze. Jeśli nie dodano żadnego, przepuszczane są wszystkie.
+	 * @param sentenceId np. "GGA"
+	 */
+	public void accept(String sentenceId) {
+		acceptedIds = append(acceptedIds, sentenceId(sentenceId));
+	}
+
+	/**
+	 * Przepuszcza zdania od podanego nadawcy. Jeśli nie dodano żadnego, przepuszczani są wszyscy.
+	 * @param talker np. "GP"
+	 */
+	public void acceptTalker(String talker) {
+		acceptedTalkers = append(acceptedTalkers, talkerId(talker));
+	}
+
+	/**
+	 * Odczytuje ze strumienia tyle danych, ile zmieści się w buforze i przekazuje znalezione ramki
+	 * @param input
+	 * @return liczba odczytanych bajtów lub -1 na końcu strumienia
+	 * @throws IOException
+	 */
+	public int read(InputStream input) throws IOException {
+		int count = input.read(data, limit, data.length - limit);
+
+		if(count > 0) {
+			limit += count;
+			scan();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Kopiuje podane bajty do bufora i przekazuje znalezione ramki
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 */
+	public void feed(byte[] bytes, int offset, int length) {
+		while(length > 0) {
+			int count = Math.min(length, data.length - limit);
+			System.arraycopy(bytes, offset, data, limit, count);
+			limit += count;
+			offset += count;
+			length -= count;
+
+			scan();
+		}
+	}
+
+	/**
+	 * Porzuca niekompletną ramkę i dane w buforze
+	 */
+	public void reset() {
+		limit = 0;
+		scanPosition = 0;
+		frameStart = -1;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	public long getFiltered() {
+		return filtered;
+	}
+
+	public long getChecksumErrors() {
+		return checksumErrors;
+	}
+
+	public long getOverflows() {
+		return overflows;
+	}
+
+	/**
+	 * Szuka granic ramek w nowych danych, a następnie przesuwa niekompletną ramkę na początek bufora
+	 */
+	private void scan() {
+		for(int i = scanPosition; i < limit; i++) {
+			byte b = data[i];
+
+			if(b == '$') {
+				frameStart = i; // niekompletna poprzednia ramka jest porzucana
+			} else if(b == '\n' || b == '\r') {
+				if(frameStart >= 0)
+					handleFrame(frameStart, i);
+				frameStart = -1;
+			}
+		}
+
+		if(frameStart < 0) {
+			limit = 0;
+			scanPosition = 0;
+		} else if(frameStart > 0) {
+			int length = limit - frameStart;
+			System.arraycopy(data, frameStart, data, 0, length);
+			limit = length;
+			scanPosition = length;
+			frameStart = 0;
+		} else if(limit == data.length) { // ramka dłuższa niż bufor
+			overflows++;
+			reset();
+		} else {
+			scanPosition = limit;
+		}
+	}
+
+	/**
+	 * Sprawdza ramkę [start, end) i przekazuje ją odbiorcy
+	 * @param start indeks znaku '$'
+	 * @param end indeks pierwszego bajtu za ramką
+	 */
+	private void handleFrame(int start, int end) {
+		if(end - start < MIN_FRAME_LENGTH)
+			return;
+
+		if(!isAccepted(start)) {
+			filtered++;
+			return;
+		}
+
+		int checksumStart = end - 3;
+		int dataEnd = end;
+
+		if(checksumStart > start && data[checksumStart] == '*') {
+			int expected = (hex(data[end - 2]) << 4) | hex(data[end - 1]);
+
+			int checksum = 0;
+			for(int i = start + 1; i < checksumStart; i++)
+				checksum ^= data[i];
+
+			if(expected < 0 || checksum != expected) {
+				checksumErrors++;
+				return;
+			}
+			dataEnd = checksumStart;
+		}
+
+		// suma kontrolna jest opcjonalna, ale '*' nie może pojawić się w innym miejscu
+		for(int i = start + 1; i < dataEnd; i++) {
+			if(data[i] == '*') {
+				checksumErrors++;
+				return;
+			}
+		}
+
+		frames++;
+
+		frame.clear();
+		frame.position(start);
+		frame.limit(end);
+		listener.frameRead(frame, sentenceIdAt(start));
+	}
+
+	private boolean isAccepted(int start) {
+		if(acceptedTalkers.length > 0) {
+			int talker = ((data[start + 1] & 0xFF) << 8) | (data[start + 2] & 0xFF);
+			if(!contains(acceptedTalkers, talker))
+				return false;
+		}
+
+		return acceptedIds.length == 0 || contains(acceptedIds, sentenceIdAt(start));
+	}
+
+	private int sentenceIdAt(int start) {
+		return ((data[start + 3] & 0xFF) << 16) | ((data[start + 4] & 0xFF) << 8) | (data[start + 5] & 0xFF);
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for(int v : values)
+			if(v == value)
+				return true;
+
+		return false;
+	}
+
+	private static int[] append(int[] values, int value) {
+		if(contains(values, value))
+			return values;
+
+		int[] result = Arrays.copyOf(values, values.length + 1);
+		result[values.length] = value;
+		return result;
+	}
+
+	/**
+	 * @param b
+	 * @return wartość cyfry szesnastkowej lub liczba ujemna
+	 */
+	private static int hex(byte b) {
+		if(b >= '0' && b <= '9')
+			return b - '0';
+		if(b >= 'A' && b <= 'F')
+			return b - 'A' + 10;
+		if(b >= 'a' && b <= 'f')
+			return b - 'a' + 10;
+
+		return -256;
+	}
+}
@@ -0,0 +1,205 @@
+package com.navigation.nmea;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Szybki parser zdań GGA, HDT i HDM. Czyta pola bezpośrednio z bajtów ramki
+ * do prymitywnych pól {@link GPSFix}, bez tworzenia obiektów. Pozostałe zdania
+ * należy przekazać do Marine API.
+ * Instancja przechowuje stan odczytu, więc powinna być używana przez jeden wątek.
+ * @author Harry
+ *
+ */
+public class NmeaParser {
+
+	public static final int GGA = NmeaFramer.sentenceId("GGA");
+	public static final int HDT = NmeaFramer.sentenceId("HDT");
+	public static final int HDM = NmeaFramer.sentenceId("HDM");
+
+	// wynik parsowania
+	public static final int NONE = 0;
+	public static final int POSITION = 1;
+	public static final int HEADING = 2;
+
+	private static final double[] POWERS_OF_TEN = new double[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for(int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	private ByteBuffer frame;
+	private int position; // początek bieżącego pola
+	private int fieldEnd; // koniec bieżącego pola
+	private int end; // koniec danych (znak '*' lub koniec ramki)
+
+	/**
+	 * @param sentenceId zakodowany identyfikator zdania
+	 * @return true jeśli zdanie jest obsługiwane przez ten parser
+	 */
+	public static boolean supports(int sentenceId) {
+		return sentenceId == GGA || sentenceId == HDT || sentenceId == HDM;
+	}
+
+	/**
+	 * Parsuje ramkę i aktualizuje rekord. Pola rekordu nieobecne w zdaniu pozostają bez zmian.
+	 * @param frame ramka od '$' (position) do końca sumy kontrolnej (limit)
+	 * @param sentenceId zakodowany identyfikator zdania
+	 * @param fix rekord do aktualizacji
+	 * @return {@link #POSITION}, {@link #HEADING} lub {@link #NONE} jeśli zdanie nie zawiera danych
+	 */
+	public int parse(ByteBuffer frame, int sentenceId, GPSFix fix) {
+		this.frame = frame;
+		this.end = frame.limit();
+		for(int i = frame.position(); i < end; i++) {
+			if(frame.get(i) == '*') {
+				end = i;
+				break;
+			}
+		}
+		this.fieldEnd = frame.position() + 6; // pomiń "$ttsss"
+
+		if(sentenceId == GGA)
+			return parseGGA(fix);
+		else if(sentenceId == HDT || sentenceId == HDM)
+			return parseHeading(fix);
+
+		return NONE;
+	}
+
+	/**
+	 * $--GGA,hhmmss.ss,llll.ll,a,yyyyy.yy,a,q,xx,x.x,x.x,M,x.x,M,x.x,xxxx*hh
+	 * @param fix
+	 * @return
+	 */
+	private int parseGGA(GPSFix fix) {
+		if(!nextField()) // czas
+			return NONE;
+
+		if(!nextField()) // szerokość
+			return NONE;
+		double latitude = parseCoordinate();
+		if(!nextField()) // N/S
+			return NONE;
+		if(isEmpty() || Double.isNaN(latitude))
+			return NONE;
+		if(charAt(position) == 'S')
+			latitude = -latitude;
+
+		if(!nextField()) // długość
+			return NONE;
+		double longitude = parseCoordinate();
+		if(!nextField()) // E/W
+			return NONE;
+		if(isEmpty() || Double.isNaN(longitude))
+			return NONE;
+		if(charAt(position) == 'W')
+			longitude = -longitude;
+
+		fix.latitude = latitude;
+		fix.longitude = longitude;
+
+		fix.fixQuality = nextField() && !isEmpty() ? (int) parseDecimal() : 0;
+		nextField(); // liczba satelitów
+		fix.hdop = nextField() ? parseDecimal() : Double.NaN;
+		fix.altitude = nextField() ? parseDecimal() : Double.NaN;
+
+		return POSITION;
+	}
+
+	/**
+	 * $--HDT,x.x,T*hh lub $--HDM,x.x,M*hh
+	 * @param fix
+	 * @return
+	 */
+	private int parseHeading(GPSFix fix) {
+		if(!nextField())
+			return NONE;
+
+		double heading = parseDecimal();
+		if(Double.isNaN(heading))
+			return NONE;
+
+		fix.heading = heading;
+		return HEADING;
+	}
+
+	/**
+	 * Przechodzi do następnego pola
+	 * @return false jeśli nie ma więcej pól
+	 */
+	private boolean nextField() {
+		if(fieldEnd >= end || charAt(fieldEnd) != ',')
+			return false;
+
+		position = fieldEnd + 1;
+		fieldEnd = position;
+		while(fieldEnd < end && charAt(fieldEnd) != ',')
+			fieldEnd++;
+
+		return true;
+	}
+
+	private boolean isEmpty() {
+		return position == fieldEnd;
+	}
+
+	private byte charAt(int index) {
+		return frame.get(index);
+	}
+
+	/**
+	 * Zamienia współrzędną w formacie (d)ddmm.mmmm na stopnie
+	 * @return
+	 */
+	private double parseCoordinate() {
+		double value = parseDecimal();
+		if(Double.isNaN(value))
+			return value;
+
+		double degrees = Math.floor(value / 100);
+		return degrees + (value - degrees * 100) / 60;
+	}
+
+	/**
+	 * Parsuje bieżące pole jako liczbę dziesiętną
+	 * @return wartość lub NaN jeśli pole jest puste lub niepoprawne
+	 */
+	private double parseDecimal() {
+		int i = position;
+		boolean negative = false;
+
+		if(i < fieldEnd && (charAt(i) == '-' || charAt(i) == '+'))
+			negative = charAt(i++) == '-';
+
+		long mantissa = 0;
+		int digits = 0, scale = 0;
+		boolean fraction = false;
+
+		for(; i < fieldEnd; i++) {
+			byte b = charAt(i);
+
+			if(b >= '0' && b <= '9') {
+				if(digits < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					digits++;
+					if(fraction)
+						scale++;
+				} else if(!fraction) {
+					return Double.NaN; // zbyt duża liczba
+				}
+			} else if(b == '.' && !fraction) {
+				fraction = true;
+			} else {
+				return Double.NaN;
+			}
+		}
+
+		if(digits == 0)
+			return Double.NaN;
+
+		double value = mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+}
@@ -0,0 +1,233 @@
+package com.navigation.recorder;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Odczyt segmentu zapisanego przez {@link FlightRecorder}. Rekordy czytane są kolejno metodą
+ * {@link #next()} bezpośrednio ze zmapowanego pliku. Metoda main eksportuje segmenty do CSV.
+ * @author Harry
+ *
+ */
+public class FlightRecordReader implements Closeable {
+
+	private static final String[] EVENTS = {"", "FIX", "HEADING", "COMMAND"};
+	private static final String[] FLAGS = {"ACCEPTED", "REJECTED_ZEROS", "REJECTED_DISTANT", "REJECTED_EQUAL", "PREDICTED"};
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final long capacity, sequence, startNanos, startMillis;
+
+	private long index = -1;
+	private int offset;
+
+	/**
+	 * @param file segment
+	 * @throws IOException jeśli plik nie jest poprawnym segmentem
+	 */
+	public FlightRecordReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+
+		try {
+			long size = channel.size();
+			if(size < FlightRecorder.HEADER_SIZE)
+				throw new IOException("Flight record too short: " + file);
+			if(size > Integer.MAX_VALUE)
+				throw new IOException("Flight record too large: " + file);
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.BIG_ENDIAN);
+
+			if(buffer.getInt(0) != FlightRecorder.MAGIC)
+				throw new IOException("Not a flight record: " + file);
+			if(buffer.getShort(4) != FlightRecorder.VERSION || buffer.getShort(6) != FlightRecorder.RECORD_SIZE)
+				throw new IOException("Unsupported flight record version: " + buffer.getShort(4));
+
+			capacity = buffer.getLong(FlightRecorder.CAPACITY_OFFSET);
+			if(capacity < 0 || FlightRecorder.HEADER_SIZE + capacity * FlightRecorder.RECORD_SIZE > size)
+				throw new IOException("Flight record truncated: " + file);
+
+			sequence = buffer.getLong(FlightRecorder.SEQUENCE_OFFSET);
+			startNanos = buffer.getLong(FlightRecorder.START_NANOS_OFFSET);
+			startMillis = buffer.getLong(FlightRecorder.START_MILLIS_OFFSET);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Przechodzi do kolejnego rekordu
+	 * @return false na końcu zapisanych rekordów
+	 */
+	public boolean next() {
+		while(index + 1 < capacity) {
+			index++;
+			offset = FlightRecorder.HEADER_SIZE + (int) index * FlightRecorder.RECORD_SIZE;
+			if(buffer.get(offset + 8) != 0)
+				return true;
+
+			// rekord pusty - koniec segmentu lub rekord niedokończony, po którym są kolejne
+			if(index + 1 == capacity || buffer.get(offset + FlightRecorder.RECORD_SIZE + 8) == 0)
+				break;
+		}
+		index = capacity;
+		return false;
+	}
+
+	/**
+	 * @return numer segmentu
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return czas zdarzenia (System.nanoTime() w procesie zapisującym)
+	 */
+	public long getTime() {
+		return buffer.getLong(offset);
+	}
+
+	/**
+	 * @return czas zdarzenia (ms od 1970-01-01)
+	 */
+	public long getTimeMillis() {
+		return startMillis + Math.floorDiv(getTime() - startNanos, 1000000L);
+	}
+
+	public byte getEvent() {
+		return buffer.get(offset + 8);
+	}
+
+	public byte getFlag() {
+		return buffer.get(offset + 9);
+	}
+
+	public int getLeft() {
+		return buffer.getShort(offset + 10);
+	}
+
+	public int getRight() {
+		return buffer.getShort(offset + 12);
+	}
+
+	public double getLatitude() {
+		return buffer.getDouble(offset + 16);
+	}
+
+	public double getLongitude() {
+		return buffer.getDouble(offset + 24);
+	}
+
+	/**
+	 * @return kierunek (radiany)
+	 */
+	public double getHeading() {
+		return buffer.getDouble(offset + 32);
+	}
+
+	/**
+	 * @return bezwzględny indeks aktualnego celu lub -1
+	 */
+	public long getTarget() {
+		return buffer.getLong(offset + 40);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * @param path segment lub katalog segmentów
+	 * @return segmenty posortowane według nazwy (czasu utworzenia rejestratora i numeru)
+	 * @throws IOException
+	 */
+	public static List<Path> segments(Path path) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		if(!Files.isDirectory(path)) {
+			segments.add(path);
+			return segments;
+		}
+
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + FlightRecorder.EXTENSION)) {
+			for(Path segment : stream)
+				segments.add(segment);
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * Zapisuje rekordy segmentów w formacie CSV (kierunek w stopniach)
+	 * @param segments
+	 * @param out
+	 * @return liczba rekordów
+	 * @throws IOException
+	 */
+	public static long exportCsv(List<Path> segments, Appendable out) throws IOException {
+		out.append("time,nanos,event,flag,latitude,longitude,heading,left,right,target\n");
+
+		long count = 0;
+		for(Path segment : segments) {
+			try(FlightRecordReader reader = new FlightRecordReader(segment)) {
+				while(reader.next()) {
+					out.append(Instant.ofEpochMilli(reader.getTimeMillis()).toString()).append(',')
+						.append(Long.toString(reader.getTime())).append(',')
+						.append(name(EVENTS, reader.getEvent())).append(',')
+						.append(name(FLAGS, reader.getFlag())).append(',')
+						.append(Double.toString(reader.getLatitude())).append(',')
+						.append(Double.toString(reader.getLongitude())).append(',')
+						.append(Double.toString(Math.toDegrees(reader.getHeading()))).append(',')
+						.append(Integer.toString(reader.getLeft())).append(',')
+						.append(Integer.toString(reader.getRight())).append(',')
+						.append(Long.toString(reader.getTarget())).append('\n');
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static String name(String[] names, byte value) {
+		return value >= 0 && value < names.length ? names[value] : Byte.toString(value);
+	}
+
+	/**
+	 * Eksportuje segmenty do CSV
+	 * @param args segment lub katalog segmentów, opcjonalnie plik wynikowy (domyślnie standardowe wyjście)
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1 || args.length > 2) {
+			System.err.println("Usage: FlightRecordReader <segment|directory> [output.csv]");
+			return;
+		}
+
+		List<Path> segments = segments(Paths.get(args[0]));
+		try(Writer out = args.length == 2
+				? Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)
+				: new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+			long count = exportCsv(segments, out);
+			if(args.length == 2)
+				System.out.println(count + " records from " + segments.size() + " segments exported");
+		}
+	}
+}
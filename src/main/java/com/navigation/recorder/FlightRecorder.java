@@ -0,0 +1,349 @@
+package com.navigation.recorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rejestrator przebiegu pracy (pozycje, kierunki, rozkazy) zapisujący rekordy stałej długości do
+ * zmapowanych do pamięci plików - segmentów. Format segmentu (big-endian):
+ * <pre>
+ * nagłówek (64 bajty):
+ *   int   magic        "FRC1"
+ *   short version      1
+ *   short recordSize   48
+ *   long  capacity     liczba rekordów w segmencie
+ *   long  sequence     numer segmentu
+ *   long  startNanos   System.nanoTime() w chwili utworzenia
+ *   long  startMillis  System.currentTimeMillis() w tej samej chwili
+ * rekordy (48 bajtów każdy):
+ *   long   time       System.nanoTime() zdarzenia (np. odbioru pozycji)
+ *   byte   event      FIX, HEADING, COMMAND (0 - rekord pusty)
+ *   byte   flag       ACCEPTED, REJECTED_*, PREDICTED
+ *   short  left, right
+ *   short  reserved
+ *   double latitude, longitude
+ *   double heading    radiany
+ *   long   target     bezwzględny indeks aktualnego celu lub -1
+ * </pre>
+ * Miejsce na rekord rezerwowane jest licznikiem atomowym, więc zapis z wielu wątków nie wymaga blokad
+ * i nie tworzy obiektów. Po zapełnieniu segmentu rejestrator przełącza się na segment utworzony
+ * wcześniej w tle, a najstarsze segmenty ponad limit są usuwane. Rodzaj zdarzenia zapisywany jest
+ * na końcu, więc czytelnik pomija rekordy niedokończone.
+ * @author Harry
+ *
+ */
+public class FlightRecorder implements Closeable {
+
+	public static final int MAGIC = 0x46524331; // "FRC1"
+	public static final short VERSION = 1;
+	public static final int HEADER_SIZE = 64;
+	public static final int RECORD_SIZE = 48;
+	public static final String EXTENSION = ".frc";
+
+	// rodzaje zdarzeń
+	public static final byte FIX = 1;
+	public static final byte HEADING = 2;
+	public static final byte COMMAND = 3;
+
+	// znaczniki
+	public static final byte ACCEPTED = 0;
+	public static final byte REJECTED_ZEROS = 1;
+	public static final byte REJECTED_DISTANT = 2;
+	public static final byte REJECTED_EQUAL = 3;
+	public static final byte PREDICTED = 4; // kierunek lub rozkaz wyznaczony z przewidywanej pozycji
+
+	public static final int DEFAULT_SEGMENT_RECORDS = 1 << 18; // 12 MB
+	public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+	static final int CAPACITY_OFFSET = 8;
+	static final int SEQUENCE_OFFSET = 16;
+	static final int START_NANOS_OFFSET = 24;
+	static final int START_MILLIS_OFFSET = 32;
+
+	private static final int PAGE_SIZE = 4096;
+
+	private final Path directory;
+	private final String prefix;
+	private final int capacity;
+	private final int maxSegments;
+
+	private volatile Segment current; // null po zamknięciu
+	private Segment spare; // następny segment utworzony w tle
+	private long nextSequence;
+	private final Deque<Path> files = new ArrayDeque<>(); // segmenty od najstarszego
+	private final AtomicLong completed = new AtomicLong(); // rekordy w poprzednich segmentach
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final ExecutorService background = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "flight-recorder");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Tworzy rejestrator w katalogu logów (~/Desktop/Logs/flight)
+	 * @throws IOException
+	 */
+	public FlightRecorder() throws IOException {
+		this(Paths.get(System.getProperty("user.home"), "Desktop", "Logs", "flight"), "flight",
+				DEFAULT_SEGMENT_RECORDS, DEFAULT_MAX_SEGMENTS);
+	}
+
+	/**
+	 * @param directory katalog segmentów (tworzony w razie potrzeby)
+	 * @param name początek nazw plików, uzupełniany datą i numerem segmentu
+	 * @param segmentRecords liczba rekordów w segmencie
+	 * @param maxSegments liczba przechowywanych segmentów (najstarsze są usuwane)
+	 * @throws IOException
+	 */
+	public FlightRecorder(Path directory, String name, int segmentRecords, int maxSegments) throws IOException {
+		if(segmentRecords <= 0 || (long) segmentRecords * RECORD_SIZE + HEADER_SIZE > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid segment size: " + segmentRecords);
+		if(maxSegments < 1)
+			throw new IllegalArgumentException("At least one segment must be kept");
+
+		Files.createDirectories(directory);
+		this.directory = directory;
+		this.prefix = name + "_" + DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss").format(LocalDateTime.now()) + "_";
+		this.capacity = segmentRecords;
+		this.maxSegments = maxSegments;
+
+		synchronized(this) {
+			current = createSegment();
+		}
+		prepareSpare();
+	}
+
+	/**
+	 * Zapisuje zdarzenie
+	 * @param event FIX, HEADING lub COMMAND
+	 * @param time System.nanoTime() zdarzenia
+	 * @param latitude
+	 * @param longitude
+	 * @param heading radiany
+	 * @param flag ACCEPTED, REJECTED_*, PREDICTED
+	 * @param left rozkaz dla lewego koła
+	 * @param right rozkaz dla prawego koła
+	 * @param target bezwzględny indeks aktualnego celu lub -1
+	 */
+	public void record(byte event, long time, double latitude, double longitude, double heading, byte flag,
+			int left, int right, long target) {
+		while(true) {
+			Segment segment = current;
+			if(segment == null) {
+				dropped.incrementAndGet();
+				return;
+			}
+
+			long index = segment.cursor.getAndIncrement();
+			if(index < capacity) {
+				MappedByteBuffer buffer = segment.buffer;
+				int offset = HEADER_SIZE + (int) index * RECORD_SIZE;
+				buffer.putLong(offset, time);
+				buffer.put(offset + 9, flag);
+				buffer.putShort(offset + 10, (short) left);
+				buffer.putShort(offset + 12, (short) right);
+				buffer.putDouble(offset + 16, latitude);
+				buffer.putDouble(offset + 24, longitude);
+				buffer.putDouble(offset + 32, heading);
+				buffer.putLong(offset + 40, target);
+				buffer.put(offset + 8, event); // na końcu - rekord kompletny
+				return;
+			}
+
+			roll(segment);
+		}
+	}
+
+	/**
+	 * @return liczba zapisanych rekordów
+	 */
+	public long getRecorded() {
+		Segment segment = current;
+		return completed.get() + (segment == null ? 0 : Math.min(segment.cursor.get(), capacity));
+	}
+
+	/**
+	 * @return liczba rekordów pominiętych (rejestrator zamknięty lub błąd tworzenia segmentu)
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return katalog segmentów
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return aktualny segment lub null po zamknięciu
+	 */
+	public Path getSegment() {
+		Segment segment = current;
+		return segment == null ? null : segment.file;
+	}
+
+	/**
+	 * Zapisuje aktualny segment na nośnik
+	 */
+	public void force() {
+		Segment segment = current;
+		if(segment != null)
+			segment.buffer.force();
+	}
+
+	@Override
+	public void close() {
+		Segment segment;
+		synchronized(this) {
+			segment = current;
+			current = null;
+		}
+		background.shutdown();
+
+		synchronized(this) {
+			if(segment != null) {
+				completed.addAndGet(Math.min(segment.cursor.get(), capacity));
+				segment.buffer.force();
+			}
+			if(spare != null) { // nieużyty segment
+				delete(spare.file);
+				files.remove(spare.file);
+				spare = null;
+			}
+		}
+	}
+
+	/**
+	 * Przełącza zapis na kolejny segment
+	 * @param full segment zapełniony
+	 */
+	private synchronized void roll(Segment full) {
+		if(current != full)
+			return; // przełączony przez inny wątek lub zamknięty
+
+		Segment next = spare;
+		spare = null;
+		if(next == null) { // segment z tła jeszcze niegotowy
+			try {
+				next = createSegment();
+			} catch (IOException e) {
+				System.err.println(e.toString());
+				current = null;
+				return;
+			}
+		}
+
+		completed.addAndGet(capacity);
+		current = next;
+
+		background.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				full.buffer.force();
+			}
+		});
+		prepareSpare();
+	}
+
+	/**
+	 * Tworzy w tle kolejny segment i usuwa najstarsze
+	 */
+	private void prepareSpare() {
+		try {
+			background.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized(FlightRecorder.this) {
+						if(current == null || spare != null)
+							return;
+
+						try {
+							spare = createSegment();
+						} catch (IOException e) {
+							System.err.println(e.toString());
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// rejestrator zamknięty
+		}
+	}
+
+	/**
+	 * Tworzy plik segmentu o pełnym rozmiarze, zapisuje nagłówek i zajmuje wszystkie strony pamięci,
+	 * aby zapis rekordów nie powodował alokacji bloków ani błędów stron
+	 */
+	private Segment createSegment() throws IOException {
+		long sequence = nextSequence++;
+		Path file = directory.resolve(prefix + String.format("%05d", sequence) + EXTENSION);
+
+		MappedByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+		}
+		buffer.order(ByteOrder.BIG_ENDIAN);
+
+		for(int position = 0; position < buffer.capacity(); position += PAGE_SIZE)
+			buffer.put(position, (byte) 0);
+
+		buffer.putShort(4, VERSION);
+		buffer.putShort(6, (short) RECORD_SIZE);
+		buffer.putLong(CAPACITY_OFFSET, capacity);
+		buffer.putLong(SEQUENCE_OFFSET, sequence);
+		buffer.putLong(START_MILLIS_OFFSET, System.currentTimeMillis());
+		buffer.putLong(START_NANOS_OFFSET, System.nanoTime());
+		buffer.putInt(0, MAGIC);
+
+		files.addLast(file);
+		while(files.size() > maxSegments + 1) // + segment zapasowy
+			delete(files.removeFirst());
+
+		return new Segment(file, buffer);
+	}
+
+	private static void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			System.err.println(e.toString());
+		}
+	}
+
+	private static class Segment {
+		private final Path file;
+		private final MappedByteBuffer buffer;
+		private final AtomicLong cursor = new AtomicLong(); // indeks następnego rekordu
+
+		private Segment(Path file, MappedByteBuffer buffer) {
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+}
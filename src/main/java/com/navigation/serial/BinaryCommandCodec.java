@@ -0,0 +1,72 @@
+package com.navigation.serial;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binarny rozkaz o stałej długości 7 bajtów:
+ * <pre>
+ * 0xA5 | lewe (int16, big endian) | prawe (int16, big endian) | numer (uint8) | CRC-8
+ * </pre>
+ * CRC-8 (wielomian 0x07, wartość początkowa 0) liczone jest z bajtów pomiędzy bajtem synchronizacji a CRC.
+ * Wartości spoza zakresu int16 są przycinane.
+ * @author Harry
+ *
+ */
+public class BinaryCommandCodec implements CommandCodec {
+	
+	public static final byte SYNC = (byte) 0xA5;
+	public static final int FRAME_SIZE = 7;
+	
+	private static final int[] CRC_TABLE = new int[256];
+	
+	static {
+		for(int i = 0; i < 256; i++) {
+			int crc = i;
+			for(int bit = 0; bit < 8; bit++)
+				crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+			CRC_TABLE[i] = crc;
+		}
+	}
+	
+	private int sequence = 0;
+	
+	@Override
+	public void encode(int left, int right, ByteBuffer out) {
+		short l = clamp(left);
+		short r = clamp(right);
+		byte seq = (byte) sequence;
+		sequence = (sequence + 1) & 0xFF;
+		
+		int crc = 0;
+		crc = CRC_TABLE[(crc ^ (l >> 8)) & 0xFF];
+		crc = CRC_TABLE[(crc ^ l) & 0xFF];
+		crc = CRC_TABLE[(crc ^ (r >> 8)) & 0xFF];
+		crc = CRC_TABLE[(crc ^ r) & 0xFF];
+		crc = CRC_TABLE[(crc ^ seq) & 0xFF];
+		
+		out.put(SYNC);
+		out.putShort(l);
+		out.putShort(r);
+		out.put(seq);
+		out.put((byte) crc);
+	}
+	
+	/**
+	 * Liczy CRC-8 z podanego fragmentu (do weryfikacji odebranych ramek)
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public static int crc8(byte[] data, int offset, int length) {
+		int crc = 0;
+		for(int i = offset; i < offset + length; i++)
+			crc = CRC_TABLE[(crc ^ data[i]) & 0xFF];
+		
+		return crc;
+	}
+	
+	private static short clamp(int value) {
+		return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+	}
+}
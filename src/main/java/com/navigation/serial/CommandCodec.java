@@ -0,0 +1,24 @@
+package com.navigation.serial;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Kodowanie rozkazów dla silników do postaci wysyłanej przez port szeregowy
+ * @author Harry
+ *
+ */
+public interface CommandCodec {
+	
+	/**
+	 * Maksymalny rozmiar zakodowanego rozkazu w bajtach
+	 */
+	int MAX_FRAME_SIZE = 32;
+	
+	/**
+	 * Zapisuje rozkaz do bufora (od bieżącej pozycji)
+	 * @param left wartość dla lewego koła
+	 * @param right wartość dla prawego koła
+	 * @param out bufor o co najmniej {@link #MAX_FRAME_SIZE} wolnych bajtach
+	 */
+	void encode(int left, int right, ByteBuffer out);
+}
@@ -0,0 +1,454 @@
+package com.navigation.serial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.navigation.metrics.Histogram;
+
+/**
+ * Wątek wysyłający rozkazy przez port szeregowy. Wywołujący tylko umieszcza rozkaz w ograniczonej
+ * kolejce i nie czeka na zapis, więc wolne łącze radiowe nie blokuje pętli sterowania.
+ * <p>
+ * W trybie "ostatnia wartość wygrywa" zadane prędkości kół trafiają do jednego miejsca - jeśli
+ * poprzednia wartość nie została jeszcze wysłana, jest zastępowana nową. Kolejne identyczne rozkazy
+ * mogą być pomijane (z ponowieniem co zadany czas), chyba że zapis poprzedniego się nie powiódł.
+ * @author Harry
+ *
+ */
+public class CommandWriter implements Closeable {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition drained = lock.newCondition();
+
+	// kolejka rozkazów: zadane prędkości (raw == null) lub gotowe bajty
+	private final int[] lefts, rights;
+	private final byte[][] raws;
+	private final long[] submitted; // czas przyjęcia rozkazu (System.nanoTime())
+	private int head, tail, count;
+
+	// zadane prędkości w trybie "ostatnia wartość wygrywa"
+	private boolean latestWins = true;
+	private boolean setPointPending;
+	private int pendingLeft, pendingRight;
+	private long pendingSubmitted;
+
+	// pomijanie powtórzeń
+	private boolean suppressDuplicates = false;
+	private long resendInterval; // ns
+	private boolean hasLastSetPoint;
+	private int lastLeft, lastRight;
+	private long lastSetPointTime;
+
+	private volatile OutputStream output;
+	private CommandCodec codec;
+	private final ByteBuffer buffer = ByteBuffer.allocate(CommandCodec.MAX_FRAME_SIZE);
+	private volatile Histogram latency; // czas od przyjęcia do zapisu rozkazu lub null
+
+	private boolean closed, writing, paused;
+	private final Thread writer;
+
+	// statystyki
+	private long queued, coalesced, suppressed, dropped, written, errors;
+
+	/**
+	 * @param capacity pojemność kolejki
+	 * @param codec kodowanie zadanych prędkości
+	 */
+	public CommandWriter(int capacity, CommandCodec codec) {
+		if(capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+
+		this.lefts = new int[capacity];
+		this.rights = new int[capacity];
+		this.raws = new byte[capacity][];
+		this.submitted = new long[capacity];
+		this.codec = codec;
+
+		this.writer = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "command-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Ustawia strumień wyjściowy (null - rozkazy są odrzucane). Nowy strumień oznacza nowe połączenie,
+	 * więc następne zadane prędkości są wysyłane nawet jeśli powtarzają poprzednie.
+	 * @param output
+	 */
+	public void setOutput(OutputStream output) {
+		lock.lock();
+		try {
+			if(output != this.output)
+				hasLastSetPoint = false;
+			this.output = output;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Ustawia histogram, do którego trafia czas od przyjęcia rozkazu do jego zapisu (null - bez pomiaru)
+	 * @param latency
+	 */
+	public void setLatencyHistogram(Histogram latency) {
+		this.latency = latency;
+	}
+
+	public void setCodec(CommandCodec codec) {
+		lock.lock();
+		try {
+			this.codec = codec;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wstrzymuje lub wznawia wysyłanie (np. na czas ponownego łączenia z portem). Wstrzymane rozkazy
+	 * czekają w kolejce, a zadane prędkości - w trybie "ostatnia wartość wygrywa" - są zastępowane nowszymi.
+	 * @param paused
+	 */
+	public void setPaused(boolean paused) {
+		lock.lock();
+		try {
+			this.paused = paused;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Włącza lub wyłącza tryb, w którym niewysłane zadane prędkości są zastępowane nowymi
+	 * @param latestWins
+	 * @return
+	 */
+	public CommandWriter setLatestWins(boolean latestWins) {
+		lock.lock();
+		try {
+			this.latestWins = latestWins;
+			return this;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Włącza lub wyłącza pomijanie zadanych prędkości identycznych z poprzednimi
+	 * @param suppressDuplicates
+	 * @param resendIntervalMillis czas, po którym identyczny rozkaz jest mimo wszystko wysyłany
+	 * @return
+	 */
+	public CommandWriter setSuppressDuplicates(boolean suppressDuplicates, long resendIntervalMillis) {
+		lock.lock();
+		try {
+			this.suppressDuplicates = suppressDuplicates;
+			this.resendInterval = TimeUnit.MILLISECONDS.toNanos(resendIntervalMillis);
+			return this;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Dodaje zadane prędkości do wysłania
+	 * @param left
+	 * @param right
+	 * @return false jeśli rozkaz został odrzucony z powodu pełnej kolejki
+	 */
+	public boolean submitSetPoint(int left, int right) {
+		lock.lock();
+		try {
+			if(closed)
+				return false;
+
+			long now = System.nanoTime();
+			if(suppressDuplicates && hasLastSetPoint && left == lastLeft && right == lastRight
+					&& now - lastSetPointTime < resendInterval) {
+				suppressed++;
+				return true;
+			}
+
+			if(latestWins) {
+				if(setPointPending)
+					coalesced++;
+				else
+					queued++;
+
+				setPointPending = true;
+				pendingLeft = left;
+				pendingRight = right;
+				pendingSubmitted = now;
+				notEmpty.signal();
+			} else if(!enqueue(left, right, null, now)) {
+				return false;
+			}
+
+			hasLastSetPoint = true;
+			lastLeft = left;
+			lastRight = right;
+			lastSetPointTime = now;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Dodaje gotowe bajty do wysłania
+	 * @param bytes
+	 * @return false jeśli rozkaz został odrzucony z powodu pełnej kolejki
+	 */
+	public boolean submit(byte[] bytes) {
+		lock.lock();
+		try {
+			return !closed && enqueue(0, 0, bytes, System.nanoTime());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean enqueue(int left, int right, byte[] raw, long time) {
+		if(count == raws.length) {
+			dropped++;
+			return false;
+		}
+
+		lefts[tail] = left;
+		rights[tail] = right;
+		raws[tail] = raw;
+		submitted[tail] = time;
+		tail = (tail + 1) % raws.length;
+		count++;
+		queued++;
+
+		notEmpty.signal();
+		return true;
+	}
+
+	/**
+	 * Czeka aż wszystkie rozkazy zostaną wysłane
+	 * @param timeoutMillis
+	 * @return true jeśli kolejka została opróżniona
+	 */
+	public boolean flush(long timeoutMillis) {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		lock.lock();
+		try {
+			while(count > 0 || setPointPending || writing) {
+				if(nanos <= 0 || !writer.isAlive())
+					return false;
+				nanos = drained.awaitNanos(nanos);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wysyła pozostałe rozkazy (chyba że wysyłanie jest wstrzymane) i kończy pracę wątku
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Główna pętla wątku wysyłającego
+	 */
+	private void writeLoop() {
+		while(true) {
+			byte[] raw = null;
+			long submittedAt;
+
+			lock.lock();
+			try {
+				writing = false;
+				drained.signalAll();
+
+				while((paused || count == 0 && !setPointPending) && !closed)
+					notEmpty.awaitUninterruptibly();
+
+				if(closed && paused) {
+					break; // port zamknięty w trakcie wstrzymania, rozkazy są porzucane
+				} else if(count > 0) {
+					raw = raws[head];
+					int left = lefts[head], right = rights[head];
+					submittedAt = submitted[head];
+					raws[head] = null;
+					head = (head + 1) % raws.length;
+					count--;
+
+					if(raw == null)
+						encode(left, right);
+				} else if(setPointPending) {
+					setPointPending = false;
+					submittedAt = pendingSubmitted;
+					encode(pendingLeft, pendingRight);
+				} else {
+					break; // zamknięty i opróżniony
+				}
+
+				writing = true;
+			} finally {
+				lock.unlock();
+			}
+
+			write(raw, submittedAt);
+		}
+
+		lock.lock();
+		try {
+			writing = false;
+			drained.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void encode(int left, int right) {
+		buffer.clear();
+		codec.encode(left, right, buffer);
+	}
+
+	/**
+	 * Zapisuje bajty (lub zakodowany rozkaz z bufora, jeśli raw == null)
+	 * @param raw
+	 * @param submittedAt czas przyjęcia rozkazu
+	 */
+	private void write(byte[] raw, long submittedAt) {
+		OutputStream output = this.output;
+		boolean success = false;
+
+		if(output != null) {
+			try {
+				if(raw != null)
+					output.write(raw);
+				else
+					output.write(buffer.array(), 0, buffer.position());
+				output.flush();
+				success = true;
+				
+				Histogram latency = this.latency;
+				if(latency != null)
+					latency.recordNanos(System.nanoTime() - submittedAt);
+			} catch (IOException e) {
+				System.err.println("Writing to serial port error.");
+			}
+		}
+
+		lock.lock();
+		try {
+			if(success) {
+				written++;
+			} else {
+				errors++;
+				// niewysłane zadane prędkości nie mogą blokować ponowienia identycznego rozkazu
+				if(raw == null)
+					hasLastSetPoint = false;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return liczba rozkazów przyjętych do kolejki
+	 */
+	public long getQueued() {
+		lock.lock();
+		try {
+			return queued;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return liczba zadanych prędkości zastąpionych nowszymi przed wysłaniem
+	 */
+	public long getCoalesced() {
+		lock.lock();
+		try {
+			return coalesced;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return liczba pominiętych powtórzeń
+	 */
+	public long getSuppressed() {
+		lock.lock();
+		try {
+			return suppressed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return liczba rozkazów odrzuconych z powodu pełnej kolejki
+	 */
+	public long getDropped() {
+		lock.lock();
+		try {
+			return dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return liczba wysłanych rozkazów
+	 */
+	public long getWritten() {
+		lock.lock();
+		try {
+			return written;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return liczba rozkazów, których nie udało się wysłać
+	 */
+	public long getErrors() {
+		lock.lock();
+		try {
+			return errors;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
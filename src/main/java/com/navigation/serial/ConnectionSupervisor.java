@@ -0,0 +1,295 @@
+package com.navigation.serial;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Nadzoruje połączenie {@link SerialPortManager}. Łącze uznawane jest za zerwane, gdy przez zadany czas
+ * nie nadeszły żadne dane lub wystąpił błąd odczytu. Port jest wtedy otwierany ponownie z wykładniczo
+ * rosnącym, losowo rozrzuconym odstępem między próbami. Kolejka rozkazów ({@link CommandWriter}) i ostatnia
+ * pozycja są zachowywane, a słuchacze dostają informację o zmianie stanu łącza.
+ * @author Harry
+ *
+ */
+public class ConnectionSupervisor implements Closeable {
+	
+	/**
+	 * Stan łącza
+	 */
+	public enum LinkState {
+		CONNECTED, // dane napływają
+		DOWN, // łącze zerwane, trwają próby ponownego połączenia
+		CLOSED // nadzór zakończony
+	}
+	
+	/**
+	 * Słuchacz zmian stanu łącza
+	 */
+	public interface LinkListener {
+		/**
+		 * Wywoływane z wątku nadzorującego
+		 * @param state nowy stan
+		 * @param reason przyczyna zmiany
+		 */
+		void linkStateChanged(LinkState state, String reason);
+	}
+	
+	public static final long DEFAULT_READ_TIMEOUT = 3000; // ms
+	public static final long DEFAULT_INITIAL_BACKOFF = 200; // ms
+	public static final long DEFAULT_MAX_BACKOFF = 10000; // ms
+	private static final long CHECK_INTERVAL = 100; // ms
+	
+	private final SerialPortManager manager;
+	private final List<LinkListener> listeners = new CopyOnWriteArrayList<LinkListener>();
+	private PortDiscovery discovery;
+	
+	private long readTimeout = TimeUnit.MILLISECONDS.toNanos(DEFAULT_READ_TIMEOUT);
+	private long initialBackoff = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_BACKOFF);
+	private long maxBackoff = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF);
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition wakeUp = lock.newCondition();
+	private boolean retryNow;
+	
+	private volatile LinkState state;
+	private volatile boolean closed;
+	private Thread thread;
+	
+	private long lastErrors;
+	private int attempts; // nieudane próby od zerwania łącza
+	private long nextAttempt; // chwila następnej próby (System.nanoTime())
+	
+	// statystyki
+	private volatile long disconnects, reconnects, failedAttempts;
+	
+	private final PortDiscovery.PortListener portListener = new PortDiscovery.PortListener() {
+		
+		@Override
+		public void portAdded(String name) {
+			if(name.equals(manager.getPortName()) || manager.getPortName() == null)
+				retryNow();
+		}
+		
+		@Override
+		public void portRemoved(String name) {
+			if(name.equals(manager.getPortName()))
+				retryNow();
+		}
+	};
+	
+	public ConnectionSupervisor(SerialPortManager manager) {
+		this.manager = manager;
+	}
+	
+	/**
+	 * @param readTimeoutMillis czas bez danych, po którym łącze uznaje się za zerwane
+	 * @return
+	 */
+	public ConnectionSupervisor setReadTimeout(long readTimeoutMillis) {
+		this.readTimeout = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+		return this;
+	}
+	
+	/**
+	 * @param initialMillis odstęp przed pierwszą próbą ponownego połączenia
+	 * @param maxMillis maksymalny odstęp między próbami
+	 * @return
+	 */
+	public ConnectionSupervisor setBackoff(long initialMillis, long maxMillis) {
+		this.initialBackoff = TimeUnit.MILLISECONDS.toNanos(initialMillis);
+		this.maxBackoff = TimeUnit.MILLISECONDS.toNanos(Math.max(maxMillis, initialMillis));
+		return this;
+	}
+	
+	/**
+	 * Ponowne połączenie jest próbowane od razu po pojawieniu się portu w /dev
+	 * @param discovery
+	 * @return
+	 */
+	public ConnectionSupervisor watch(PortDiscovery discovery) {
+		this.discovery = discovery;
+		discovery.addListener(portListener);
+		return this;
+	}
+	
+	public void addListener(LinkListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(LinkListener listener) {
+		listeners.remove(listener);
+	}
+	
+	public LinkState getState() {
+		return state;
+	}
+	
+	/**
+	 * Rozpoczyna nadzór
+	 */
+	public synchronized void start() {
+		if(thread != null)
+			return;
+		
+		lastErrors = manager.getInputErrors();
+		if(manager.isOpen()) {
+			state = LinkState.CONNECTED;
+		} else {
+			state = LinkState.DOWN;
+			nextAttempt = System.nanoTime();
+		}
+		
+		thread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				superviseLoop();
+			}
+		}, "connection-supervisor");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Kończy nadzór (port nie jest zamykany)
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		retryNow();
+		if(discovery != null)
+			discovery.removeListener(portListener);
+		
+		Thread thread;
+		synchronized(this) {
+			thread = this.thread;
+		}
+		if(thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		setState(LinkState.CLOSED, "Supervisor closed");
+	}
+	
+	/**
+	 * Budzi wątek nadzorujący, aby natychmiast sprawdził łącze lub spróbował połączyć się ponownie
+	 */
+	public void retryNow() {
+		lock.lock();
+		try {
+			retryNow = true;
+			wakeUp.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private void superviseLoop() {
+		while(!closed) {
+			boolean retry = await(CHECK_INTERVAL);
+			if(closed)
+				break;
+			
+			long now = System.nanoTime();
+			if(state == LinkState.CONNECTED) {
+				long errors = manager.getInputErrors();
+				if(errors != lastErrors) {
+					lastErrors = errors;
+					linkDown("Read error", now);
+				} else if(now - manager.getLastInputNanos() > readTimeout) {
+					linkDown("No data for " + TimeUnit.NANOSECONDS.toMillis(now - manager.getLastInputNanos()) + "ms", now);
+				}
+			} else if(state == LinkState.DOWN && (retry || now - nextAttempt >= 0)) {
+				attemptReconnect();
+			}
+		}
+	}
+	
+	private void linkDown(String reason, long now) {
+		disconnects++;
+		attempts = 0;
+		nextAttempt = now + initialBackoff;
+		setState(LinkState.DOWN, reason);
+	}
+	
+	private void attemptReconnect() {
+		if(manager.reconnect()) {
+			reconnects++;
+			lastErrors = manager.getInputErrors();
+			setState(LinkState.CONNECTED, "Reconnected after " + (attempts + 1) + " attempts");
+			return;
+		}
+		
+		failedAttempts++;
+		attempts++;
+		nextAttempt = System.nanoTime() + backoff(attempts);
+	}
+	
+	/**
+	 * Odstęp przed kolejną próbą: wartość rośnie dwukrotnie z każdą próbą (do maksimum),
+	 * a wylosowana jest z przedziału [połowa, całość], aby wiele urządzeń nie próbowało naraz
+	 * @param attempts
+	 * @return odstęp w ns
+	 */
+	private long backoff(int attempts) {
+		long delay = initialBackoff << Math.min(attempts, 30);
+		if(delay <= 0 || delay > maxBackoff)
+			delay = maxBackoff;
+		
+		long half = delay / 2;
+		return half + ThreadLocalRandom.current().nextLong(half + 1);
+	}
+	
+	/**
+	 * @param millis
+	 * @return true jeśli wywołano {@link #retryNow()}
+	 */
+	private boolean await(long millis) {
+		lock.lock();
+		try {
+			long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+			while(!retryNow && nanos > 0)
+				nanos = wakeUp.awaitNanos(nanos);
+			
+			boolean retry = retryNow;
+			retryNow = false;
+			return retry;
+		} catch (InterruptedException e) {
+			closed = true;
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private void setState(LinkState newState, String reason) {
+		if(state == newState)
+			return;
+		
+		state = newState;
+		System.out.println("Link " + newState + ": " + reason);
+		for(LinkListener listener : listeners)
+			listener.linkStateChanged(newState, reason);
+	}
+	
+	public long getDisconnects() {
+		return disconnects;
+	}
+	
+	public long getReconnects() {
+		return reconnects;
+	}
+	
+	public long getFailedAttempts() {
+		return failedAttempts;
+	}
+}
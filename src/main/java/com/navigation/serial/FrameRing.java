@@ -0,0 +1,303 @@
+package com.navigation.serial;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bufor cykliczny ramek z jednym producentem (np. wątek zdarzeń portu szeregowego) i wieloma niezależnymi
+ * odbiorcami (np. log, parser, przekazywanie dalej). Sloty są przydzielone z góry, a każdy odbiorca
+ * ma własny wątek i własny numer sekwencyjny.
+ * <p>
+ * Producent nigdy nie czeka - jeśli odbiorca nie nadąża, najstarsze ramki są nadpisywane, a odbiorca
+ * pomija je i zlicza jako utracone. Odbiorca kopiuje ramkę do własnego bufora i po skopiowaniu
+ * sprawdza, czy slot nie został w międzyczasie nadpisany, więc nigdy nie dostaje uszkodzonej ramki.
+ * @author Harry
+ *
+ */
+public class FrameRing implements Closeable {
+	
+	/**
+	 * Sposób oczekiwania odbiorcy na nowe ramki
+	 */
+	public enum WaitStrategy {
+		BUSY_SPIN, // aktywne oczekiwanie - najmniejsze opóźnienie, zajmuje cały rdzeń
+		YIELD, // oddanie procesora innym wątkom między sprawdzeniami
+		PARK // uśpienie wątku do czasu publikacji nowej ramki
+	}
+	
+	/**
+	 * Odbiorca ramek
+	 */
+	public interface FrameHandler {
+		/**
+		 * @param frame kopia ramki (od position do limit), ważna tylko w czasie wywołania
+		 * @param sequence numer ramki
+		 */
+		void frameRead(ByteBuffer frame, long sequence);
+	}
+	
+	private static final long MAX_PARK_NANOS = 1000000; // 1 ms
+	
+	private final int capacity, mask, slotSize;
+	private final byte[] data; // sloty jeden za drugim
+	private final int[] lengths;
+	
+	private volatile long claimed = -1; // numer ramki, której zapis rozpoczęto
+	private volatile long published = -1; // numer ostatniej opublikowanej ramki
+	private volatile Consumer[] consumers = new Consumer[0];
+	
+	private long truncated; // ramki przycięte do rozmiaru slotu
+	
+	/**
+	 * @param capacity liczba slotów (zaokrąglana w górę do potęgi dwójki)
+	 * @param slotSize maksymalny rozmiar ramki w bajtach (dłuższe są przycinane)
+	 */
+	public FrameRing(int capacity, int slotSize) {
+		if(capacity <= 0 || slotSize <= 0)
+			throw new IllegalArgumentException("Capacity and slot size must be positive");
+		
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity)
+			size <<= 1;
+		
+		this.capacity = size;
+		this.mask = size - 1;
+		this.slotSize = slotSize;
+		this.data = new byte[size * slotSize];
+		this.lengths = new int[size];
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Publikuje ramkę. Może być wywoływane tylko przez jeden wątek.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return numer ramki
+	 */
+	public long publish(byte[] bytes, int offset, int length) {
+		claimed = published + 1; // zgłoś nadpisanie slotu przed zapisem danych
+		long sequence = published + 1; // odczyt volatile po zapisie - dane nie zostaną zapisane wcześniej
+		
+		int index = (int) sequence & mask;
+		if(length > slotSize) {
+			length = slotSize;
+			truncated++;
+		}
+		System.arraycopy(bytes, offset, data, index * slotSize, length);
+		lengths[index] = length;
+		
+		published = sequence;
+		
+		for(Consumer consumer : consumers)
+			if(consumer.parked)
+				LockSupport.unpark(consumer.thread);
+		
+		return sequence;
+	}
+	
+	/**
+	 * Publikuje ramkę od position do limit (pozycja bufora nie zmienia się)
+	 * @param frame
+	 * @return numer ramki
+	 */
+	public long publish(ByteBuffer frame) {
+		if(frame.hasArray())
+			return publish(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+		
+		byte[] bytes = new byte[frame.remaining()];
+		frame.duplicate().get(bytes);
+		return publish(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * @return numer ostatniej opublikowanej ramki (-1 jeśli żadnej)
+	 */
+	public long getPublished() {
+		return published;
+	}
+	
+	public long getTruncated() {
+		return truncated;
+	}
+	
+	/**
+	 * Dodaje odbiorcę z własnym wątkiem. Odbiorca dostaje ramki opublikowane od tej chwili.
+	 * @param name nazwa (i nazwa wątku)
+	 * @param handler
+	 * @param strategy sposób oczekiwania na nowe ramki
+	 * @return
+	 */
+	public synchronized Consumer addConsumer(String name, FrameHandler handler, WaitStrategy strategy) {
+		Consumer consumer = new Consumer(name, handler, strategy, published + 1);
+		
+		Consumer[] newConsumers = Arrays.copyOf(consumers, consumers.length + 1);
+		newConsumers[consumers.length] = consumer;
+		consumers = newConsumers;
+		
+		consumer.thread.start();
+		return consumer;
+	}
+	
+	/**
+	 * Zatrzymuje odbiorcę
+	 * @param consumer
+	 */
+	public synchronized void removeConsumer(Consumer consumer) {
+		Consumer[] newConsumers = new Consumer[consumers.length];
+		int count = 0;
+		for(Consumer c : consumers)
+			if(c != consumer)
+				newConsumers[count++] = c;
+		consumers = Arrays.copyOf(newConsumers, count);
+		
+		consumer.stop();
+	}
+	
+	/**
+	 * Zatrzymuje wszystkich odbiorców
+	 */
+	@Override
+	public synchronized void close() {
+		for(Consumer consumer : consumers)
+			consumer.stop();
+		consumers = new Consumer[0];
+	}
+	
+	/**
+	 * Odbiorca ramek z własnym wątkiem i numerem sekwencyjnym
+	 */
+	public class Consumer {
+		private final String name;
+		private final FrameHandler handler;
+		private final WaitStrategy strategy;
+		private final Thread thread;
+		
+		private final byte[] copy = new byte[slotSize];
+		private final ByteBuffer frame = ByteBuffer.wrap(copy);
+		
+		private volatile long sequence; // numer następnej ramki do odczytu
+		private volatile boolean parked, running = true;
+		private volatile long processed, lost;
+		
+		private Consumer(String name, FrameHandler handler, WaitStrategy strategy, long sequence) {
+			this.name = name;
+			this.handler = handler;
+			this.strategy = strategy;
+			this.sequence = sequence;
+			
+			this.thread = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					consumeLoop();
+				}
+			}, name);
+			this.thread.setDaemon(true);
+		}
+		
+		private void consumeLoop() {
+			long next = sequence;
+			
+			while(running) {
+				long available = published;
+				if(available < next) {
+					await(next);
+					continue;
+				}
+				
+				// producent wyprzedził odbiorcę o cały bufor
+				if(available - next >= capacity) {
+					long oldest = available - capacity + 1;
+					lost += oldest - next;
+					next = oldest;
+				}
+				
+				for(; next <= available && running; next++) {
+					int index = (int) next & mask;
+					int length = lengths[index];
+					System.arraycopy(data, index * slotSize, copy, 0, length);
+					
+					sequence = next + 1; // zapis volatile - kopia zakończona przed sprawdzeniem
+					if(claimed - next >= capacity) { // slot nadpisany w trakcie kopiowania
+						lost++;
+						continue;
+					}
+					
+					frame.clear();
+					frame.limit(length);
+					try {
+						handler.frameRead(frame, next);
+					} catch (RuntimeException e) {
+						System.err.println("Consumer " + name + " error: " + e);
+					}
+					processed++;
+				}
+				sequence = next;
+			}
+		}
+		
+		private void await(long next) {
+			switch(strategy) {
+				case BUSY_SPIN:
+					break;
+				case YIELD:
+					Thread.yield();
+					break;
+				case PARK:
+					parked = true;
+					if(published < next && running) // ponowne sprawdzenie po zgłoszeniu uśpienia
+						LockSupport.parkNanos(this, MAX_PARK_NANOS);
+					parked = false;
+					break;
+			}
+		}
+		
+		private void stop() {
+			running = false;
+			LockSupport.unpark(thread);
+			
+			if(thread != Thread.currentThread()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * @return numer następnej ramki do odczytu
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+		
+		/**
+		 * @return liczba ramek opublikowanych, a jeszcze nieodczytanych
+		 */
+		public long getLag() {
+			return Math.max(published + 1 - sequence, 0);
+		}
+		
+		public long getProcessed() {
+			return processed;
+		}
+		
+		/**
+		 * @return liczba ramek nadpisanych przed odczytem
+		 */
+		public long getLost() {
+			return lost;
+		}
+	}
+}
@@ -2,16 +2,26 @@ package com.navigation.serial;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
+import com.navigation.FixHolder;
+import com.navigation.FixSnapshot;
 import com.navigation.GPSData;
 import com.navigation.Logger;
+import com.navigation.metrics.Counter;
+import com.navigation.metrics.Gauge;
+import com.navigation.metrics.MetricsRegistry;
+import com.navigation.nmea.GPSFix;
+import com.navigation.nmea.NmeaFramer;
+import com.navigation.nmea.NmeaParser;
 
 import net.sf.marineapi.nmea.event.SentenceEvent;
 import net.sf.marineapi.nmea.event.SentenceListener;
-import net.sf.marineapi.nmea.io.ExceptionListener;
-import net.sf.marineapi.nmea.io.SentenceReader;
 import net.sf.marineapi.nmea.parser.DataNotAvailableException;
+import net.sf.marineapi.nmea.parser.SentenceFactory;
 import net.sf.marineapi.nmea.sentence.GGASentence;
 import net.sf.marineapi.nmea.sentence.HDMSentence;
 import net.sf.marineapi.nmea.sentence.HDTSentence;
@@ -23,46 +33,249 @@ import net.sf.marineapi.nmea.sentence.VTGSentence;
  * @author Harry
  *
  */
-public class GPSSerialPortManager extends SerialPortManager implements SentenceListener {
-	private GPSData gps = new GPSData();
-	private Double heading = null;
+public class GPSSerialPortManager extends SerialPortManager implements SentenceListener, NmeaFramer.FrameListener, 
+		PortHandler {
+	private static final long IDLE_SLEEP = 50; // czas uśpienia przy braku danych (ms)
+	
+	private final FixHolder fixHolder = new FixHolder();
 	private InputStream input;
 	
+	private volatile NmeaFramer framer;
+	private final NmeaParser parser = new NmeaParser();
+	private final GPSFix fix = new GPSFix();
+	private boolean rawLogging = true;
+	private volatile Thread readerThread; // wątek odczytu bieżącego strumienia
+	private volatile String channelName; // nazwa portu z PortRegistry lub null
+	
+	// liczniki zdań według identyfikatora (używane tylko przez wątek odczytu)
+	private int[] counterIds = new int[0];
+	private Counter[] sentenceCounters = new Counter[0];
+	
 	private Logger logger = new Logger(GPSSerialPortManager.class, "Logs/raw");
 	
 	protected void createInputStream() throws IOException {
-		input = serialPort.getInputStream();
+		input = openInputStream();
 	}
 
 	/**
-	 * Implementacja odczytu ze strumienia wejścia dla danych GPS
+	 * Implementacja odczytu ze strumienia wejścia dla danych GPS. Ramki są wydzielane i filtrowane
+	 * na bajtach, do Marine API trafiają tylko zdania GGA, HDM i HDT.
 	 */
 	@Override
 	protected void handleInputStream() {
-		SentenceReader reader = new SentenceReader(input);
-		//reader.addSentenceListener(this, SentenceId.VTG);
-		reader.addSentenceListener(this, SentenceId.GGA);
-		reader.addSentenceListener(this, SentenceId.HDM);
-		reader.addSentenceListener(this, SentenceId.HDT);
-		reader.setExceptionListener(new ExceptionListener() {
+		final NmeaFramer framer = createFramer();
+		final InputStream input = this.input;
+		this.framer = framer;
+		
+		Thread reader = new Thread(new Runnable() {
 			
 			@Override
-			public void onException(Exception e) {
-				if(e instanceof IOException) {
-					//System.err.println("Błąd we/wy (najprawdopodobniej pusty stream");
-				} 
+			public void run() {
+				readLoop(input, framer);
 			}
-		});
-		
+		}, "gps-reader");
+		reader.setDaemon(true);
+		readerThread = reader;
 		reader.start();
 	}
-
+	
+	/**
+	 * Kończy pracę wątku odczytu (także przed ponownym otwarciem portu)
+	 */
+	@Override
+	protected void closeInput() {
+		Thread reader = readerThread;
+		readerThread = null;
+		if(reader != null)
+			reader.interrupt();
+	}
+	
+	private NmeaFramer createFramer() {
+		NmeaFramer framer = new NmeaFramer(this);
+		//framer.accept(SentenceId.VTG.name());
+		framer.accept(SentenceId.GGA.name());
+		framer.accept(SentenceId.HDM.name());
+		framer.accept(SentenceId.HDT.name());
+		registerFramerMetrics();
+		return framer;
+	}
+	
+	/**
+	 * Wystawia liczniki bieżącego modułu ramek. Nowy moduł (po ponownym otwarciu portu) liczy od zera,
+	 * co przy eksporcie wygląda jak restart licznika.
+	 */
+	private void registerFramerMetrics() {
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		String port = getMetricsLabel();
+		
+		metrics.functionCounter("nmea_checksum_errors_total", "NMEA frames with invalid checksum", new Gauge() {
+			
+			@Override
+			public double get() {
+				NmeaFramer framer = GPSSerialPortManager.this.framer;
+				return framer != null ? framer.getChecksumErrors() : 0;
+			}
+		}, "port", port);
+		metrics.functionCounter("nmea_filtered_total", "NMEA frames skipped by sentence filter", new Gauge() {
+			
+			@Override
+			public double get() {
+				NmeaFramer framer = GPSSerialPortManager.this.framer;
+				return framer != null ? framer.getFiltered() : 0;
+			}
+		}, "port", port);
+		metrics.functionCounter("nmea_overflows_total", "NMEA frames longer than the framer buffer", new Gauge() {
+			
+			@Override
+			public double get() {
+				NmeaFramer framer = GPSSerialPortManager.this.framer;
+				return framer != null ? framer.getOverflows() : 0;
+			}
+		}, "port", port);
+	}
+	
+	/**
+	 * @param sentenceId
+	 * @return licznik zdań o podanym identyfikatorze
+	 */
+	private Counter sentenceCounter(int sentenceId) {
+		int[] ids = counterIds;
+		Counter[] counters = sentenceCounters;
+		for(int i = 0; i < ids.length && i < counters.length; i++)
+			if(ids[i] == sentenceId)
+				return counters[i];
+		
+		String id = new String(new char[] {(char) (sentenceId >> 16 & 0xFF), (char) (sentenceId >> 8 & 0xFF), 
+				(char) (sentenceId & 0xFF)});
+		Counter counter = MetricsRegistry.getDefault().counter("nmea_sentences_total", "Accepted NMEA sentences by id", 
+				"port", getMetricsLabel(), "id", id);
+		
+		ids = Arrays.copyOf(ids, ids.length + 1);
+		ids[ids.length - 1] = sentenceId;
+		counters = Arrays.copyOf(counters, ids.length);
+		counters[ids.length - 1] = counter;
+		sentenceCounters = counters;
+		counterIds = ids;
+		return counter;
+	}
+	
+	/**
+	 * Obsługa danych z portu zarejestrowanego w {@link PortRegistry} (bez własnego wątku odczytu)
+	 */
+	@Override
+	public void dataRead(PortChannel port, byte[] data, int offset, int length) {
+		if(framer == null) {
+			channelName = port.getName();
+			framer = createFramer();
+		}
+		
+		inputReceived();
+		framer.feed(data, offset, length);
+	}
+	
+	/**
+	 * Port obsługiwany przez {@link PortRegistry} jest etykietowany własną nazwą, aby metryki kilku
+	 * odbiorników nie trafiały do wspólnej serii "source"
+	 */
+	@Override
+	protected String getMetricsLabel() {
+		String channelName = this.channelName;
+		return channelName != null && getPortName() == null ? channelName : super.getMetricsLabel();
+	}
+	
+	/**
+	 * Pętla wątku odczytującego dane z portu. Kończy się, gdy wątek przestaje być bieżącym wątkiem odczytu.
+	 * @param input strumień otwarty dla tego wątku
+	 * @param framer
+	 */
+	private void readLoop(InputStream input, NmeaFramer framer) {
+		readingStarted();
+		
+		while(readerThread == Thread.currentThread()) {
+			try {
+				if(framer.read(input) > 0)
+					inputReceived();
+				else
+					TimeUnit.MILLISECONDS.sleep(IDLE_SLEEP);
+			} catch (IOException e) {
+				// błąd we/wy (najprawdopodobniej pusty stream lub odłączone urządzenie); błąd zamkniętego
+				// strumienia poprzedniego wątku nie dotyczy nowego połączenia
+				if(readerThread == Thread.currentThread())
+					inputFailed(e);
+				try {
+					TimeUnit.MILLISECONDS.sleep(IDLE_SLEEP);
+				} catch (InterruptedException ie) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		
+		readingStopped();
+	}
+	
+	/**
+	 * Obsługuje przefiltrowaną ramkę. Zdania GGA, HDT i HDM są parsowane bezpośrednio z bajtów,
+	 * pozostałe trafiają do Marine API.
+	 */
+	@Override
+	public void frameRead(ByteBuffer frame, int sentenceId) {
+		sentenceCounter(sentenceId).increment();
+		
+		try {
+			if(NmeaParser.supports(sentenceId)) {
+				if(rawLogging) {
+					String sentence = toString(frame);
+					logger.info(sentence.substring(3, 6) + ": " + sentence);
+				}
+				
+				switch(parser.parse(frame, sentenceId, fix)) {
+					case NmeaParser.POSITION:
+						fixHolder.publishPosition(fix.getLatitude(), fix.getLongitude(), System.nanoTime());
+						break;
+					case NmeaParser.HEADING:
+						fixHolder.publishHeading(Math.toRadians(fix.getHeading()));
+						break;
+				}
+			} else {
+				sentenceRead(new SentenceEvent(this, SentenceFactory.getInstance().createParser(toString(frame))));
+			}
+		} catch(Exception e) {
+			logger.info(e.getMessage());
+		}
+	}
+	
+	private static String toString(ByteBuffer frame) {
+		return new String(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(), StandardCharsets.US_ASCII);
+	}
+	
+	/**
+	 * Włącza lub wyłącza zapis surowych zdań do logu. Wyłączenie usuwa ostatnie alokacje
+	 * z wątku odczytu dla zdań GGA, HDT i HDM.
+	 * @param rawLogging
+	 */
+	public void setRawLogging(boolean rawLogging) {
+		this.rawLogging = rawLogging;
+	}
+	
+	/**
+	 * @return moduł wydzielający ramki NMEA (dostępny po inicjalizacji)
+	 */
+	public NmeaFramer getFramer() {
+		return framer;
+	}
+	
 	/**
 	 * Get data gathered from serial port and decoded by Marine API.
 	 * @return simplified structure for storing most important data
 	 */
 	public GPSData getGps() {
-		return gps;
+		FixSnapshot snapshot = new FixSnapshot();
+		if(!fixHolder.read(snapshot))
+			return new GPSData();
+		
+		return new GPSData(snapshot.getLatitude(), snapshot.getLongitude());
 	}
 	
 	/**
@@ -70,7 +283,24 @@ public class GPSSerialPortManager extends SerialPortManager implements SentenceL
 	 * @return heading from magnetometer
 	 */
 	public Double getHeading() {
-		return heading;
+		double heading = fixHolder.getHeading();
+		return Double.isNaN(heading) ? null : heading;
+	}
+	
+	/**
+	 * Copy latest position and heading into given snapshot without locking.
+	 * @param snapshot
+	 * @return true if any position was received
+	 */
+	public boolean readFix(FixSnapshot snapshot) {
+		return fixHolder.read(snapshot);
+	}
+	
+	/**
+	 * @return holder of the latest position and heading
+	 */
+	public FixHolder getFixHolder() {
+		return fixHolder;
 	}
 	
 	@Override
@@ -106,21 +336,21 @@ public class GPSSerialPortManager extends SerialPortManager implements SentenceL
 					logger.info("GGA: " + gga.toSentence());
 					
 					if(gga.isValid())
-						gps = new GPSData(gga.getPosition());
+						fixHolder.publishPosition(gga.getPosition().getLatitude(), gga.getPosition().getLongitude(), System.nanoTime());
 					break;
 				case "HDM":
 					HDMSentence hdm = (HDMSentence) event.getSentence();
 					logger.info("HDM: " + hdm.toSentence());
 					
 					if(hdm.isValid())
-						heading = Math.toRadians(hdm.getHeading());
+						fixHolder.publishHeading(Math.toRadians(hdm.getHeading()));
 					break;
 				case "HDT":
 					HDTSentence hdt = (HDTSentence) event.getSentence();
 					logger.info("HDT: " + hdt.toSentence());
 					
 					if(hdt.isValid())
-						heading = Math.toRadians(hdt.getHeading());
+						fixHolder.publishHeading(Math.toRadians(hdt.getHeading()));
 					break;
 				default:
 					logger.info("Unused: " + event.getSentence().toSentence());
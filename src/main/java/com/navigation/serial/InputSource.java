@@ -0,0 +1,20 @@
+package com.navigation.serial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Źródło danych wejściowych dla {@link SerialPortManager} - port szeregowy lub np. odtwarzany plik
+ * @author Harry
+ *
+ */
+public interface InputSource extends Closeable {
+	
+	/**
+	 * Otwiera strumień z danymi
+	 * @return
+	 * @throws IOException
+	 */
+	InputStream open() throws IOException;
+}
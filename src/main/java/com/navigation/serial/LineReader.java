@@ -0,0 +1,222 @@
+package com.navigation.serial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Dzieli dane ze strumienia na linie bezpośrednio na bajtach. Przy każdym odczycie pobierane są
+ * wszystkie dostępne bajty (do wielkości bufora), więc kilka linii przychodzących razem trafia do
+ * odbiorcy od razu. Linie przekazywane są jako widoki na wspólny bufor, bez tworzenia obiektów.
+ * Znaki końca linii: LF lub CR LF (CR jest usuwany).
+ * @author Harry
+ *
+ */
+public class LineReader {
+	
+	/**
+	 * Odbiorca linii
+	 */
+	public interface LineConsumer {
+		/**
+		 * Wywoływane dla każdej linii. Oba parametry są widokami na ten sam bufor, ważnymi
+		 * tylko w czasie wywołania.
+		 * @param line bajty linii (od position do limit, bez znaków końca linii)
+		 * @param text ta sama linia jako znaki (ASCII/ISO-8859-1)
+		 */
+		void lineRead(ByteBuffer line, CharSequence text);
+	}
+	
+	public static final int DEFAULT_CAPACITY = 4096;
+	
+	private final byte[] data;
+	private final ByteBuffer line;
+	private final ByteCharSequence text;
+	private volatile LineConsumer consumer;
+	
+	private int limit; // koniec danych w buforze
+	private int lineStart; // początek niekompletnej linii
+	private int scanPosition;
+	private boolean discarding; // pomijanie reszty zbyt długiej linii
+	
+	// statystyki
+	private long lines, overflows;
+	
+	public LineReader(LineConsumer consumer) {
+		this(DEFAULT_CAPACITY, consumer);
+	}
+	
+	/**
+	 * @param capacity rozmiar bufora (musi pomieścić najdłuższą linię)
+	 * @param consumer
+	 */
+	public LineReader(int capacity, LineConsumer consumer) {
+		this.data = new byte[capacity];
+		this.line = ByteBuffer.wrap(data);
+		this.text = new ByteCharSequence(data);
+		this.consumer = consumer;
+	}
+	
+	public void setConsumer(LineConsumer consumer) {
+		this.consumer = consumer;
+	}
+	
+	/**
+	 * Odczytuje wszystkie dostępne bez blokowania dane i przekazuje kompletne linie
+	 * @param input
+	 * @return liczba odczytanych bajtów lub -1 na końcu strumienia
+	 * @throws IOException
+	 */
+	public int drain(InputStream input) throws IOException {
+		int total = 0;
+		
+		int available;
+		while((available = input.available()) > 0) {
+			int count = input.read(data, limit, Math.min(available, data.length - limit));
+			if(count < 0)
+				return total > 0 ? total : -1;
+			
+			limit += count;
+			total += count;
+			scan();
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * Odczytuje dane (blokując, jeśli ich nie ma) i przekazuje kompletne linie
+	 * @param input
+	 * @return liczba odczytanych bajtów lub -1 na końcu strumienia
+	 * @throws IOException
+	 */
+	public int read(InputStream input) throws IOException {
+		int count = input.read(data, limit, data.length - limit);
+		
+		if(count > 0) {
+			limit += count;
+			scan();
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Przekazuje ostatnią linię bez znaku końca linii (np. na końcu strumienia)
+	 */
+	public void finish() {
+		if(limit > lineStart && !discarding)
+			deliver(lineStart, limit);
+		
+		reset();
+	}
+	
+	/**
+	 * Porzuca dane w buforze
+	 */
+	public void reset() {
+		limit = lineStart = scanPosition = 0;
+		discarding = false;
+	}
+	
+	public long getLines() {
+		return lines;
+	}
+	
+	public long getOverflows() {
+		return overflows;
+	}
+	
+	/**
+	 * Szuka końców linii w nowych danych, a następnie przesuwa niekompletną linię na początek bufora
+	 */
+	private void scan() {
+		for(int i = scanPosition; i < limit; i++) {
+			if(data[i] == '\n') {
+				int end = i > lineStart && data[i - 1] == '\r' ? i - 1 : i;
+				if(discarding)
+					discarding = false;
+				else
+					deliver(lineStart, end);
+				lineStart = i + 1;
+			}
+		}
+		
+		if(lineStart == limit) {
+			limit = lineStart = scanPosition = 0;
+		} else if(lineStart > 0) {
+			int length = limit - lineStart;
+			System.arraycopy(data, lineStart, data, 0, length);
+			limit = scanPosition = length;
+			lineStart = 0;
+		} else if(limit == data.length) { // linia dłuższa niż bufor, reszta zostanie pominięta
+			overflows++;
+			reset();
+			discarding = true;
+		} else {
+			scanPosition = limit;
+		}
+	}
+	
+	private void deliver(int start, int end) {
+		lines++;
+		
+		line.clear();
+		line.position(start);
+		line.limit(end);
+		text.set(start, end - start);
+		
+		LineConsumer consumer = this.consumer;
+		if(consumer != null)
+			consumer.lineRead(line, text);
+	}
+	
+	/**
+	 * Widok znaków na fragment tablicy bajtów (jeden bajt - jeden znak)
+	 */
+	private static class ByteCharSequence implements CharSequence {
+		private final byte[] data;
+		private int offset, length;
+		
+		ByteCharSequence(byte[] data) {
+			this.data = data;
+		}
+		
+		ByteCharSequence(byte[] data, int offset, int length) {
+			this.data = data;
+			set(offset, length);
+		}
+		
+		void set(int offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if(index < 0 || index >= length)
+				throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+			
+			return (char) (data[offset + index] & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if(start < 0 || end > length || start > end)
+				throw new IndexOutOfBoundsException("Range: " + start + ".." + end + ", length: " + length);
+			
+			return new ByteCharSequence(data, offset + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(data, offset, length, StandardCharsets.ISO_8859_1);
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package com.navigation.serial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import gnu.io.SerialPort;
+
+/**
+ * Port zarejestrowany w {@link PortRegistry}. Odczyt wykonuje wspólny wątek rejestru, zapis - wątek
+ * wywołujący. Zbiera statystyki przepustowości i opóźnień.
+ * @author Harry
+ *
+ */
+public class PortChannel implements Closeable {
+	
+	public static final int MAX_CONSECUTIVE_ERRORS = 10; // po tylu błędach odczytu z rzędu port jest zamykany
+	private static final long INITIAL_BACKOFF = TimeUnit.MILLISECONDS.toNanos(10); // przerwa po pierwszym błędzie
+	private static final long MAX_BACKOFF = TimeUnit.SECONDS.toNanos(1);
+	private static final long LOG_INTERVAL = TimeUnit.SECONDS.toNanos(1); // najwyżej jeden komunikat błędu na sekundę
+	
+	private final String name;
+	private final InputSource source;
+	private final InputStream input;
+	private final OutputStream output;
+	private final SerialPort serialPort; // null jeśli źródłem nie jest port szeregowy
+	private final PortHandler handler;
+	
+	private CommandCodec codec;
+	private final ByteBuffer commandBuffer = ByteBuffer.allocate(CommandCodec.MAX_FRAME_SIZE);
+	
+	private volatile boolean closed;
+	private volatile IOException failure; // przyczyna zamknięcia portu po błędach odczytu
+	private final long openedAt = System.nanoTime();
+	
+	// statystyki odczytu (zapisywane tylko przez wątek rejestru)
+	private volatile long bytesRead, reads, readErrors, handlerErrors;
+	private int consecutiveErrors; // błędy odczytu z rzędu
+	private long retryAt; // najbliższa próba odczytu po błędzie (System.nanoTime())
+	private long lastErrorLog, suppressedErrors;
+	private volatile long handlerNanos, maxHandlerNanos; // czas obsługi porcji danych
+	private volatile long lastReadAt, maxGapNanos; // największa przerwa między odczytami
+	
+	// statystyki zapisu (pod blokadą commandBuffer)
+	private volatile long bytesWritten, writes, writeErrors;
+	private volatile long writeNanos, maxWriteNanos;
+	
+	PortChannel(String name, InputSource source, OutputStream output, SerialPort serialPort, 
+			CommandCodec codec, PortHandler handler) throws IOException {
+		this.name = name;
+		this.source = source;
+		this.input = source.open();
+		this.output = output;
+		this.serialPort = serialPort;
+		this.codec = codec;
+		this.handler = handler;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * @return przyczyna zamknięcia portu po {@link #MAX_CONSECUTIVE_ERRORS} błędach odczytu z rzędu lub null
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+	
+	/**
+	 * Odczytuje dostępne dane bez blokowania i przekazuje je odbiorcy. Po błędzie odczytu kolejne
+	 * próby są coraz rzadsze, a po {@link #MAX_CONSECUTIVE_ERRORS} błędach z rzędu port jest zamykany.
+	 * @param buffer
+	 * @return true jeśli odczytano i przekazano jakiekolwiek dane
+	 */
+	boolean poll(byte[] buffer) {
+		if(closed)
+			return false;
+		if(consecutiveErrors > 0 && System.nanoTime() - retryAt < 0)
+			return false;
+		
+		int count;
+		try {
+			int available = input.available();
+			if(available <= 0)
+				return false;
+			
+			count = input.read(buffer, 0, Math.min(available, buffer.length));
+			if(count <= 0)
+				return false;
+		} catch (IOException e) {
+			readFailed(e);
+			return false;
+		}
+		consecutiveErrors = 0;
+		
+		long start = System.nanoTime();
+		if(lastReadAt != 0)
+			maxGapNanos = Math.max(maxGapNanos, start - lastReadAt);
+		lastReadAt = start;
+		bytesRead += count;
+		reads++;
+		
+		try {
+			handler.dataRead(this, buffer, 0, count);
+		} catch (RuntimeException e) {
+			handlerErrors++;
+			logError("Handler of " + name + " error: ", e);
+			return false; // pozwól wątkowi zasnąć, jeśli odbiorca ciągle zawodzi
+		}
+		
+		long elapsed = System.nanoTime() - start;
+		handlerNanos += elapsed;
+		maxHandlerNanos = Math.max(maxHandlerNanos, elapsed);
+		return true;
+	}
+	
+	/**
+	 * Odkłada kolejną próbę odczytu (wykładniczo) lub zamyka port po zbyt wielu błędach z rzędu
+	 * @param e
+	 */
+	private void readFailed(IOException e) {
+		readErrors++;
+		consecutiveErrors++;
+		
+		if(consecutiveErrors >= MAX_CONSECUTIVE_ERRORS) {
+			System.err.println("Port " + name + " closed after " + consecutiveErrors + " read errors: " + e);
+			failure = e;
+			close();
+			return;
+		}
+		
+		retryAt = System.nanoTime() + Math.min(INITIAL_BACKOFF << (consecutiveErrors - 1), MAX_BACKOFF);
+		logError("Reading from " + name + " error: ", e);
+	}
+	
+	/**
+	 * Wypisuje błąd, najwyżej jeden komunikat na sekundę
+	 */
+	private void logError(String message, Exception e) {
+		long now = System.nanoTime();
+		if(lastErrorLog != 0 && now - lastErrorLog < LOG_INTERVAL) {
+			suppressedErrors++;
+			return;
+		}
+		
+		System.err.println(message + e + (suppressedErrors > 0 ? " (" + suppressedErrors + " more errors suppressed)" : ""));
+		lastErrorLog = now;
+		suppressedErrors = 0;
+	}
+	
+	/**
+	 * Wysyła rozkaz zakodowany kodowaniem portu
+	 * @param left
+	 * @param right
+	 * @return false w przypadku błędu zapisu
+	 */
+	public boolean sendCommand(int left, int right) {
+		synchronized(commandBuffer) {
+			commandBuffer.clear();
+			codec.encode(left, right, commandBuffer);
+			return write(commandBuffer.array(), 0, commandBuffer.position());
+		}
+	}
+	
+	/**
+	 * Wysyła podane bajty
+	 * @param bytes
+	 * @return false w przypadku błędu zapisu
+	 */
+	public boolean send(byte[] bytes) {
+		synchronized(commandBuffer) {
+			return write(bytes, 0, bytes.length);
+		}
+	}
+	
+	public void setCodec(CommandCodec codec) {
+		synchronized(commandBuffer) {
+			this.codec = codec;
+		}
+	}
+	
+	private boolean write(byte[] bytes, int offset, int length) {
+		if(output == null || closed)
+			return false;
+		
+		long start = System.nanoTime();
+		try {
+			output.write(bytes, offset, length);
+			output.flush();
+		} catch (IOException e) {
+			writeErrors++;
+			System.err.println("Writing to " + name + " error: " + e);
+			return false;
+		}
+		
+		long elapsed = System.nanoTime() - start;
+		writeNanos += elapsed;
+		maxWriteNanos = Math.max(maxWriteNanos, elapsed);
+		bytesWritten += length;
+		writes++;
+		return true;
+	}
+	
+	@Override
+	public void close() {
+		if(closed)
+			return;
+		closed = true;
+		
+		try {
+			source.close();
+		} catch (IOException e) {
+			System.err.println(e.toString());
+		}
+		if(serialPort != null)
+			serialPort.close();
+	}
+	
+	public long getBytesRead() {
+		return bytesRead;
+	}
+	
+	public long getReads() {
+		return reads;
+	}
+	
+	public long getReadErrors() {
+		return readErrors;
+	}
+	
+	/**
+	 * @return liczba wyjątków zgłoszonych przez odbiorcę danych
+	 */
+	public long getHandlerErrors() {
+		return handlerErrors;
+	}
+	
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+	
+	public long getWrites() {
+		return writes;
+	}
+	
+	public long getWriteErrors() {
+		return writeErrors;
+	}
+	
+	/**
+	 * @return średnia liczba odczytanych bajtów na sekundę od otwarcia portu
+	 */
+	public double getReadThroughput() {
+		double seconds = (System.nanoTime() - openedAt) / (double) TimeUnit.SECONDS.toNanos(1);
+		return seconds > 0 ? bytesRead / seconds : 0;
+	}
+	
+	/**
+	 * @return średni czas obsługi porcji danych przez odbiorcę (ns)
+	 */
+	public long getAverageHandlerNanos() {
+		long reads = this.reads;
+		return reads > 0 ? handlerNanos / reads : 0;
+	}
+	
+	public long getMaxHandlerNanos() {
+		return maxHandlerNanos;
+	}
+	
+	/**
+	 * @return największa przerwa między kolejnymi odczytami (ns)
+	 */
+	public long getMaxGapNanos() {
+		return maxGapNanos;
+	}
+	
+	/**
+	 * @return średni czas zapisu (ns)
+	 */
+	public long getAverageWriteNanos() {
+		long writes = this.writes;
+		return writes > 0 ? writeNanos / writes : 0;
+	}
+	
+	public long getMaxWriteNanos() {
+		return maxWriteNanos;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": read " + bytesRead + " B in " + reads + " chunks (" + (long) getReadThroughput() 
+				+ " B/s, handler avg " + getAverageHandlerNanos() / 1000 + " us, max " + maxHandlerNanos / 1000 
+				+ " us, max gap " + maxGapNanos / 1000000 + " ms), written " + bytesWritten + " B in " + writes 
+				+ " writes (avg " + getAverageWriteNanos() / 1000 + " us), errors " + readErrors + "/" + writeErrors 
+				+ "/" + handlerErrors + (failure != null ? ", failed: " + failure : "");
+	}
+}
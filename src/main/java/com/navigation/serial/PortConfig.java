@@ -0,0 +1,96 @@
+package com.navigation.serial;
+
+import gnu.io.SerialPort;
+
+/**
+ * Konfiguracja portu obsługiwanego przez {@link PortRegistry}
+ * @author Harry
+ *
+ */
+public class PortConfig {
+	
+	private final String name;
+	private int baudRate = 57600;
+	private int dataBits = SerialPort.DATABITS_8;
+	private int stopBits = SerialPort.STOPBITS_1;
+	private int parity = SerialPort.PARITY_NONE;
+	private int timeout = 2000;
+	private CommandCodec codec = new TextCommandCodec();
+	
+	/**
+	 * @param name nazwa portu, np. "/dev/ttyUSB0" lub "COM6"
+	 */
+	public PortConfig(String name) {
+		this.name = name;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getBaudRate() {
+		return baudRate;
+	}
+	
+	public PortConfig setBaudRate(int baudRate) {
+		this.baudRate = baudRate;
+		return this;
+	}
+	
+	public int getDataBits() {
+		return dataBits;
+	}
+	
+	public int getStopBits() {
+		return stopBits;
+	}
+	
+	public int getParity() {
+		return parity;
+	}
+	
+	/**
+	 * Ustawia format ramki
+	 * @param dataBits np. {@link SerialPort#DATABITS_8}
+	 * @param stopBits np. {@link SerialPort#STOPBITS_1}
+	 * @param parity np. {@link SerialPort#PARITY_NONE}
+	 * @return
+	 */
+	public PortConfig setFraming(int dataBits, int stopBits, int parity) {
+		this.dataBits = dataBits;
+		this.stopBits = stopBits;
+		this.parity = parity;
+		return this;
+	}
+	
+	public int getTimeout() {
+		return timeout;
+	}
+	
+	/**
+	 * @param timeout czas oczekiwania na otwarcie portu (ms)
+	 * @return
+	 */
+	public PortConfig setTimeout(int timeout) {
+		this.timeout = timeout;
+		return this;
+	}
+	
+	public CommandCodec getCodec() {
+		return codec;
+	}
+	
+	/**
+	 * @param codec kodowanie rozkazów wysyłanych przez {@link PortChannel#sendCommand(int, int)}
+	 * @return
+	 */
+	public PortConfig setCodec(CommandCodec codec) {
+		this.codec = codec;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return name + " [" + baudRate + " " + dataBits + "/" + stopBits + "/" + parity + "]";
+	}
+}
@@ -0,0 +1,326 @@
+package com.navigation.serial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import gnu.io.CommPortIdentifier;
+import gnu.io.NoSuchPortException;
+
+/**
+ * Wyszukiwanie portów szeregowych. Lista portów jest wczytywana raz (z katalogu /dev, a jeśli go nie ma -
+ * z RXTX) i przechowywana. Porty można wybierać według wzorca nazwy lub identyfikatorów USB
+ * (VID/PID z /sys). Opcjonalnie katalog /dev jest obserwowany, więc podłączenie i odłączenie
+ * urządzenia aktualizuje listę i powiadamia słuchaczy bez ponownego przeszukiwania.
+ * @author Harry
+ *
+ */
+public class PortDiscovery implements Closeable {
+	
+	/**
+	 * Słuchacz zmian listy portów
+	 */
+	public interface PortListener {
+		void portAdded(String name);
+		void portRemoved(String name);
+	}
+	
+	private static final Path DEV = Paths.get("/dev");
+	private static final Path SYS_TTY = Paths.get("/sys/class/tty");
+	private static final String[] DEVICE_PREFIXES = {"tty", "cu.", "rfcomm"};
+	
+	private static PortDiscovery defaultDiscovery;
+	
+	private volatile Map<String, UsbId> ports = new ConcurrentHashMap<String, UsbId>(); // nazwa -> identyfikator USB
+	private final List<PortListener> listeners = new CopyOnWriteArrayList<PortListener>();
+	
+	private WatchService watchService;
+	private Thread watcher;
+	
+	/**
+	 * Identyfikator urządzenia USB (lub NONE dla portów, które nie są urządzeniami USB)
+	 */
+	private static class UsbId {
+		static final UsbId NONE = new UsbId(-1, -1);
+		
+		final int vendorId, productId;
+		
+		UsbId(int vendorId, int productId) {
+			this.vendorId = vendorId;
+			this.productId = productId;
+		}
+	}
+	
+	public PortDiscovery() {
+		refresh();
+	}
+	
+	/**
+	 * @return wspólna instancja (tworzona przy pierwszym użyciu)
+	 */
+	public static synchronized PortDiscovery getDefault() {
+		if(defaultDiscovery == null)
+			defaultDiscovery = new PortDiscovery();
+		
+		return defaultDiscovery;
+	}
+	
+	/**
+	 * Wczytuje listę portów od nowa. Nowa lista zastępuje poprzednią w całości (wyszukiwanie w trakcie
+	 * odświeżania widzi jedną z nich), a słuchacze dostają informację o różnicach.
+	 */
+	public void refresh() {
+		Map<String, UsbId> found = new ConcurrentHashMap<String, UsbId>();
+		
+		if(Files.isDirectory(DEV)) {
+			try(DirectoryStream<Path> stream = Files.newDirectoryStream(DEV)) {
+				for(Path path : stream)
+					if(isSerialDevice(path.getFileName().toString()))
+						found.put(path.toString(), usbId(path.getFileName().toString()));
+			} catch (IOException e) {
+				System.err.println(e.toString());
+			}
+		} else { // np. Windows
+			Enumeration<?> portEnum = CommPortIdentifier.getPortIdentifiers();
+			while(portEnum.hasMoreElements()) {
+				CommPortIdentifier portId = (CommPortIdentifier) portEnum.nextElement();
+				if(portId.getPortType() == CommPortIdentifier.PORT_SERIAL)
+					found.put(portId.getName(), UsbId.NONE);
+			}
+		}
+		
+		List<String> added = new ArrayList<String>(), removed = new ArrayList<String>();
+		synchronized(this) {
+			Map<String, UsbId> old = ports;
+			for(String name : found.keySet())
+				if(!old.containsKey(name))
+					added.add(name);
+			for(String name : old.keySet())
+				if(!found.containsKey(name))
+					removed.add(name);
+			ports = found;
+		}
+		
+		for(String name : removed)
+			for(PortListener listener : listeners)
+				listener.portRemoved(name);
+		for(String name : added)
+			for(PortListener listener : listeners)
+				listener.portAdded(name);
+	}
+	
+	/**
+	 * @return nazwy znanych portów
+	 */
+	public List<String> getPorts() {
+		return new ArrayList<String>(ports.keySet());
+	}
+	
+	public boolean exists(String name) {
+		return ports.containsKey(name);
+	}
+	
+	/**
+	 * @param glob wzorzec nazwy, np. "/dev/ttyUSB*" lub "COM?"
+	 * @return pierwszy (według nazwy) pasujący port lub null
+	 */
+	public String find(String glob) {
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		
+		String found = null;
+		for(String name : ports.keySet())
+			if(matcher.matches(Paths.get(name)) && (found == null || name.compareTo(found) < 0))
+				found = name;
+		
+		return found;
+	}
+	
+	/**
+	 * @param names nazwy portów w kolejności preferencji
+	 * @return pierwszy istniejący port lub null
+	 */
+	public String findFirst(String... names) {
+		for(String name : names)
+			if(ports.containsKey(name))
+				return name;
+		
+		return null;
+	}
+	
+	/**
+	 * @param vendorId VID urządzenia USB
+	 * @param productId PID urządzenia USB
+	 * @return pierwszy (według nazwy) port urządzenia o podanych identyfikatorach lub null
+	 */
+	public String findByUsbId(int vendorId, int productId) {
+		String found = null;
+		for(Map.Entry<String, UsbId> entry : ports.entrySet()) {
+			UsbId id = entry.getValue();
+			if(id.vendorId == vendorId && id.productId == productId 
+					&& (found == null || entry.getKey().compareTo(found) < 0))
+				found = entry.getKey();
+		}
+		
+		return found;
+	}
+	
+	public void addListener(PortListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(PortListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Rozpoczyna obserwację katalogu /dev (nic nie robi, jeśli katalogu nie ma lub obserwacja już trwa)
+	 * @throws IOException
+	 */
+	public synchronized void startWatching() throws IOException {
+		if(watcher != null || !Files.isDirectory(DEV))
+			return;
+		
+		watchService = FileSystems.getDefault().newWatchService();
+		DEV.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+		
+		watcher = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				watchLoop();
+			}
+		}, "port-discovery");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+	
+	/**
+	 * Kończy obserwację katalogu /dev
+	 */
+	@Override
+	public synchronized void close() {
+		if(watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				System.err.println(e.toString());
+			}
+			watchService = null;
+			watcher = null;
+		}
+	}
+	
+	private void watchLoop() {
+		WatchService watchService = this.watchService;
+		
+		try {
+			while(true) {
+				WatchKey key = watchService.take();
+				
+				for(WatchEvent<?> event : key.pollEvents()) {
+					if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						refresh();
+						continue;
+					}
+					
+					String fileName = event.context().toString();
+					if(!isSerialDevice(fileName))
+						continue;
+					
+					String name = DEV.resolve(fileName).toString();
+					if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+						UsbId id = usbId(fileName);
+						synchronized(this) { // lista nie może zostać w tym czasie zastąpiona przez refresh
+							ports.put(name, id);
+						}
+						for(PortListener listener : listeners)
+							listener.portAdded(name);
+					} else {
+						UsbId removed;
+						synchronized(this) {
+							removed = ports.remove(name);
+						}
+						if(removed != null)
+							for(PortListener listener : listeners)
+								listener.portRemoved(name);
+					}
+				}
+				
+				if(!key.reset())
+					break;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// zakończono obserwację
+		}
+	}
+	
+	/**
+	 * Zwraca identyfikator portu w RXTX. Jeśli port pojawił się po uruchomieniu, lista portów RXTX
+	 * jest odświeżana.
+	 * @param name
+	 * @return
+	 * @throws NoSuchPortException
+	 */
+	public static CommPortIdentifier getPortIdentifier(String name) throws NoSuchPortException {
+		try {
+			return CommPortIdentifier.getPortIdentifier(name);
+		} catch (NoSuchPortException e) {
+			CommPortIdentifier.getPortIdentifiers(); // RXTX przeszukuje porty od nowa
+			return CommPortIdentifier.getPortIdentifier(name);
+		}
+	}
+	
+	private static boolean isSerialDevice(String fileName) {
+		for(String prefix : DEVICE_PREFIXES)
+			if(fileName.startsWith(prefix) && fileName.length() > prefix.length())
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Odczytuje VID/PID urządzenia USB z /sys/class/tty/&lt;nazwa&gt;/device (i katalogów nadrzędnych)
+	 * @param fileName
+	 * @return
+	 */
+	private static UsbId usbId(String fileName) {
+		Path device = SYS_TTY.resolve(fileName).resolve("device");
+		if(!Files.exists(device))
+			return UsbId.NONE;
+		
+		try {
+			for(Path path = device.toRealPath(); path != null; path = path.getParent()) {
+				Path vendor = path.resolve("idVendor"), product = path.resolve("idProduct");
+				if(Files.isRegularFile(vendor) && Files.isRegularFile(product))
+					return new UsbId(readHex(vendor), readHex(product));
+			}
+		} catch (IOException | NumberFormatException e) {
+			// brak informacji o urządzeniu
+		}
+		
+		return UsbId.NONE;
+	}
+	
+	private static int readHex(Path file) throws IOException {
+		return Integer.parseInt(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim(), 16);
+	}
+}
@@ -0,0 +1,19 @@
+package com.navigation.serial;
+
+/**
+ * Odbiorca danych odczytanych z portu zarejestrowanego w {@link PortRegistry}
+ * @author Harry
+ *
+ */
+public interface PortHandler {
+	
+	/**
+	 * Wywoływane z wątku obsługującego port dla każdej odczytanej porcji danych.
+	 * Nie powinno blokować - ten sam wątek obsługuje także inne porty.
+	 * @param port
+	 * @param data bufor ważny tylko w czasie wywołania
+	 * @param offset
+	 * @param length
+	 */
+	void dataRead(PortChannel port, byte[] data, int offset, int length);
+}
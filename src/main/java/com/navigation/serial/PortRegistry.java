@@ -0,0 +1,302 @@
+package com.navigation.serial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.navigation.metrics.Gauge;
+import com.navigation.metrics.MetricsRegistry;
+
+import gnu.io.CommPortIdentifier;
+import gnu.io.NoSuchPortException;
+import gnu.io.PortInUseException;
+import gnu.io.SerialPort;
+import gnu.io.UnsupportedCommOperationException;
+
+/**
+ * Rejestr wielu portów (np. odbiornik GNSS, kompas, sterownik silników, radio) obsługiwanych przez
+ * kilka wspólnych wątków zamiast jednego wątku na urządzenie. Każdy wątek w pętli sprawdza, które
+ * z jego portów mają dostępne dane ({@link java.io.InputStream#available()}), odczytuje je bez
+ * blokowania i przekazuje odbiorcom. Gdy żaden port nie ma danych, wątek zasypia na krótko.
+ * @author Harry
+ *
+ */
+public class PortRegistry implements Closeable {
+	
+	/**
+	 * Odbiorca informacji o portach zamkniętych z powodu błędów odczytu
+	 */
+	public interface PortListener {
+		/**
+		 * Wywoływane z wątku obsługującego port. Port pozostaje w rejestrze (statystyki) do wywołania
+		 * {@link PortRegistry#remove(PortChannel)}.
+		 * @param port
+		 * @param cause ostatni błąd odczytu
+		 */
+		void portFailed(PortChannel port, IOException cause);
+	}
+	
+	public static final long DEFAULT_POLL_INTERVAL = 1; // ms
+	private static final int BUFFER_SIZE = 4096;
+	
+	private final PollLoop[] loops;
+	private final long pollInterval; // ns
+	private final List<PortChannel> ports = new CopyOnWriteArrayList<PortChannel>();
+	private final List<PortListener> listeners = new CopyOnWriteArrayList<PortListener>();
+	private volatile boolean closed;
+	
+	/**
+	 * @param threads liczba wątków obsługujących porty
+	 */
+	public PortRegistry(int threads) {
+		this(threads, DEFAULT_POLL_INTERVAL);
+	}
+	
+	/**
+	 * @param threads liczba wątków obsługujących porty
+	 * @param pollIntervalMillis czas uśpienia wątku, gdy żaden z jego portów nie ma danych
+	 */
+	public PortRegistry(int threads, long pollIntervalMillis) {
+		if(threads <= 0)
+			throw new IllegalArgumentException("Number of threads must be positive");
+		
+		this.pollInterval = TimeUnit.MILLISECONDS.toNanos(Math.max(pollIntervalMillis, 0));
+		this.loops = new PollLoop[threads];
+		
+		for(int i = 0; i < threads; i++) {
+			loops[i] = new PollLoop();
+			Thread thread = new Thread(loops[i], "port-loop-" + i);
+			thread.setDaemon(true);
+			loops[i].thread = thread;
+			thread.start();
+		}
+	}
+	
+	/**
+	 * Otwiera port szeregowy z podaną konfiguracją i rozpoczyna jego obsługę
+	 * @param config
+	 * @param handler odbiorca odczytanych danych
+	 * @return
+	 * @throws IOException jeśli portu nie ma, jest zajęty lub nie obsługuje podanych parametrów
+	 */
+	public PortChannel open(PortConfig config, PortHandler handler) throws IOException {
+		SerialPort serialPort;
+		try {
+			CommPortIdentifier portId = PortDiscovery.getPortIdentifier(config.getName());
+			serialPort = (SerialPort) portId.open(PortRegistry.class.getName(), config.getTimeout());
+		} catch (NoSuchPortException e) {
+			throw new IOException("Port " + config.getName() + " not found.");
+		} catch (PortInUseException e) {
+			throw new IOException("Port " + config.getName() + " is in use.");
+		}
+		
+		try {
+			serialPort.setSerialPortParams(config.getBaudRate(), config.getDataBits(), 
+					config.getStopBits(), config.getParity());
+			
+			return register(new PortChannel(config.getName(), new SerialInputSource(serialPort), 
+					serialPort.getOutputStream(), serialPort, config.getCodec(), handler));
+		} catch (UnsupportedCommOperationException e) {
+			serialPort.close();
+			throw new IOException("Port " + config + " configuration not supported.");
+		} catch (IOException e) {
+			serialPort.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Rozpoczyna obsługę dowolnego źródła danych (np. odtwarzanego pliku)
+	 * @param name nazwa używana w statystykach
+	 * @param source
+	 * @param output cel wysyłanych rozkazów (może być null)
+	 * @param codec kodowanie rozkazów
+	 * @param handler odbiorca odczytanych danych
+	 * @return
+	 * @throws IOException
+	 */
+	public PortChannel attach(String name, InputSource source, OutputStream output, CommandCodec codec, 
+			PortHandler handler) throws IOException {
+		return register(new PortChannel(name, source, output, null, codec, handler));
+	}
+	
+	private synchronized PortChannel register(PortChannel port) {
+		if(closed) {
+			port.close();
+			throw new IllegalStateException("Registry closed");
+		}
+		
+		// port trafia do najmniej obciążonego wątku
+		PollLoop loop = loops[0];
+		for(PollLoop candidate : loops)
+			if(candidate.ports.size() < loop.ports.size())
+				loop = candidate;
+		
+		loop.ports.add(port);
+		ports.add(port);
+		registerMetrics(port);
+		LockSupport.unpark(loop.thread);
+		
+		return port;
+	}
+	
+	public void addListener(PortListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(PortListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Kończy obsługę portu i zamyka go
+	 * @param port
+	 */
+	public synchronized void remove(PortChannel port) {
+		for(PollLoop loop : loops)
+			loop.ports.remove(port);
+		ports.remove(port);
+		removeMetrics(port);
+		
+		port.close();
+	}
+	
+	/**
+	 * Wystawia statystyki portu w {@link MetricsRegistry#getDefault()}
+	 * @param port
+	 */
+	private static void registerMetrics(final PortChannel port) {
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		String name = port.getName();
+		
+		metrics.functionCounter("serial_bytes_read_total", "Bytes read from serial port", new Gauge() {
+			
+			@Override
+			public double get() {
+				return port.getBytesRead();
+			}
+		}, "port", name);
+		metrics.functionCounter("serial_bytes_written_total", "Bytes written to serial port", new Gauge() {
+			
+			@Override
+			public double get() {
+				return port.getBytesWritten();
+			}
+		}, "port", name);
+		metrics.functionCounter("serial_read_errors_total", "Serial port read errors", new Gauge() {
+			
+			@Override
+			public double get() {
+				return port.getReadErrors();
+			}
+		}, "port", name);
+		metrics.functionCounter("serial_write_errors_total", "Serial port write errors", new Gauge() {
+			
+			@Override
+			public double get() {
+				return port.getWriteErrors();
+			}
+		}, "port", name);
+		metrics.functionCounter("serial_handler_errors_total", "Exceptions thrown by serial data handlers", new Gauge() {
+			
+			@Override
+			public double get() {
+				return port.getHandlerErrors();
+			}
+		}, "port", name);
+	}
+	
+	private static void removeMetrics(PortChannel port) {
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		String name = port.getName();
+		
+		metrics.remove("serial_bytes_read_total", "port", name);
+		metrics.remove("serial_bytes_written_total", "port", name);
+		metrics.remove("serial_read_errors_total", "port", name);
+		metrics.remove("serial_write_errors_total", "port", name);
+		metrics.remove("serial_handler_errors_total", "port", name);
+	}
+	
+	/**
+	 * @return zarejestrowane porty
+	 */
+	public List<PortChannel> getPorts() {
+		return new ArrayList<PortChannel>(ports);
+	}
+	
+	/**
+	 * @param name
+	 * @return port o podanej nazwie lub null
+	 */
+	public PortChannel getPort(String name) {
+		for(PortChannel port : ports)
+			if(port.getName().equals(name))
+				return port;
+		
+		return null;
+	}
+	
+	/**
+	 * Zatrzymuje wątki i zamyka wszystkie porty
+	 */
+	@Override
+	public void close() {
+		synchronized(this) {
+			if(closed)
+				return;
+			closed = true;
+		}
+		
+		for(PollLoop loop : loops) {
+			LockSupport.unpark(loop.thread);
+			try {
+				loop.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		for(PortChannel port : ports) {
+			removeMetrics(port);
+			port.close();
+		}
+		ports.clear();
+	}
+	
+	/**
+	 * Pętla jednego wątku obsługującego część portów
+	 */
+	private class PollLoop implements Runnable {
+		private final List<PortChannel> ports = new CopyOnWriteArrayList<PortChannel>();
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private Thread thread;
+		
+		private void portFailed(PortChannel port) {
+			ports.remove(port);
+			for(PortListener listener : listeners)
+				listener.portFailed(port, port.getFailure());
+		}
+
+		@Override
+		public void run() {
+			while(!closed) {
+				boolean idle = true;
+				
+				for(PortChannel port : ports) {
+					if(port.poll(buffer))
+						idle = false;
+					else if(port.getFailure() != null) // port zamknięty po błędach odczytu
+						portFailed(port);
+				}
+				
+				if(idle)
+					LockSupport.parkNanos(pollInterval);
+			}
+		}
+	}
+}
@@ -0,0 +1,421 @@
+package com.navigation.serial;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Odtwarza zapisane dane NMEA tak, jakby przychodziły z portu szeregowego. Obsługuje zwykłe pliki NMEA
+ * oraz logi tworzone przez {@link GPSSerialPortManager} (Logs/raw) - z każdej linii brane jest zdanie
+ * od znaku '$'.
+ * <p>
+ * W trybie czasu rzeczywistego i przyspieszonym odstępy między zdaniami odtwarzane są na podstawie
+ * znacznika czasu z logu, a jeśli go nie ma - czasu zapisanego w zdaniach (GGA, RMC, GLL, ZDA, ...).
+ * W trybie maksymalnej szybkości dane oddawane są bez żadnych przerw.
+ * @author Harry
+ *
+ */
+public class ReplayInputSource implements InputSource {
+
+	/**
+	 * Tryb odtwarzania
+	 */
+	public enum Mode {
+		REAL_TIME, // zgodnie ze znacznikami czasu
+		SCALED, // N razy szybciej niż w rzeczywistości
+		MAX_SPEED // bez przerw
+	}
+
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+	private static final int MAX_LINE_LENGTH = 4096;
+
+	private final Path file;
+	private final Mode mode;
+	private final double speedUp;
+	private boolean looping = false;
+
+	private InputStream current;
+
+	private ReplayInputSource(Path file, Mode mode, double speedUp) {
+		this.file = file;
+		this.mode = mode;
+		this.speedUp = speedUp;
+	}
+
+	/**
+	 * @param file
+	 * @return źródło odtwarzające plik w czasie rzeczywistym
+	 */
+	public static ReplayInputSource realTime(Path file) {
+		return new ReplayInputSource(file, Mode.REAL_TIME, 1);
+	}
+
+	/**
+	 * @param file
+	 * @param speedUp krotność przyspieszenia
+	 * @return źródło odtwarzające plik N razy szybciej niż w rzeczywistości
+	 */
+	public static ReplayInputSource scaled(Path file, double speedUp) {
+		if(speedUp <= 0)
+			throw new IllegalArgumentException("Speed-up must be positive");
+
+		return new ReplayInputSource(file, Mode.SCALED, speedUp);
+	}
+
+	/**
+	 * @param file
+	 * @return źródło odtwarzające plik najszybciej jak to możliwe
+	 */
+	public static ReplayInputSource maxSpeed(Path file) {
+		return new ReplayInputSource(file, Mode.MAX_SPEED, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Po dojściu do końca pliku odtwarzanie zaczyna się od początku
+	 * @param looping
+	 * @return
+	 */
+	public ReplayInputSource setLooping(boolean looping) {
+		this.looping = looping;
+		return this;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	@Override
+	public synchronized InputStream open() throws IOException {
+		close();
+		current = new ReplayInputStream();
+		return current;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if(current != null) {
+			current.close();
+			current = null;
+		}
+	}
+
+	/**
+	 * Strumień oddający kolejne zdania (zakończone CR LF) w odpowiednich odstępach czasu
+	 */
+	private class ReplayInputStream extends InputStream {
+		private InputStream input;
+
+		private final byte[] line = new byte[MAX_LINE_LENGTH + 2];
+		private int lineLength;
+		private int sentenceStart, sentenceEnd; // zdanie gotowe do oddania
+
+		private boolean pending; // zdanie wczytane, czeka na swoją chwilę
+		private int pendingStart; // początek wczytanego zdania
+		private long pendingDue; // chwila oddania wczytanego zdania (System.nanoTime())
+		
+		private long firstTimestamp = Long.MIN_VALUE; // czas pierwszego zdania (ms)
+		private long startNanos; // chwila rozpoczęcia odtwarzania
+		private long lastTimestamp = Long.MIN_VALUE;
+		private long dayOffset; // przesunięcie czasu NMEA po północy
+
+		private volatile boolean closed;
+
+		private ReplayInputStream() throws IOException {
+			input = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(!fill(true))
+				return -1;
+
+			return line[sentenceStart++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0)
+				return 0;
+			if(!fill(true))
+				return -1;
+
+			int count = Math.min(len, sentenceEnd - sentenceStart);
+			System.arraycopy(line, sentenceStart, b, off, count);
+			sentenceStart += count;
+			return count;
+		}
+
+		/**
+		 * Nie blokuje - zwraca długość zdania, którego chwila już nadeszła
+		 */
+		@Override
+		public int available() throws IOException {
+			fill(false);
+			return sentenceEnd - sentenceStart;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			input.close();
+		}
+
+		/**
+		 * Przygotowuje kolejne zdanie, jeśli bieżące zostało już oddane
+		 * @param block czy czekać na chwilę oddania zdania
+		 * @return false na końcu pliku lub jeśli zdanie nie jest jeszcze gotowe
+		 * @throws IOException
+		 */
+		private boolean fill(boolean block) throws IOException {
+			while(sentenceStart == sentenceEnd) {
+				if(closed)
+					return false;
+
+				if(!pending) {
+					if(!readLine()) {
+						if(!looping)
+							return false;
+
+						input.close();
+						input = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+						firstTimestamp = lastTimestamp = Long.MIN_VALUE;
+						dayOffset = 0;
+						continue;
+					}
+
+					int dollar = indexOf((byte) '$', 0);
+					if(dollar < 0)
+						continue; // linia bez zdania
+
+					pendingDue = mode != Mode.MAX_SPEED ? due(timestamp(dollar)) : Long.MIN_VALUE;
+					pending = true;
+
+					line[lineLength] = '\r';
+					line[lineLength + 1] = '\n';
+					pendingStart = dollar;
+				}
+
+				if(!pace(block))
+					return false;
+
+				pending = false;
+				sentenceStart = pendingStart;
+				sentenceEnd = lineLength + 2;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Wczytuje linię (bez znaków końca linii) do bufora
+		 * @return false na końcu pliku
+		 * @throws IOException
+		 */
+		private boolean readLine() throws IOException {
+			lineLength = 0;
+			int b;
+
+			while((b = input.read()) >= 0) {
+				if(b == '\n') {
+					return true;
+				} else if(b != '\r' && lineLength < MAX_LINE_LENGTH) {
+					line[lineLength++] = (byte) b;
+				}
+			}
+
+			return lineLength > 0;
+		}
+
+		/**
+		 * Wyznacza chwilę odpowiadającą znacznikowi czasu zdania
+		 * @param timestamp czas w ms lub Long.MIN_VALUE jeśli nieznany
+		 * @return chwila (System.nanoTime()) lub Long.MIN_VALUE jeśli zdanie można oddać od razu
+		 */
+		private long due(long timestamp) {
+			if(timestamp == Long.MIN_VALUE)
+				return Long.MIN_VALUE;
+
+			if(firstTimestamp == Long.MIN_VALUE) {
+				firstTimestamp = timestamp;
+				startNanos = System.nanoTime();
+				return Long.MIN_VALUE;
+			}
+
+			return startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(timestamp - firstTimestamp) / speedUp);
+		}
+
+		/**
+		 * Czeka do chwili oddania wczytanego zdania
+		 * @param block czy czekać
+		 * @return false jeśli chwila jeszcze nie nadeszła (tylko gdy block == false)
+		 */
+		private boolean pace(boolean block) throws IOException {
+			if(pendingDue == Long.MIN_VALUE)
+				return true;
+
+			long wait = pendingDue - System.nanoTime();
+			if(wait <= 0)
+				return true;
+			if(!block)
+				return false;
+
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Replay interrupted");
+			}
+		}
+
+		/**
+		 * Ustala czas zdania: ze znacznika logu lub z pola czasu w zdaniu.
+		 * Zdania bez czasu dziedziczą czas poprzedniego zdania.
+		 * @param dollar początek zdania
+		 * @return czas w ms lub Long.MIN_VALUE
+		 */
+		private long timestamp(int dollar) {
+			long timestamp = logTimestamp(dollar);
+
+			if(timestamp == Long.MIN_VALUE) {
+				timestamp = sentenceTimestamp(dollar);
+
+				if(timestamp != Long.MIN_VALUE) {
+					timestamp += dayOffset;
+					if(lastTimestamp != Long.MIN_VALUE && timestamp < lastTimestamp - DAY / 2) { // północ
+						dayOffset += DAY;
+						timestamp += DAY;
+					}
+				}
+			}
+
+			if(timestamp == Long.MIN_VALUE)
+				return lastTimestamp;
+
+			lastTimestamp = timestamp;
+			return timestamp;
+		}
+
+		/**
+		 * Czyta znacznik czasu logu w postaci "[yyyy-MM-ddTHH:mm(:ss(.SSS))]" przed zdaniem
+		 * @param dollar
+		 * @return czas w ms lub Long.MIN_VALUE
+		 */
+		private long logTimestamp(int dollar) {
+			int open = indexOf((byte) '[', 0);
+			if(open < 0 || open > dollar || open + 17 > dollar)
+				return Long.MIN_VALUE;
+
+			int i = open + 1;
+			int year = digits(i, 4), month = digits(i + 5, 2), day = digits(i + 8, 2);
+			int hour = digits(i + 11, 2), minute = digits(i + 14, 2);
+			if(year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || minute < 0
+					|| line[i + 4] != '-' || line[i + 10] != 'T')
+				return Long.MIN_VALUE;
+
+			long millis = LocalDate.of(year, month, day).toEpochDay() * DAY
+					+ TimeUnit.HOURS.toMillis(hour) + TimeUnit.MINUTES.toMillis(minute);
+
+			i += 16;
+			if(line[i] == ':') {
+				int second = digits(i + 1, 2);
+				if(second < 0)
+					return Long.MIN_VALUE;
+				millis += TimeUnit.SECONDS.toMillis(second);
+				millis += fraction(i + 3);
+			}
+
+			return millis;
+		}
+
+		/**
+		 * Czyta czas (hhmmss.ss) z pola zdania GGA, RMC, ZDA, GNS, GST, GBS lub GLL
+		 * @param dollar
+		 * @return czas od północy w ms lub Long.MIN_VALUE
+		 */
+		private long sentenceTimestamp(int dollar) {
+			if(lineLength < dollar + 7)
+				return Long.MIN_VALUE;
+
+			int field;
+			if(is(dollar + 3, "GGA") || is(dollar + 3, "RMC") || is(dollar + 3, "ZDA")
+					|| is(dollar + 3, "GNS") || is(dollar + 3, "GST") || is(dollar + 3, "GBS"))
+				field = 1;
+			else if(is(dollar + 3, "GLL"))
+				field = 5;
+			else
+				return Long.MIN_VALUE;
+
+			int i = dollar;
+			for(int f = 0; f < field; f++) {
+				i = indexOf((byte) ',', i + 1);
+				if(i < 0)
+					return Long.MIN_VALUE;
+			}
+
+			int hour = digits(i + 1, 2), minute = digits(i + 3, 2), second = digits(i + 5, 2);
+			if(hour < 0 || minute < 0 || second < 0)
+				return Long.MIN_VALUE;
+
+			return TimeUnit.HOURS.toMillis(hour) + TimeUnit.MINUTES.toMillis(minute)
+					+ TimeUnit.SECONDS.toMillis(second) + fraction(i + 7);
+		}
+
+		/**
+		 * @param start indeks kropki
+		 * @return część ułamkowa sekundy w ms (0 jeśli brak)
+		 */
+		private long fraction(int start) {
+			if(start >= lineLength || line[start] != '.')
+				return 0;
+
+			long millis = 0;
+			int scale = 100;
+			for(int i = start + 1; i < lineLength && line[i] >= '0' && line[i] <= '9'; i++) {
+				millis += (line[i] - '0') * scale;
+				scale /= 10;
+			}
+
+			return millis;
+		}
+
+		/**
+		 * @param start
+		 * @param count
+		 * @return liczba zapisana podaną liczbą cyfr lub -1
+		 */
+		private int digits(int start, int count) {
+			if(start + count > lineLength)
+				return -1;
+
+			int value = 0;
+			for(int i = start; i < start + count; i++) {
+				if(line[i] < '0' || line[i] > '9')
+					return -1;
+				value = value * 10 + (line[i] - '0');
+			}
+
+			return value;
+		}
+
+		private boolean is(int start, String text) {
+			for(int i = 0; i < text.length(); i++)
+				if(line[start + i] != text.charAt(i))
+					return false;
+
+			return true;
+		}
+
+		private int indexOf(byte b, int from) {
+			for(int i = from; i < lineLength; i++)
+				if(line[i] == b)
+					return i;
+
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.navigation.serial;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import gnu.io.SerialPort;
+
+/**
+ * Dane odczytywane z otwartego portu szeregowego
+ * @author Harry
+ *
+ */
+public class SerialInputSource implements InputSource {
+	
+	private final SerialPort serialPort;
+	
+	public SerialInputSource(SerialPort serialPort) {
+		this.serialPort = serialPort;
+	}
+
+	@Override
+	public InputStream open() throws IOException {
+		return serialPort.getInputStream();
+	}
+
+	/**
+	 * Port zamyka {@link SerialPortManager}
+	 */
+	@Override
+	public void close() {
+	}
+}
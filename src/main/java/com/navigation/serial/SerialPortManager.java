@@ -1,11 +1,18 @@
 package com.navigation.serial;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.Enumeration;
+
+import com.navigation.metrics.Histogram;
+import com.navigation.metrics.MeteredInputStream;
+import com.navigation.metrics.MeteredOutputStream;
+import com.navigation.metrics.MetricsRegistry;
 
 import gnu.io.CommPortIdentifier;
+import gnu.io.NoSuchPortException;
 import gnu.io.PortInUseException;
 import gnu.io.SerialPort;
 
@@ -17,6 +24,7 @@ import gnu.io.SerialPort;
  */
 public abstract class SerialPortManager {
 	protected SerialPort serialPort;
+	protected InputSource inputSource;
 	
     /**
      * Ports specified for each OS.
@@ -27,7 +35,17 @@ public abstract class SerialPortManager {
 		"COM6", // Windows
 	};
 
+	private String portName; // nazwa otwartego portu lub null
+	private boolean missingReported; // brak portu zgłoszony (kolejne próby połączenia są ciche)
+	private InputSource customSource; // źródło podane w initialize(InputSource, OutputStream)
+	private OutputStream customOutput;
 	private OutputStream output;
+	private CommandCodec codec = new TextCommandCodec();
+	private final ByteBuffer commandBuffer = ByteBuffer.allocate(CommandCodec.MAX_FRAME_SIZE);
+	private volatile CommandWriter commandWriter;
+	private volatile Histogram commandLatency; // histogram otwartego portu (sendCommand bez kolejki)
+	private volatile long lastInput; // czas ostatniego odczytu danych (System.nanoTime())
+	private volatile long inputErrors;
 	private int TIMEOUT = 2000;
 	private int DATARATE = 57600;
 	
@@ -45,25 +63,34 @@ public abstract class SerialPortManager {
 	 * Find port name for host OS, open it and create read and write buffers.
 	 */
 	public void initialize() {
-	    CommPortIdentifier portId = null;
-	    Enumeration<?> portEnum = CommPortIdentifier.getPortIdentifiers();
+		// first, find an instance of serial port as set in PORT_NAMES
+		String portName = PortDiscovery.getDefault().findFirst(PORT_NAMES);
+		if (portName == null) {
+			reportMissing("Could not find COM port.");
+			return;
+		}
+		
+		initialize(portName);
+	}
 	
-	    // first, find an instance of serial port as set in PORT_NAMES
-	    while (portEnum.hasMoreElements()) {
-	        CommPortIdentifier currPortId = (CommPortIdentifier) portEnum.nextElement();
-
-	        for (String portName : PORT_NAMES) {
-	            if (currPortId.getName().equals(portName)) {
-	    		    System.out.println("Founded port: " + currPortId.getName());
-	                portId = currPortId;
-	                break;
-	            }
-	        }
-	    }
-	    if (portId == null) {
-	        System.out.println("Could not find COM port.");
-	        return;
-	    }
+	/**
+	 * Open port with given name and create read and write buffers.
+	 * @param portName e.g. "/dev/ttyUSB0" (see {@link PortDiscovery} for lookup by pattern or USB id)
+	 */
+	public void initialize(String portName) {
+		this.portName = portName;
+		this.customSource = null;
+		this.customOutput = null;
+		
+		CommPortIdentifier portId;
+		try {
+			portId = PortDiscovery.getPortIdentifier(portName);
+		} catch (NoSuchPortException e) {
+			reportMissing("Could not find COM port " + portName + ".");
+			return;
+		}
+		missingReported = false;
+		System.out.println("Founded port: " + portId.getName());
 	
 	    try {
 	        serialPort = (SerialPort) portId.open(this.getClass().getName(), TIMEOUT); // open the port with specified timeout
@@ -74,26 +101,171 @@ public abstract class SerialPortManager {
 	        //serialPort.enableReceiveThreshold(1); // powodowało błąd przy odczycie przez radio (?)
 	
 	        // open the streams
-	        createInputStream();
-		    output = serialPort.getOutputStream();
-		    
-		    handleInputStream();
+	        openStreams(new SerialInputSource(serialPort), serialPort.getOutputStream());
 	    } catch(PortInUseException e) {
 	    	System.err.println("Port " + portId.getName() + " is in use.");
 	    } catch (Exception e) {
 	        System.err.println(e.toString());
+	        closePort();
 	    }
 	}
 	
+	/**
+	 * Print missing port message once, not on every reconnect attempt.
+	 * @param message
+	 */
+	private void reportMissing(String message) {
+		if(!missingReported)
+			System.out.println(message);
+		missingReported = true;
+	}
+	
+	/**
+	 * Use given input source instead of a serial port (e.g. replay of a recorded NMEA file).
+	 * @param source input data
+	 * @param output destination of sent commands (null - commands are discarded)
+	 */
+	public void initialize(InputSource source, OutputStream output) {
+		this.portName = null;
+		this.customSource = source;
+		this.customOutput = output;
+		
+		try {
+			openStreams(source, output);
+		} catch (Exception e) {
+			System.err.println(e.toString());
+		}
+	}
+	
+	private void openStreams(InputSource source, OutputStream output) throws IOException {
+		if(output != null)
+			output = new MeteredOutputStream(output, MetricsRegistry.getDefault().counter("serial_bytes_written_total", 
+					"Bytes written to serial port", "port", getMetricsLabel()));
+		
+		inputSource = source;
+		try {
+			createInputStream();
+		} catch (IOException e) {
+			inputSource = null;
+			throw e;
+		}
+		
+		this.commandLatency = getCommandLatency();
+		this.output = output;
+		if(commandWriter != null) {
+			commandWriter.setOutput(output);
+			commandWriter.setLatencyHistogram(commandLatency);
+			commandWriter.setPaused(false);
+		}
+		
+		lastInput = System.nanoTime();
+		handleInputStream();
+	}
+	
+	/**
+	 * Close the port (or input source) and open it again. Background command writer keeps
+	 * its queue - commands are sent after the port is reopened.
+	 * @return true if the port is open
+	 */
+	public synchronized boolean reconnect() {
+		closePort();
+		
+		if(customSource != null) {
+			initialize(customSource, customOutput);
+		} else if(portName != null) {
+			initialize(portName);
+		} else {
+			initialize();
+		}
+		
+		return isOpen();
+	}
+	
+	/**
+	 * @return true if the port (or input source) is open
+	 */
+	public boolean isOpen() {
+		return inputSource != null;
+	}
+	
+	/**
+	 * @return name of the opened port or null
+	 */
+	public String getPortName() {
+		return portName;
+	}
+	
+	/**
+	 * To be called by subclasses when data was read.
+	 */
+	protected void inputReceived() {
+		lastInput = System.nanoTime();
+	}
+	
+	/**
+	 * To be called by subclasses when reading failed.
+	 * @param e
+	 */
+	protected void inputFailed(IOException e) {
+		inputErrors++;
+	}
+	
+	/**
+	 * @return time of the last read data or of opening the port (System.nanoTime())
+	 */
+	public long getLastInputNanos() {
+		return lastInput;
+	}
+	
+	/**
+	 * @return number of read errors since creation
+	 */
+	public long getInputErrors() {
+		return inputErrors;
+	}
+	
+	/**
+	 * Open stream of the current input source. To be used by {@link #createInputStream()}.
+	 * @return
+	 * @throws IOException
+	 */
+	protected InputStream openInputStream() throws IOException {
+		return new MeteredInputStream(inputSource.open(), MetricsRegistry.getDefault().counter("serial_bytes_read_total", 
+				"Bytes read from serial port", "port", getMetricsLabel()));
+	}
+	
+	/**
+	 * @return value of the "port" label of exported metrics
+	 */
+	protected String getMetricsLabel() {
+		return portName != null ? portName : "source";
+	}
+	
+	/**
+	 * @return histogram of time from sending a motor command to writing it to the port
+	 */
+	private Histogram getCommandLatency() {
+		return MetricsRegistry.getDefault().histogram("serial_command_latency_seconds", 
+				"Time from sendCommand to completed write", Histogram.DEFAULT_TIME_BOUNDS, "port", getMetricsLabel());
+	}
+	
 	protected abstract void createInputStream() throws IOException;
 	protected abstract void handleInputStream();
+	
+	/**
+	 * Stop reading before the input source is closed (e.g. stop reader thread).
+	 */
+	protected void closeInput() {}
 
 	/** 
 	 * Send message through serial port
 	 * @param command
 	 */
 	public void sendCommand(String command) {
-		if(output != null) {
+		CommandWriter writer = commandWriter;
+		if(writer != null) {
+			writer.submit((command + "\n").getBytes(Charset.forName("UTF-8")));
+		} else if(output != null) {
 			try {
 				command += "\n";
 				
@@ -105,9 +277,99 @@ public abstract class SerialPortManager {
 		}
 	}
 	
+	/**
+	 * Send motor command encoded by current codec
+	 * @param left left wheel value
+	 * @param right right wheel value
+	 */
+	public void sendCommand(int left, int right) {
+		CommandWriter writer = commandWriter;
+		if(writer != null) {
+			writer.submitSetPoint(left, right);
+		} else if(output != null) {
+			synchronized(commandBuffer) {
+				try {
+					long start = System.nanoTime();
+					commandBuffer.clear();
+					codec.encode(left, right, commandBuffer);
+					
+					output.write(commandBuffer.array(), 0, commandBuffer.position());
+					output.flush();
+					commandLatency.recordNanos(System.nanoTime() - start);
+				} catch (IOException e) {
+					System.err.println("Writing to serial port error.");
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Set codec used by {@link #sendCommand(int, int)}. Text format "L|R\n" is used by default.
+	 * @param codec
+	 */
+	public void setCommandCodec(CommandCodec codec) {
+		synchronized(commandBuffer) {
+			this.codec = codec;
+			if(commandWriter != null)
+				commandWriter.setCodec(codec);
+		}
+	}
+	
+	/**
+	 * Send commands from a background thread with a bounded queue instead of writing them
+	 * synchronously from the caller's thread. Motor set-points use "latest value wins" by default.
+	 * @param capacity queue capacity
+	 * @return writer, for further configuration
+	 */
+	public CommandWriter enableCommandWriter(int capacity) {
+		synchronized(commandBuffer) {
+			if(commandWriter == null) {
+				commandWriter = new CommandWriter(capacity, codec);
+				commandWriter.setOutput(output);
+				commandWriter.setLatencyHistogram(getCommandLatency());
+			}
+			return commandWriter;
+		}
+	}
+	
+	/**
+	 * @return background command writer or null if commands are written synchronously
+	 */
+	public CommandWriter getCommandWriter() {
+		return commandWriter;
+	}
+	
+	/**
+	 * Close the port. Pending commands are sent first.
+	 */
 	public synchronized void close() {
+		if (commandWriter != null) {
+			commandWriter.close();
+		}
+		closePort();
+	};
+	
+	/**
+	 * Close input source and port. Background command writer is paused, not closed.
+	 */
+	private void closePort() {
+		closeInput();
+		
+		if (commandWriter != null) {
+			commandWriter.setPaused(true);
+		}
+		if (inputSource != null) {
+			try {
+				inputSource.close();
+			} catch (IOException e) {
+				System.err.println(e.toString());
+			}
+			inputSource = null;
+		}
 		if (serialPort != null) {
 	        serialPort.close();
+	        serialPort = null;
 	    }
-	};
+		output = null;
+	}
 }
\ No newline at end of file
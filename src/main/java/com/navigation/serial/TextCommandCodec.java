@@ -0,0 +1,39 @@
+package com.navigation.serial;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rozkaz tekstowy w formacie "L|R\n"
+ * @author Harry
+ *
+ */
+public class TextCommandCodec implements CommandCodec {
+	
+	@Override
+	public void encode(int left, int right, ByteBuffer out) {
+		putInt(left, out);
+		out.put((byte) '|');
+		putInt(right, out);
+		out.put((byte) '\n');
+	}
+	
+	/**
+	 * Zapisuje liczbę w postaci dziesiętnej bez tworzenia obiektu String
+	 * @param value
+	 * @param out
+	 */
+	private static void putInt(int value, ByteBuffer out) {
+		long v = value;
+		if(v < 0) {
+			out.put((byte) '-');
+			v = -v;
+		}
+		
+		long divisor = 1;
+		while(divisor * 10 <= v)
+			divisor *= 10;
+		
+		for(; divisor > 0; divisor /= 10)
+			out.put((byte) ('0' + (v / divisor) % 10));
+	}
+}
@@ -1,8 +1,8 @@
 package com.navigation.serial;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Scanner;
 import java.util.TooManyListenersException;
 
@@ -16,14 +16,59 @@ import gnu.io.SerialPortEventListener;
  */
 public class UniversalSerialPortManager extends SerialPortManager implements SerialPortEventListener{
 	
-	private BufferedReader input;
+	private InputStream input;
+	private LineReader lineReader;
+	private volatile Thread readerThread; // wątek odczytu źródła bez zdarzeń RXTX lub null
+	
+	private volatile LineReader.LineConsumer consumer = new LineReader.LineConsumer() {
+		
+		@Override
+		public void lineRead(ByteBuffer line, CharSequence text) {
+			System.out.println(text);
+		}
+	};
+	
+	/**
+	 * Set receiver of read lines. By default lines are printed to standard output.
+	 * @param consumer
+	 */
+	public void setLineConsumer(LineReader.LineConsumer consumer) {
+		this.consumer = consumer;
+		if(lineReader != null)
+			lineReader.setConsumer(consumer);
+	}
+	
+	/**
+	 * Publish read lines to the ring instead of the current consumer. Each consumer of the ring
+	 * (logger, parser, forwarder, ...) reads lines in its own thread, so slow ones never block the port.
+	 * @param ring
+	 * @return the same ring
+	 */
+	public FrameRing publishTo(final FrameRing ring) {
+		setLineConsumer(new LineReader.LineConsumer() {
+
+			@Override
+			public void lineRead(ByteBuffer line, CharSequence text) {
+				ring.publish(line);
+			}
+		});
+		return ring;
+	}
+
+	/**
+	 * @return line reader of the current input stream (available after initialization)
+	 */
+	public LineReader getLineReader() {
+		return lineReader;
+	}
 	
 	/**
 	 * Implementacja odczytu ze strumienia wejścia
 	 */
 	@Override
 	protected void createInputStream() throws IOException{
-		input = new BufferedReader(new InputStreamReader(serialPort.getInputStream()));
+		input = openInputStream();
+		lineReader = new LineReader(consumer);
 	}
 
 	/**
@@ -31,6 +76,33 @@ public class UniversalSerialPortManager extends SerialPortManager implements Ser
 	 */
 	@Override
 	protected void handleInputStream() {
+		if(serialPort == null) { // źródło bez zdarzeń RXTX (np. odtwarzany plik)
+			final InputStream stream = input;
+			final LineReader reader = lineReader;
+			Thread thread = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						while(readerThread == Thread.currentThread() && reader.read(stream) >= 0)
+							inputReceived();
+						if(readerThread == Thread.currentThread())
+							reader.finish();
+					} catch (IOException e) {
+						// błąd zamkniętego strumienia poprzedniego wątku nie dotyczy nowego połączenia
+						if(readerThread == Thread.currentThread()) {
+							inputFailed(e);
+							System.err.println(e.toString());
+						}
+					}
+				}
+			}, "universal-reader");
+			thread.setDaemon(true);
+			readerThread = thread;
+			thread.start();
+			return;
+		}
+		
 		try {
 			serialPort.addEventListener(this);
 		} catch (TooManyListenersException e) {
@@ -40,28 +112,33 @@ public class UniversalSerialPortManager extends SerialPortManager implements Ser
 	}
 
 	/**
-	 * Close the port.
+	 * Stop the reader thread or remove event listener before the port is closed.
 	 */
-	public synchronized void close() {
+	@Override
+	protected void closeInput() {
+		Thread reader = readerThread;
+		readerThread = null;
+		if(reader != null)
+			reader.interrupt();
+		
 	    if (serialPort != null) {
 	    	serialPort.removeEventListener();
-	        serialPort.close();
 	    }
 	}
 	
 	/**
 	 * This event is responsible for reading the buffer every time when
-	 * data is available.
+	 * data is available. All available bytes are read and every complete line is delivered.
 	 */
-	public synchronized void serialEvent(SerialPortEvent event) {
+	public void serialEvent(SerialPortEvent event) {
 	    if (event.getEventType() == SerialPortEvent.DATA_AVAILABLE) {
 	        try {
-	            String inputLine = null;
-	            if (input.ready()) {
-	                inputLine = input.readLine();
-	                System.out.println(inputLine);
+	            if (lineReader.drain(input) > 0) {
+	            	inputReceived();
 	            }
-	
+	        } catch (IOException e) {
+	        	inputFailed(e);
+	            System.err.println(e.toString());
 	        } catch (Exception e) {
 	            System.err.println(e.toString());
 	        }
@@ -5,12 +5,14 @@ import java.util.List;
 
 import com.navigation.GPSData;
 import com.navigation.RobotController;
+import com.navigation.serial.GPSSerialPortManager;
 
 public class RobotControllerTest extends RobotController {
 
 	private RobotMock mock;
 	
 	public RobotControllerTest(RobotMock mock) {
+		super(new GPSSerialPortManager()); // bez portu szeregowego i nadzoru łącza
 		this.mock = mock;
 		
 		Thread thread = new Thread(this);
@@ -75,7 +77,7 @@ public class RobotControllerTest extends RobotController {
 	 * @return
 	 */
 	public List<GPSData> getTargets() {
-		return targets;
+		return targets.toList();
 	}
 
 	/**
@@ -97,10 +99,12 @@ public class RobotControllerTest extends RobotController {
 
 	/**
 	 * Wysyła komedę do mocka
-	 * @param command
+	 * @param left
+	 * @param right
 	 */
 	@Override
-	protected void sendCommand(String command) {
+	protected void sendCommand(int left, int right) {
+		String command = left + "|" + right;
 		mock.parse(command);
 		logger.info("Command " + command + " was sent\r\n\r\n");
 	}